@@ -22,17 +22,22 @@ package org.semanticscience.PDBAptamerRetriever.bin;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.StringReader;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
+import org.semanticscience.PDBAptamerRetriever.lib.FastaBatchTask;
+import org.semanticscience.PDBAptamerRetriever.lib.FastaRecord;
+import org.semanticscience.PDBAptamerRetriever.lib.FastaRecordReader;
 import org.semanticscience.PDBAptamerRetriever.lib.PDBRestQueryer;
+import org.semanticscience.PDBAptamerRetriever.shared.CompressedFiles;
+import org.semanticscience.PDBAptamerRetriever.shared.DownloadEngine;
+import org.semanticscience.PDBAptamerRetriever.shared.FileDownloadTask;
+import org.semanticscience.PDBAptamerRetriever.shared.MirrorManifest;
 
 /**
  * Use PDB's REST interface to retrieve PDBids for aptamers AND riboswitches
@@ -58,6 +63,14 @@ public class PDBAptamerIDRetriever {
 	private String outputType;
 	// the query to be posted
 	private String query;
+	// fetches the PDB, PDBML and FASTA files
+	private DownloadEngine downloadEngine = new DownloadEngine();
+	// the number of PDB ids requested at once when retrieving FASTA files
+	private int fastaBatchSize = FastaBatchTask.DEFAULT_BATCH_SIZE;
+	// if true the gzip variants of the files are requested and stored
+	private boolean compressed = false;
+	// if true the checksums of files already in the mirror are verified
+	private boolean verifyChecksums = false;
 
 	public PDBAptamerIDRetriever(String anAptamerType, String anExpType) {
 		aptamerType = anAptamerType;
@@ -117,7 +130,8 @@ public class PDBAptamerIDRetriever {
 
 	/**
 	 * Retrieve PDBML files for all this.pdbids. Creates the Downloaded PDBML
-	 * files inside adirectory
+	 * files inside adirectory. Files already recorded in the directory's
+	 * MirrorManifest are not downloaded again
 	 * 
 	 * @param aDirectory
 	 *            the directory where the pdbml files will be stored
@@ -125,99 +139,90 @@ public class PDBAptamerIDRetriever {
 	 */
 	public boolean retrievePDBML(File aDirectory) {
 		if (aDirectory.isDirectory()) {
-			String base = "http://www.rcsb.org/pdb/files/";
-			if (getPdbids().size() >= 1) {
-				System.out.println("Retrieving " + getPdbids().size()
-						+ " PDBML files...");
-				// iterate over the pdbids
-				Iterator<String> itr = this.getPdbids().iterator();
-				while (itr.hasNext()) {
-					InputStream in = null;
-					try {
-						String pdbid = itr.next();
-						URL u = new URL(base + pdbid + ".xml");
-						in = u.openStream();
-						String pdb = IOUtils.toString(in);
-						if (pdb.length() > 0) {
-							// now create a file from a string
-							File f = new File(aDirectory.getPath() + "/"
-									+ pdbid + ".xml");
-							FileUtils.writeStringToFile(f, pdb);
-						}
-					} catch (MalformedURLException e) {
-						e.printStackTrace();
-						return false;
-					} catch (IOException e) {
-						e.printStackTrace();
-						return false;
-					} finally {
-						IOUtils.closeQuietly(in);
-					}
-				}
-			}
-		} else {
-			return false;
+			return retrieveStructureFiles(aDirectory, "xml", "PDBML");
 		}
 		return false;
 	}
 
 	/**
 	 * Retrieve PDB files for all pdbids. Creates the downloaded PDB files
-	 * inside aDirectory
+	 * inside aDirectory. Files already recorded in the directory's
+	 * MirrorManifest are not downloaded again
 	 * 
 	 * @param aDirectory
 	 *            the directory where the PDB files will be stored
 	 * @return false if something did not work :)
 	 * @throws Exception
-	 *             if output directory is not empty
 	 */
 	public boolean retrievePDB(File aDirectory) throws Exception {
-		int checkCount = 0;
 		if (aDirectory.isDirectory()) {
-			String base = "http://www.rcsb.org/pdb/files/";
-			if (getPdbids().size() >= 1) {
-				System.out.println("Retrieving " + getPdbids().size()
-						+ " PDB files...");
-				// iterate over the pdbids
-				Iterator<String> itr = this.getPdbids().iterator();
-				while (itr.hasNext()) {
-					InputStream in = null;
-					try {
-						String pdbid = itr.next();
-						URL u = new URL(base + pdbid + ".pdb");
-						in = u.openStream();
-						String pdb = IOUtils.toString(in);
-						if (pdb.length() > 0) {
-							// now create a file from a string
-							File f = new File(aDirectory.getPath() + "/"
-									+ pdbid + ".pdb");
-							FileUtils.writeStringToFile(f, pdb);
-							checkCount++;
-						}
-					} catch (MalformedURLException e) {
-						e.printStackTrace();
-						return false;
-					} catch (IOException e) {
-						e.printStackTrace();
-						return false;
-					} finally {
-						IOUtils.closeQuietly(in);
-					}
-				}
-			}
+			return retrieveStructureFiles(aDirectory, "pdb", "PDB");
+		}
+		return false;
+	}
 
-		} else {
-			return false;
+	/**
+	 * Download one structure file per pdbid using this object's
+	 * DownloadEngine. If isCompressed() the gzip variant (e.g. 1Y27.pdb.gz)
+	 * is requested and stored as is. Only the ids that are missing, truncated
+	 * or changed according to the directory's MirrorManifest are downloaded
+	 * 
+	 * @param aDirectory
+	 *            the directory where the files will be stored
+	 * @param anExtension
+	 *            the file extension served by the PDB (pdb or xml)
+	 * @param aLabel
+	 *            a name for the file type used in progress messages
+	 * @return true if at least one file was downloaded or all of them were
+	 *         already present
+	 */
+	private boolean retrieveStructureFiles(File aDirectory, String anExtension,
+			String aLabel) {
+		String base = "http://www.rcsb.org/pdb/files/";
+		if (isCompressed()) {
+			anExtension += CompressedFiles.GZ_EXTENSION;
 		}
-		if (checkCount > 0) {
-			return true;
+		if (getPdbids().size() >= 1) {
+			MirrorManifest manifest = null;
+			try {
+				manifest = loadManifest(aDirectory);
+				List<String> missing = manifest.findMissing(getPdbids(),
+						anExtension);
+				System.out.println("Retrieving " + missing.size() + " of "
+						+ getPdbids().size() + " " + aLabel + " files...");
+				if (missing.isEmpty()) {
+					return true;
+				}
+				List<FileDownloadTask> tasks = new ArrayList<FileDownloadTask>();
+				for (String pdbid : missing) {
+					URL u = new URL(base + pdbid + "." + anExtension);
+					File f = new File(aDirectory.getPath() + "/" + pdbid + "."
+							+ anExtension);
+					FileDownloadTask t = new FileDownloadTask(pdbid, u, f);
+					t.setManifest(manifest, anExtension);
+					tasks.add(t);
+				}
+				int checkCount = DownloadEngine.report(getDownloadEngine()
+						.download(tasks));
+				if (checkCount > 0) {
+					return true;
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			} finally {
+				closeManifest(manifest);
+			}
 		}
 		return false;
 	}
 
 	/**
 	 * Retrieve FASTA files for all pdbids. Creates the downloaded FASTA files
-	 * in aDirectory
+	 * in aDirectory. The ids are requested getFastaBatchSize() at a time and
+	 * every record of the responses is routed to its own PDBID-CHAIN.fasta
+	 * file or to output.fasta. If isCompressed() the files are gzip
+	 * compressed and named *.fasta.gz. Ids already recorded in the
+	 * directory's MirrorManifest are not requested again
 	 * 
 	 * @param aDirectory
 	 *            the directory where the fasta files will be stored
@@ -226,80 +231,69 @@ public class PDBAptamerIDRetriever {
 	 *            fasta entries
 	 * @return false if something did not work right :)
 	 * @throws Exception
-	 *             if output directory is not empty
 	 */
 	public boolean retrieveFasta(File aDirectory, boolean concatenate)
 			throws Exception {
-		int checkCount = 0;
 		if (aDirectory.isDirectory()) {
-			// check if the directory is emptry
-			if (isDirEmpty(aDirectory)) {
-				String base = "http://www.rcsb.org/pdb/files/fasta.txt?structureIdList=";
-				if (getPdbids().size() >= 1) {
-					System.out.println("Retrieving " + getPdbids().size()
-							+ " FASTA files...");
-					// iterate over the pdbids
-					File concatOut = new File(aDirectory.getPath()
-							+ "/output.fasta");
-					Iterator<String> itr = getPdbids().iterator();
-					while (itr.hasNext()) {
-						InputStream in = null;
-						try {
-							String pdbid = itr.next();
-							URL u = new URL(base + pdbid);
-							in = u.openStream();
-							String fasta = IOUtils.toString(in);
-
-							if (fasta.length() > 0) {
-								// now create a file from a string
-								if (concatenate == false) {
-									// check if the file has more than one
-									// sequence
-									Map<String, String> seqMap = separateFasta(fasta);
-									if (seqMap.size() > 0) {
-										for (String pdbIdChainId : seqMap
-												.keySet()) {
-											File f = new File(
-													aDirectory.getPath() + "/"
-															+ pdbIdChainId
-															+ ".fasta");
-											FileUtils.writeStringToFile(f,
-													seqMap.get(pdbIdChainId));
-										}
-										checkCount++;
-									}
-
-								} else {
-									FileUtils.writeStringToFile(concatOut,
-											fasta, true);
-									checkCount++;
-								}
-							}
-						} catch (MalformedURLException e) {
-							e.printStackTrace();
-							return false;
-						} catch (IOException e) {
-							e.printStackTrace();
-							return false;
-						} finally {
-							IOUtils.closeQuietly(in);
+			if (getPdbids().size() >= 1) {
+				String format = "fasta";
+				if (concatenate) {
+					format = "concatenated-fasta";
+				}
+				if (isCompressed()) {
+					format += CompressedFiles.GZ_EXTENSION;
+				}
+				MirrorManifest manifest = loadManifest(aDirectory);
+				try {
+					List<String> missing = manifest.findMissing(getPdbids(),
+							format);
+					System.out.println("Retrieving " + missing.size() + " of "
+							+ getPdbids().size() + " FASTA files...");
+					if (missing.isEmpty()) {
+						return true;
+					}
+					File concatFile = null;
+					if (concatenate) {
+						String fn = "output.fasta";
+						if (isCompressed()) {
+							fn += CompressedFiles.GZ_EXTENSION;
 						}
+						concatFile = new File(aDirectory, fn);
+					}
+					List<FastaBatchTask> tasks = FastaBatchTask.createTasks(
+							missing, getFastaBatchSize(), aDirectory,
+							concatFile, true);
+					for (FastaBatchTask t : tasks) {
+						t.setCompressed(isCompressed());
+						t.setManifest(manifest, format);
+					}
+					int checkCount = DownloadEngine.report(getDownloadEngine()
+							.download(tasks));
+					if (checkCount > 0) {
+						return true;
 					}
+				} finally {
+					closeManifest(manifest);
 				}
-			} else {
-				throw new Exception("FASTA output directory :"
-						+ aDirectory.getAbsolutePath()
-						+ " is not empty!\nPlease empty before continuing!");
 			}
-		} else {
-			return false;
-		}
-		if (checkCount > 0) {
-			return true;
-		} else {
-			return false;
 		}
+		return false;
+	}
+
+	private MirrorManifest loadManifest(File aDirectory) throws IOException {
+		MirrorManifest rm = MirrorManifest.load(aDirectory);
+		rm.setVerifyChecksums(isVerifyChecksums());
+		return rm;
+	}
 
+	private void closeManifest(MirrorManifest aManifest) {
+		if (aManifest != null) {
+			try {
+				aManifest.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
 	}
 
 	/**
@@ -314,25 +308,48 @@ public class PDBAptamerIDRetriever {
 	public Map<String, String> separateFasta(String aFasta) {
 		if (aFasta.length() > 0) {
 			Map<String, String> rm = new HashMap<String, String>();
-			String[] f = aFasta.split(">");
-			if (f.length > 0) {
-				for (int i = 0; i < f.length; i++) {
-					if (f[i].length() > 0) {
-						// get the pdbid:Chainid
-						String[] tmp = f[i].split("\\|");
-						String idChain = tmp[0];
-						String[] p = idChain.split("\\:");
-						String pdbidchain = p[0] + "-" + p[1];
-						String aFastaStr = ">" + f[i];
-						rm.put(pdbidchain, aFastaStr);
-					}
+			FastaRecordReader r = new FastaRecordReader(new StringReader(
+					aFasta));
+			try {
+				FastaRecord rec;
+				while ((rec = r.next()) != null) {
+					rm.put(rec.getPdbIdChain(), rec.toString());
 				}
-				return rm;
+			} catch (IOException e) {
+				// reading from a String
+				e.printStackTrace();
 			}
+			return rm;
 		}
 		return null;
 	}
 
+	/**
+	 * Separate a FASTA file with multiple sequences, the file may be gzip
+	 * compressed
+	 * 
+	 * @param aFastaFile
+	 *            a FASTA file, read as gzip if named *.gz
+	 * @return a Map where the key is the PDB:CHAINID and the value is the FASTA
+	 *         (id line and sequence lines)
+	 * @throws IOException
+	 */
+	public Map<String, String> separateFasta(File aFastaFile)
+			throws IOException {
+		Map<String, String> rm = new HashMap<String, String>();
+		FastaRecordReader r = new FastaRecordReader(
+				CompressedFiles.openReader(aFastaFile));
+		try {
+			FastaRecord rec;
+			while ((rec = r.next()) != null) {
+				rm.put(rec.getPdbIdChain(), rec.toString());
+			}
+		} finally {
+			r.close();
+		}
+		return rm;
+	}
+
 	private String constructXMLQuery(String anAptamerType, String anExpType) {
 		String buf = "";
 		String at = makeChainTypeQuery(anAptamerType);
@@ -568,15 +585,69 @@ public class PDBAptamerIDRetriever {
 		this.query = query;
 	}
 
-	private boolean isDirEmpty(File aDir) {
-		if (aDir.isDirectory()) {
-			String[] files = aDir.list();
-			if (files.length > 0) {
-				return false;
-			} else {
-				return true;
-			}
-		}
-		return false;
+	/**
+	 * @return the DownloadEngine used to fetch files
+	 */
+	public DownloadEngine getDownloadEngine() {
+		return downloadEngine;
+	}
+
+	/**
+	 * @param aDownloadEngine
+	 *            the DownloadEngine to use to fetch files
+	 */
+	public void setDownloadEngine(DownloadEngine aDownloadEngine) {
+		this.downloadEngine = aDownloadEngine;
+	}
+
+	/**
+	 * @return the number of PDB ids requested at once when retrieving FASTA
+	 *         files
+	 */
+	public int getFastaBatchSize() {
+		return fastaBatchSize;
+	}
+
+	/**
+	 * @param aFastaBatchSize
+	 *            the number of PDB ids to request at once when retrieving FASTA
+	 *            files, 1 requests every id on its own
+	 */
+	public void setFastaBatchSize(int aFastaBatchSize) {
+		this.fastaBatchSize = aFastaBatchSize;
+	}
+
+	/**
+	 * @return true if the gzip variants of the files are requested and stored
+	 */
+	public boolean isCompressed() {
+		return compressed;
+	}
+
+	/**
+	 * @param aCompressed
+	 *            if true the gzip variants of the PDB and PDBML files are
+	 *            requested and stored as *.gz, and FASTA files are written
+	 *            gzip compressed
+	 */
+	public void setCompressed(boolean aCompressed) {
+		this.compressed = aCompressed;
+	}
+
+	/**
+	 * @return true if the checksums of the files already in a mirror
+	 *         directory are verified before skipping them
+	 */
+	public boolean isVerifyChecksums() {
+		return verifyChecksums;
+	}
+
+	/**
+	 * @param aVerifyChecksums
+	 *            if true the checksums of the files already in a mirror
+	 *            directory are verified, otherwise only their sizes
+	 */
+	public void setVerifyChecksums(boolean aVerifyChecksums) {
+		this.verifyChecksums = aVerifyChecksums;
 	}
 }
@@ -22,16 +22,17 @@ package org.semanticscience.PDBAptamerRetriever.bin;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
+import org.semanticscience.PDBAptamerRetriever.lib.FastaBatchTask;
 import org.semanticscience.PDBAptamerRetriever.lib.PDBRestQueryer;
+import org.semanticscience.PDBAptamerRetriever.shared.CompressedFiles;
+import org.semanticscience.PDBAptamerRetriever.shared.DownloadEngine;
+import org.semanticscience.PDBAptamerRetriever.shared.FileDownloadTask;
+import org.semanticscience.PDBAptamerRetriever.shared.MirrorManifest;
 
 //TODO: deal with riboswitches
 /**
@@ -56,6 +57,14 @@ public class PDBAptamerRetriever {
 	private String outputType;
 	// the query to be posted
 	private String query;
+	// fetches the PDB and FASTA files
+	private DownloadEngine downloadEngine = new DownloadEngine();
+	// the number of PDB ids requested at once when retrieving FASTA files
+	private int fastaBatchSize = FastaBatchTask.DEFAULT_BATCH_SIZE;
+	// if true the checksums of files already in the mirror are verified
+	private boolean verifyChecksums = false;
+	// if true PDB files are stored and FASTA files written gzip compressed
+	private boolean compressed = false;
 
 	public PDBAptamerRetriever(String anAptamerType, String anExpType) {
 		aptamerType = anAptamerType;
@@ -100,64 +109,65 @@ public class PDBAptamerRetriever {
 
 	/**
 	 * Retrieve PDB files for all pdbids. Creates the downloaded PDB files
-	 * inside aDirectory
+	 * inside aDirectory. If isCompressed() the gzip variant (e.g. 1Y27.pdb.gz)
+	 * is requested and stored as is. Files already recorded in the
+	 * directory's MirrorManifest are not downloaded again
 	 * 
 	 * @param aDirectory
 	 *            the directory where the PDB files will be stored
 	 * @return false if something did not work :)
-	 * @throws Exception if output directory is not empty
+	 * @throws Exception
 	 */
 	public boolean retrievePDB(File aDirectory) throws Exception {
-		int checkCount = 0;
 		if (aDirectory.isDirectory()) {
-			if (isDirEmpty(aDirectory)) {
-				String base = "http://www.rcsb.org/pdb/files/";
-				if (getPdbids().size() >= 1) {
-					System.out.println("Retrieving " + getPdbids().size()
-							+ " PDB files...");
-					// iterate over the pdbids
-					Iterator<String> itr = getPdbids().iterator();
-					while (itr.hasNext()) {
-						InputStream in = null;
+			String base = "http://www.rcsb.org/pdb/files/";
+			String ext = "pdb";
+			if (isCompressed()) {
+				ext += CompressedFiles.GZ_EXTENSION;
+			}
+			if (getPdbids().size() >= 1) {
+				MirrorManifest manifest = loadManifest(aDirectory);
+				try {
+					List<String> missing = manifest.findMissing(getPdbids(),
+							ext);
+					System.out.println("Retrieving " + missing.size() + " of "
+							+ getPdbids().size() + " PDB files...");
+					if (missing.isEmpty()) {
+						return true;
+					}
+					List<FileDownloadTask> tasks = new ArrayList<FileDownloadTask>();
+					for (String pdbid : missing) {
 						try {
-							String pdbid = itr.next();
-							URL u = new URL(base + pdbid + ".pdb");
-							in = u.openStream();
-							String pdb = IOUtils.toString(in);
-							if (pdb.length() > 0) {
-								// now create a file from a string
-								File f = new File(aDirectory.getPath() + "/"
-										+ pdbid + ".pdb");
-								FileUtils.writeStringToFile(f, pdb);
-								checkCount++;
-							}
+							URL u = new URL(base + pdbid + "." + ext);
+							File f = new File(aDirectory.getPath() + "/"
+									+ pdbid + "." + ext);
+							FileDownloadTask t = new FileDownloadTask(pdbid, u,
+									f);
+							t.setManifest(manifest, ext);
+							tasks.add(t);
 						} catch (MalformedURLException e) {
 							e.printStackTrace();
-							return false;
-						} catch (IOException e) {
-							e.printStackTrace();
-							return false;
-						} finally {
-							IOUtils.closeQuietly(in);
 						}
 					}
+					int checkCount = DownloadEngine.report(getDownloadEngine()
+							.download(tasks));
+					if (checkCount > 0) {
+						return true;
+					}
+				} finally {
+					manifest.close();
 				}
-			}else{
-				throw new Exception("PDB output directory : "+aDirectory.getAbsolutePath()+" is not empty!\nPlease provide an empty directory!");
-			
 			}
-		} else {
-			return false;
-		}
-		if(checkCount > 0){
-			return true;
 		}
 		return false;
 	}
 
 	/**
 	 * Retrieve FASTA files for all pdbids. Creates the downloaded FASTA files
-	 * in aDirectory
+	 * in aDirectory. The ids are requested getFastaBatchSize() at a time. Ids
+	 * already recorded in the directory's MirrorManifest are not requested
+	 * again. If isCompressed() the files are gzip compressed and named
+	 * *.fasta.gz
 	 * 
 	 * @param aDirectory
 	 *            the directory where the fasta files will be stored
@@ -165,67 +175,60 @@ public class PDBAptamerRetriever {
 	 *            if true only one file will be placed in aDirectory with all
 	 *            fasta entries
 	 * @return false if something did not work right :)
-	 * @throws Exception if output directory is not empty
+	 * @throws Exception
 	 */
 	public boolean retrieveFasta(File aDirectory, boolean concatenate)
 			throws Exception {
-		int checkCount = 0;
 		if (aDirectory.isDirectory()) {
-			// check if the directory is emptry
-			if (isDirEmpty(aDirectory)) {
-				String base = "http://www.rcsb.org/pdb/files/fasta.txt?structureIdList=";
-				if (getPdbids().size() >= 1) {
-					System.out.println("Retrieving " + getPdbids().size()
-							+ " FASTA files...");
-					// iterate over the pdbids
-					File concatOut = new File(aDirectory.getPath()
-							+ "/output.fasta");
-					Iterator<String> itr = getPdbids().iterator();
-					while (itr.hasNext()) {
-						InputStream in = null;
-						try {
-							String pdbid = itr.next();
-							URL u = new URL(base + pdbid);
-							in = u.openStream();
-							String fasta = IOUtils.toString(in);
-							if (fasta.length() > 0) {
-								// now create a file from a string
-								if (concatenate == false) {
-									File f = new File(aDirectory.getPath()
-											+ "/" + pdbid + ".fasta");
-									FileUtils.writeStringToFile(f, fasta);
-									checkCount++;
-								} else {
-									FileUtils.writeStringToFile(concatOut,
-											fasta, true);
-									checkCount++;
-								}
-							}
-						} catch (MalformedURLException e) {
-							e.printStackTrace();
-							return false;
-						} catch (IOException e) {
-							e.printStackTrace();
-							return false;
-						} finally {
-							IOUtils.closeQuietly(in);
+			if (getPdbids().size() >= 1) {
+				String format = "fasta";
+				if (concatenate) {
+					format = "concatenated-fasta";
+				}
+				if (isCompressed()) {
+					format += CompressedFiles.GZ_EXTENSION;
+				}
+				MirrorManifest manifest = loadManifest(aDirectory);
+				try {
+					List<String> missing = manifest.findMissing(getPdbids(),
+							format);
+					System.out.println("Retrieving " + missing.size() + " of "
+							+ getPdbids().size() + " FASTA files...");
+					if (missing.isEmpty()) {
+						return true;
+					}
+					File concatFile = null;
+					if (concatenate) {
+						String fn = "output.fasta";
+						if (isCompressed()) {
+							fn += CompressedFiles.GZ_EXTENSION;
 						}
+						concatFile = new File(aDirectory, fn);
+					}
+					List<FastaBatchTask> tasks = FastaBatchTask.createTasks(
+							missing, getFastaBatchSize(), aDirectory,
+							concatFile, false);
+					for (FastaBatchTask t : tasks) {
+						t.setCompressed(isCompressed());
+						t.setManifest(manifest, format);
 					}
+					int checkCount = DownloadEngine.report(getDownloadEngine()
+							.download(tasks));
+					if (checkCount > 0) {
+						return true;
+					}
+				} finally {
+					manifest.close();
 				}
-			} else {
-				throw new Exception("FASTA output directory :"
-						+ aDirectory.getAbsolutePath()
-						+ " is not empty!\nPlease empty before continuing!");
 			}
-		} else {
-			return false;
-		}
-		if (checkCount > 0) {
-			return true;
-		} else {
-			return false;
 		}
+		return false;
+	}
 
+	private MirrorManifest loadManifest(File aDirectory) throws IOException {
+		MirrorManifest rm = MirrorManifest.load(aDirectory);
+		rm.setVerifyChecksums(isVerifyChecksums());
+		return rm;
 	}
 
 	private String constructXMLQuery(String anAptamerType, String anExpType) {
@@ -451,15 +454,69 @@ public class PDBAptamerRetriever {
 		this.query = query;
 	}
 
-	private boolean isDirEmpty(File aDir) {
-		if (aDir.isDirectory()) {
-			String[] files = aDir.list();
-			if (files.length > 0) {
-				return false;
-			} else {
-				return true;
-			}
-		}
-		return false;
+	/**
+	 * @return the DownloadEngine used to fetch files
+	 */
+	public DownloadEngine getDownloadEngine() {
+		return downloadEngine;
+	}
+
+	/**
+	 * @param aDownloadEngine
+	 *            the DownloadEngine to use to fetch files
+	 */
+	public void setDownloadEngine(DownloadEngine aDownloadEngine) {
+		this.downloadEngine = aDownloadEngine;
+	}
+
+	/**
+	 * @return the number of PDB ids requested at once when retrieving FASTA
+	 *         files
+	 */
+	public int getFastaBatchSize() {
+		return fastaBatchSize;
+	}
+
+	/**
+	 * @param aFastaBatchSize
+	 *            the number of PDB ids to request at once when retrieving FASTA
+	 *            files, 1 requests every id on its own
+	 */
+	public void setFastaBatchSize(int aFastaBatchSize) {
+		this.fastaBatchSize = aFastaBatchSize;
+	}
+
+	/**
+	 * @return true if the gzip variants of the files are requested and stored
+	 */
+	public boolean isCompressed() {
+		return compressed;
+	}
+
+	/**
+	 * @param aCompressed
+	 *            if true the gzip variants of the PDB files are requested
+	 *            and stored as *.gz, and FASTA files are written gzip
+	 *            compressed
+	 */
+	public void setCompressed(boolean aCompressed) {
+		this.compressed = aCompressed;
+	}
+
+	/**
+	 * @return true if the checksums of the files already in a mirror
+	 *         directory are verified before skipping them
+	 */
+	public boolean isVerifyChecksums() {
+		return verifyChecksums;
+	}
+
+	/**
+	 * @param aVerifyChecksums
+	 *            if true the checksums of the files already in a mirror
+	 *            directory are verified, otherwise only their sizes
+	 */
+	public void setVerifyChecksums(boolean aVerifyChecksums) {
+		this.verifyChecksums = aVerifyChecksums;
 	}
 }
@@ -21,7 +21,9 @@
 package org.semanticscience.PDBAptamerRetriever.bin;
 
 import java.io.File;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -31,9 +33,17 @@ import java.util.Map;
 import org.apache.commons.io.FileUtils;
 import org.semanticscience.PDBAptamerRetriever.lib.Ligand;
 import org.semanticscience.PDBAptamerRetriever.lib.PDBRecord;
+import org.semanticscience.PDBAptamerRetriever.lib.PDBRecordFilter;
+import org.semanticscience.PDBAptamerRetriever.lib.PDBRecordIndex;
+import org.semanticscience.PDBAptamerRetriever.lib.PDBRecordLoader;
+import org.semanticscience.PDBAptamerRetriever.lib.PDBRecordTable;
+import org.semanticscience.PDBAptamerRetriever.lib.RecordLoadResult;
+import org.semanticscience.PDBAptamerRetriever.shared.CompressedFiles;
 import org.semanticscience.click_runner.Click;
 import org.semanticscience.needlerunner.Needle;
 
+import au.com.bytecode.opencsv.CSVWriter;
+
 /**
  * @author Jose Cruz-Toledo
  * 
@@ -42,42 +52,141 @@ public class PDBRecordRetriever {
 
 	private List<String> pdbIds = null;
 	private List<PDBRecord> records = null;
+	// retrieves the ligands when a ligand report is first asked for
+	private PDBRecordLoader loader = null;
+	private RecordLoadResult loadResult = null;
+	// built when first asked for
+	private PDBRecordTable table = null;
 
 	public PDBRecordRetriever(List<String> aPdbids) {
+		this(aPdbids, new PDBRecordLoader());
+	}
+
+	/**
+	 * @param aPdbids
+	 *            the PDB ids of the records
+	 * @param aLoader
+	 *            retrieves the records concurrently
+	 */
+	public PDBRecordRetriever(List<String> aPdbids, PDBRecordLoader aLoader) {
 		pdbIds = aPdbids;
+		loader = aLoader;
 		// load the records
-		records = new ArrayList<PDBRecord>();
-		Iterator<String> itr = pdbIds.iterator();
+		loadResult = aLoader.retrieve(pdbIds);
+		records = loadResult.getSucceeded();
+		Iterator<PDBRecord> itr = loadResult.getFailed().iterator();
+		while (itr.hasNext()) {
+			PDBRecord p = itr.next();
+			System.err.println("Skipping " + p.getRequestedId() + ": "
+					+ loadResult.getCause(p));
+		}
+	}
+
+	/**
+	 * @return which records were retrieved and which failed
+	 */
+	public RecordLoadResult getLoadResult() {
+		return loadResult;
+	}
+
+	/**
+	 * @return the retrieved records as columns, for filters and statistics
+	 */
+	public synchronized PDBRecordTable getRecordTable() {
+		if (table == null) {
+			table = new PDBRecordTable(records);
+		}
+		return table;
+	}
+
+	/**
+	 * Keep only the records that meet aFilter, so that the summary and the
+	 * reports are written for them alone. The ligands of the records are
+	 * retrieved first if aFilter needs them
+	 * 
+	 * @return the number of records kept
+	 */
+	public synchronized int filter(PDBRecordFilter aFilter) {
+		if (aFilter.needsLigands()) {
+			loader.loadLigands(records, loadResult);
+		}
+		records = new PDBRecordIndex(records).filter(aFilter);
+		table = null;
+		return records.size();
+	}
+
+	/**
+	 * Write the PDB ids of the records to aWriter, one per line
+	 * 
+	 * @param aWriter
+	 *            where the ids are written, left open
+	 * @throws IOException
+	 */
+	public void writeIds(Writer aWriter) throws IOException {
+		Iterator<PDBRecord> itr = records.iterator();
 		while (itr.hasNext()) {
-			String anId = itr.next();
-			PDBRecord p = new PDBRecord(anId);
-			records.add(p);
+			aWriter.write(itr.next().getPdbId() + "\n");
 		}
+		aWriter.flush();
 	}
 
 	public String getCSVString() {
+		StringWriter sw = new StringWriter();
+		try {
+			writeCSV(sw);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return sw.toString();
+	}
+
+	/**
+	 * Write the summary of the records to aWriter one line at a time
+	 * 
+	 * @param aWriter
+	 *            where the lines are written, left open
+	 * @throws IOException
+	 */
+	public void writeCSV(Writer aWriter) throws IOException {
+		CSVWriter w = new CSVWriter(aWriter);
 		Iterator<PDBRecord> itr = records.iterator();
-		String b = "";
 		while (itr.hasNext()) {
-			PDBRecord p = itr.next();
-			b += p.getCSVLine();
+			w.writeNext(itr.next().getCSVFields());
 		}
-		return b;
+		w.flush();
 	}
 
 	public String getLigandCSVReport() {
-		String rm = "";
+		StringWriter sw = new StringWriter();
+		try {
+			writeLigandCSVReport(sw);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return sw.toString();
+	}
+
+	/**
+	 * Write a line per ligand of every record to aWriter, retrieving the
+	 * ligands first if needed
+	 * 
+	 * @param aWriter
+	 *            where the lines are written, left open
+	 * @throws IOException
+	 */
+	public void writeLigandCSVReport(Writer aWriter) throws IOException {
+		loader.loadLigands(records, loadResult);
+		CSVWriter w = new CSVWriter(aWriter, Ligand.CSV_SEPARATOR);
 		Iterator<PDBRecord> itr = records.iterator();
 		while (itr.hasNext()) {
 			PDBRecord p = itr.next();
 			// get the ligands for this record
 			Iterator<Ligand> litr = p.getLigands().iterator();
 			while (litr.hasNext()) {
-				Ligand l = litr.next();
-				rm += l.getCSVLine();
+				w.writeNext(litr.next().getCSVFields(p.getRequestedId()));
 			}
 		}
-		return rm;
+		w.flush();
 	}
 
 	private Map<Ligand, Integer> computeLigandFrequencies(List<PDBRecord> aList) {
@@ -100,19 +209,40 @@ public class PDBRecordRetriever {
 	}
 
 	public String getLigandFrequenciesCSV() {
-		String rm = "";
+		StringWriter sw = new StringWriter();
+		try {
+			writeLigandFrequenciesCSV(sw);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return sw.toString();
+	}
+
+	/**
+	 * Write the number of records every ligand is found in to aWriter,
+	 * retrieving the ligands first if needed
+	 * 
+	 * @param aWriter
+	 *            where the lines are written, left open
+	 * @throws IOException
+	 */
+	public void writeLigandFrequenciesCSV(Writer aWriter) throws IOException {
+		loader.loadLigands(records, loadResult);
+		CSVWriter w = new CSVWriter(aWriter, Ligand.CSV_SEPARATOR);
 		Map<Ligand, Integer> freqs = this
 				.computeLigandFrequencies(this.records);
 		for (Map.Entry<Ligand, Integer> entry : freqs.entrySet()) {
 			Ligand l = entry.getKey();
 			Integer count = entry.getValue();
-			rm += l.getChemicalId() + "\t" + count + "\n";
+			w.writeNext(new String[] { l.getChemicalId(),
+					String.valueOf(count) });
 		}
-		return rm;
+		w.flush();
 	}
 
 	/**
-	 * Execute click on a directory of PDB files
+	 * Execute click on a directory of PDB files. Compressed files (*.pdb.gz)
+	 * are first decompressed into anOutputDirectory/click-input
 	 * 
 	 * @param pdbDir
 	 *            a directory with PDB files
@@ -127,18 +257,26 @@ public class PDBRecordRetriever {
 			String[] ext = new String[] { "pdb" };
 			System.out.println("Running click...");
 			try {
-				Click.compareAAADirectory(pdbDir, anOutputDirectory, csvSummary);
+				File input = CompressedFiles.prepareDirectory(pdbDir, new File(
+						anOutputDirectory, "click-input"), "pdb");
+				Click.compareAAADirectory(input, anOutputDirectory, csvSummary);
 			} catch (Exception e) {
 				e.printStackTrace();
 			}
 		}
 	}
 	
+	/**
+	 * Execute needle on a directory of FASTA files. Compressed files
+	 * (*.fasta.gz) are first decompressed into anOutputdir/needle-input
+	 */
 	public void runNeedle(File fastaDir, File anOutputdir, File csvSummary, Double aGapOpen, Double aGapExt){
 		if(anOutputdir != null){
 			String [] ext = new String[]{"fasta"};
 			try{
-				Needle.compareAAADirectory(fastaDir, anOutputdir, csvSummary, aGapOpen, aGapExt);
+				File input = CompressedFiles.prepareDirectory(fastaDir,
+						new File(anOutputdir, "needle-input"), "fasta");
+				Needle.compareAAADirectory(input, anOutputdir, csvSummary, aGapOpen, aGapExt);
 				Needle.cleanCSVSummary(csvSummary, new File(anOutputdir+"/averaged_scores.csv"));
 			}catch(Exception e){
 				e.printStackTrace();
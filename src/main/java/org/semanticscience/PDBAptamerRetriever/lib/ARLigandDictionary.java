@@ -27,48 +27,110 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import au.com.bytecode.opencsv.CSVReader;
 
 /**
- * An Aptamer/Riboswitch Ligand Dictionary
+ * An Aptamer/Riboswitch Ligand Dictionary. A dictionary does not change once
+ * it is built, so one instance can be shared by any number of threads; use
+ * getDefault() rather than building a new one. Its Ligands are its own, not
+ * the canonical ones of the LigandRegistry, and cannot be changed
  * 
  * @author Jose Cruz-Toledo
  * 
  */
 public class ARLigandDictionary {
-	private final String dic_fn = "ligands.csv";
+	static final String dic_fn = "ligands.csv";
 	// see http://ligand-expo.rcsb.org/dictionaries/cc-to-pdb.tdd
-	private final String pdb_map = "cc-to-pdb.tdd";
+	static final String pdb_map = "cc-to-pdb.tdd";
 	/**
 	 * A list of Ligands as described in ligands.csv
 	 */
-	private List<Ligand> ligands;
+	private final List<Ligand> ligands;
 	/**
-	 * A Map where the key is a Ligand Expo Id for a ligand from ligands.csv and
-	 * the value is a list of PDBids where that ligand is found
+	 * The index in ligands of the first Ligand of every upper case chemical
+	 * id, so that a lookup does not scan the list
 	 */
-	private Map<String, List<String>> ligToPdb = null;
+	private final Map<String, Integer> ligandIndex = new HashMap<String, Integer>();
+	/**
+	 * A Map where the key is the upper case Ligand Expo Id of a ligand from
+	 * ligands.csv and the value is the set of PDBids where that ligand is
+	 * found, as read from cc-to-pdb.tdd
+	 */
+	private final Map<String, PdbIdBitmap> ligToPdb = new HashMap<String, PdbIdBitmap>();
+	/**
+	 * The PDB ids found in a ligand of the dictionary, added in increasing
+	 * order so that the index of an id is its ordinal in the PdbIdBitmaps,
+	 * and the packed id of every ordinal
+	 */
+	private final PdbIdSet pdbKeys;
+	private final int[] pdbIdsByOrdinal;
+	/**
+	 * The Ligands of every ordinal, in the order of ligands.csv
+	 */
+	private final List<List<Ligand>> pdbLigands;
 
 	/**
-	 * Load the Aptamer Riboswitch Ligand Dictionary directly from a file
-	 * 
-	 * @param aFile
-	 *            A dictionary
+	 * Builds the dictionary shared by the whole process the first time it is
+	 * asked for
+	 */
+	private static class DefaultHolder {
+		private static final ARLigandDictionary INSTANCE = new ARLigandDictionary();
+	}
+
+	/**
+	 * @return the dictionary shared by the whole process, built once on first
+	 *         use
+	 */
+	public static ARLigandDictionary getDefault() {
+		return DefaultHolder.INSTANCE;
+	}
+
+	/**
+	 * Load the Aptamer Riboswitch Ligand Dictionary from the snapshot
+	 * compiled at build time, or from ligands.csv and cc-to-pdb.tdd if the
+	 * snapshot is missing or out of date. The dictionary shared with
+	 * getDefault() should be preferred
 	 */
 	public ARLigandDictionary() {
-		InputStream is = ARLigandDictionary.class.getClassLoader()
-				.getResourceAsStream(dic_fn);
-		InputStream is2 = ARLigandDictionary.class.getClassLoader()
-				.getResourceAsStream(pdb_map);
-		ligands = retrieveLigands(is);
-		ligToPdb = retrieveLig2PDBMap(is2);
+		this(true);
+	}
+
+	/**
+	 * @param aUseSnapshot
+	 *            if false the dictionary is always parsed from ligands.csv
+	 *            and cc-to-pdb.tdd, see LigandDictionarySnapshot
+	 */
+	ARLigandDictionary(boolean aUseSnapshot) {
+		List<Ligand> ll = new ArrayList<Ligand>();
+		Map<String, int[]> m = new HashMap<String, int[]>();
+		if (aUseSnapshot && LigandDictionarySnapshot.load(ll, m)) {
+			ligands = Collections.unmodifiableList(ll);
+			indexLigands();
+		} else {
+			InputStream is = ARLigandDictionary.class.getClassLoader()
+					.getResourceAsStream(dic_fn);
+			InputStream is2 = ARLigandDictionary.class.getClassLoader()
+					.getResourceAsStream(pdb_map);
+			ligands = Collections.unmodifiableList(retrieveLigands(is));
+			indexLigands();
+			m = retrieveLig2PDBMap(is2);
+		}
 		// now add the list of pdbids to our ligands
-		processLig2PDBMap(ligToPdb);
+		processLig2PDBMap(m);
+		for (Ligand l : ligands) {
+			l.freeze();
+		}
+		pdbIdsByOrdinal = sortedPdbIds(m);
+		pdbKeys = new PdbIdSet(pdbIdsByOrdinal.length);
+		pdbLigands = new ArrayList<List<Ligand>>(pdbIdsByOrdinal.length);
+		indexPdbIds(m);
 	}
 
 	/**
@@ -80,17 +142,169 @@ public class ARLigandDictionary {
 	 */
 	public List<Ligand> findInDictionary(String aPdbId) {
 		if(aPdbId.length() > 0){
-			List<Ligand> rm = new ArrayList<Ligand>();
-			for (Ligand l : this.ligands) {
-				if(l.getPdbIds().contains(aPdbId.toLowerCase())){
-					rm.add(l);
-				}
+			int i = pdbKeys.indexOf(aPdbId);
+			if(i == -1){
+				return new ArrayList<Ligand>();
 			}
-			return rm;
+			return new ArrayList<Ligand>(pdbLigands.get(i));
 		}
 		return null;
 	}
 
+	/**
+	 * Retrieves the Ligands found in ligands.csv of many PDB ids at once
+	 * 
+	 * @param somePdbIds
+	 *            PDB ids in any case
+	 * @return the ligands of every non empty id of somePdbIds, see
+	 *         findInDictionary(String), in the order of somePdbIds
+	 */
+	public Map<String, List<Ligand>> findInDictionary(
+			Collection<String> somePdbIds) {
+		Map<String, List<Ligand>> rm = new LinkedHashMap<String, List<Ligand>>();
+		for (String anId : somePdbIds) {
+			if (anId.length() > 0) {
+				rm.put(anId, findInDictionary(anId));
+			}
+		}
+		return rm;
+	}
+
+	/**
+	 * @return the distinct PDB ids of aLigToPdb in increasing order
+	 */
+	private static int[] sortedPdbIds(Map<String, int[]> aLigToPdb) {
+		PdbIdSet all = new PdbIdSet();
+		for (int[] pdbIds : aLigToPdb.values()) {
+			for (int aPdbId : pdbIds) {
+				all.add(aPdbId);
+			}
+		}
+		return all.toSortedArray();
+	}
+
+	/**
+	 * Give every PDB id of the map read from cc-to-pdb.tdd an ordinal and
+	 * fill ligToPdb, pdbKeys and pdbLigands
+	 * 
+	 * @param aLigToPdb
+	 *            a ligandexpo id to packed PDBids map
+	 */
+	private void indexPdbIds(Map<String, int[]> aLigToPdb) {
+		Map<String, int[]> byLigand = new HashMap<String, int[]>();
+		for (Map.Entry<String, int[]> e : aLigToPdb.entrySet()) {
+			byLigand.put(e.getKey().toUpperCase(), e.getValue());
+		}
+		for (int aPdbId : pdbIdsByOrdinal) {
+			pdbKeys.add(aPdbId);
+			pdbLigands.add(new ArrayList<Ligand>(1));
+		}
+		for (int i = 0; i < ligands.size(); i++) {
+			Ligand l = ligands.get(i);
+			String id = l.getChemicalId().toUpperCase();
+			int[] pdbIds = byLigand.get(id);
+			// a ligand listed twice is only indexed once
+			if (pdbIds == null || ligandIndex.get(id) != i) {
+				continue;
+			}
+			int[] ordinals = new int[pdbIds.length];
+			for (int j = 0; j < pdbIds.length; j++) {
+				ordinals[j] = pdbKeys.indexOf(pdbIds[j]);
+				pdbLigands.get(ordinals[j]).add(l);
+			}
+			ligToPdb.put(id, PdbIdBitmap.of(ordinals, pdbIdsByOrdinal.length));
+		}
+	}
+
+	/**
+	 * @param aChemicalId
+	 *            a Ligand Expo id in any case
+	 * @return the structures where aChemicalId is found, empty if it is not
+	 *         in the dictionary
+	 */
+	public PdbIdBitmap getStructures(String aChemicalId) {
+		PdbIdBitmap rm = ligToPdb.get(aChemicalId.toUpperCase());
+		return rm == null ? PdbIdBitmap.empty(pdbIdsByOrdinal.length) : rm;
+	}
+
+	/**
+	 * @param somePdbIds
+	 *            PDB ids in any case, e.g. the result of a PDBRestQueryer
+	 * @return the ids of somePdbIds that are found in a ligand of the
+	 *         dictionary; the others cannot be part of a set
+	 */
+	public PdbIdBitmap toStructures(Collection<String> somePdbIds) {
+		int[] ordinals = new int[somePdbIds.size()];
+		int n = 0;
+		for (String anId : somePdbIds) {
+			int o = pdbKeys.indexOf(anId);
+			if (o != -1) {
+				ordinals[n++] = o;
+			}
+		}
+		Arrays.sort(ordinals, 0, n);
+		// drop the ids given more than once
+		int d = 0;
+		for (int i = 0; i < n; i++) {
+			if (d == 0 || ordinals[d - 1] != ordinals[i]) {
+				ordinals[d++] = ordinals[i];
+			}
+		}
+		return PdbIdBitmap.of(Arrays.copyOf(ordinals, d),
+				pdbIdsByOrdinal.length);
+	}
+
+	/**
+	 * @return the structures where at least one ligand of the dictionary is
+	 *         found
+	 */
+	public PdbIdBitmap getAllStructures() {
+		int[] ordinals = new int[pdbIdsByOrdinal.length];
+		for (int i = 0; i < ordinals.length; i++) {
+			ordinals[i] = i;
+		}
+		return PdbIdBitmap.of(ordinals, ordinals.length);
+	}
+
+	/**
+	 * Find the structures that contain all of someChemicalIds and none of
+	 * someExcludedIds, e.g. GTP and MG but not SAM
+	 * 
+	 * @param someChemicalIds
+	 *            Ligand Expo ids that must all be found, or an empty
+	 *            collection for any structure of the dictionary
+	 * @param someExcludedIds
+	 *            Ligand Expo ids that must not be found
+	 * @return the set of the structures
+	 */
+	public PdbIdBitmap findStructures(Collection<String> someChemicalIds,
+			Collection<String> someExcludedIds) {
+		PdbIdBitmap rm = null;
+		for (String aChemicalId : someChemicalIds) {
+			PdbIdBitmap b = getStructures(aChemicalId);
+			rm = rm == null ? b : rm.and(b);
+		}
+		if (rm == null) {
+			rm = getAllStructures();
+		}
+		for (String anExcluded : someExcludedIds) {
+			rm = rm.andNot(getStructures(anExcluded));
+		}
+		return rm;
+	}
+
+	/**
+	 * @return the upper case PDB ids of aSet in increasing order
+	 */
+	public List<String> toPdbIds(PdbIdBitmap aSet) {
+		int[] ordinals = aSet.toArray();
+		List<String> rm = new ArrayList<String>(ordinals.length);
+		for (int o : ordinals) {
+			rm.add(PdbId.unpack(pdbIdsByOrdinal[o]));
+		}
+		return rm;
+	}
+
 	/**
 	 * This method adds to the ligands parsed from "ligands.csv" the
 	 * corresponding PDBids from cc-to-pdb.tdd
@@ -99,19 +313,18 @@ public class ARLigandDictionary {
 	 *            a ligandexpo id to List<PDBIds> map
 	 * 
 	 */
-	private void processLig2PDBMap(Map<String, List<String>> ligToPdb2) {
+	private void processLig2PDBMap(Map<String, int[]> ligToPdb2) {
 
 		for (String aLigExpo : ligToPdb2.keySet()) {
-			List<String> al = ligToPdb2.get(aLigExpo);
+			int[] al = ligToPdb2.get(aLigExpo);
 			if (this.containsLigand(aLigExpo)) {
 				// then add al to that ligand
 
 				int anIndx = this.getIndexOfLigand(aLigExpo);
 				if (anIndx != -1) {
-					// now iterate over the list
-					Iterator<String> itr = al.iterator();
-					while (itr.hasNext()) {
-						this.ligands.get(anIndx).addPdbId(itr.next());
+					Ligand l = this.ligands.get(anIndx);
+					for (int aPdbId : al) {
+						l.addPdbId(aPdbId);
 					}
 				}
 			}
@@ -125,11 +338,11 @@ public class ARLigandDictionary {
 	 * 
 	 * @param InputStream
 	 *            from the ligands dictionary spreadsheet
-	 * @return a map where the key is a LigandExpo id and the valuie is a list
-	 *         of PDBids where key exists in structure
+	 * @return a map where the key is a LigandExpo id and the valuie is the
+	 *         sorted array of the packed PDBids where key exists in structure
 	 */
-	private Map<String, List<String>> retrieveLig2PDBMap(InputStream is2) {
-		Map<String, List<String>> rm = new HashMap<String, List<String>>();
+	private Map<String, int[]> retrieveLig2PDBMap(InputStream is2) {
+		Map<String, int[]> rm = new HashMap<String, int[]>();
 		BufferedReader br = new BufferedReader(new InputStreamReader(is2));
 		if (is2 != null) {
 			String str = null;
@@ -139,9 +352,7 @@ public class ARLigandDictionary {
 					String ligId = t[0].trim();
 					if (ligId.length() > 0) {
 						if (this.containsLigand(ligId)) {
-							List<String> pdbIds = Arrays.asList(t[1]
-									.split("\\s"));
-							rm.put(ligId, pdbIds);
+							rm.put(ligId, packPdbIds(ligId, t[1].split("\\s")));
 						}
 					}
 				}// while
@@ -152,6 +363,24 @@ public class ARLigandDictionary {
 		return rm;
 	}
 
+	/**
+	 * @return the distinct ids of somePdbIds packed by PdbId.pack(), in
+	 *         increasing order. Ids that cannot be packed are left out
+	 */
+	private static int[] packPdbIds(String aLigId, String[] somePdbIds) {
+		PdbIdSet s = new PdbIdSet(somePdbIds.length);
+		for (String aPdbId : somePdbIds) {
+			int p = PdbId.pack(aPdbId);
+			if (p != -1) {
+				s.add(p);
+			} else if (aPdbId.length() > 0) {
+				System.err.println("Skipping invalid PDB id " + aPdbId
+						+ " of ligand " + aLigId);
+			}
+		}
+		return s.toSortedArray();
+	}
+
 	/**
 	 * @param aFile
 	 * @return
@@ -193,6 +422,19 @@ public class ARLigandDictionary {
 		return rm;
 	}
 
+	/**
+	 * Fill ligandIndex from ligands
+	 */
+	private void indexLigands() {
+		ligandIndex.clear();
+		for (int i = 0; i < ligands.size(); i++) {
+			String id = ligands.get(i).getChemicalId().toUpperCase();
+			if (!ligandIndex.containsKey(id)) {
+				ligandIndex.put(id, i);
+			}
+		}
+	}
+
 	/**
 	 * Searches dictionary by Ligand Expo
 	 * 
@@ -201,25 +443,15 @@ public class ARLigandDictionary {
 	 * @return true if found in this object's list of Ligands
 	 */
 	public boolean containsLigand(String aLigExpo) {
-		if (this.ligands != null) {
-			for (Ligand aLigand : this.ligands) {
-				if (aLigand.getChemicalId().equalsIgnoreCase(aLigExpo)) {
-					return true;
-				}
-			}
-		}
-		return false;
+		return getIndexOfLigand(aLigExpo) != -1;
 	}
 
 	private int getIndexOfLigand(String aLigandExpo) {
-		if (this.ligands != null) {
-			for (Ligand aLigand : this.ligands) {
-				if (aLigand.getChemicalId().equalsIgnoreCase(aLigandExpo)) {
-					return ligands.indexOf(aLigand);
-				}
-			}
+		if (aLigandExpo == null) {
+			return -1;
 		}
-		return -1;
+		Integer i = ligandIndex.get(aLigandExpo.toUpperCase());
+		return i == null ? -1 : i;
 	}
 
 	/**
@@ -230,24 +462,35 @@ public class ARLigandDictionary {
 	 * @return
 	 */
 	public Ligand getLigandByLigandExpoId(String aLigExpoId) {
-		if (this.ligands != null) {
-			for (Ligand aLigand : this.ligands) {
-				if (aLigand.getChemicalId().equalsIgnoreCase(aLigExpoId)) {
-					return aLigand;
-				}
-			}
-		}
-		return null;
+		int i = getIndexOfLigand(aLigExpoId);
+		return i == -1 ? null : this.ligands.get(i);
 	}
 
 	/**
 	 * Returns a list of Ligand entries marked with "Y" on column 7 of the
 	 * ARLigandDictionary
 	 * 
-	 * @return a list of ligands
+	 * @return an unmodifiable list of ligands
 	 */
 	public List<Ligand> getLigands() {
 		return this.ligands;
 	}
 
+	/**
+	 * @return the sorted packed PDB ids of every ligand id of cc-to-pdb.tdd
+	 *         that is in the dictionary
+	 */
+	Map<String, int[]> getLigToPdb() {
+		Map<String, int[]> rm = new HashMap<String, int[]>();
+		for (Map.Entry<String, PdbIdBitmap> e : ligToPdb.entrySet()) {
+			int[] ordinals = e.getValue().toArray();
+			int[] pdbIds = new int[ordinals.length];
+			for (int i = 0; i < ordinals.length; i++) {
+				pdbIds[i] = pdbIdsByOrdinal[ordinals[i]];
+			}
+			rm.put(e.getKey(), pdbIds);
+		}
+		return rm;
+	}
+
 }
@@ -0,0 +1,248 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.lib;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+import org.semanticscience.PDBAptamerRetriever.shared.CompressedFiles;
+import org.semanticscience.PDBAptamerRetriever.shared.DownloadTask;
+import org.semanticscience.PDBAptamerRetriever.shared.MirrorManifest;
+
+/**
+ * Retrieves the FASTA entries of several PDB ids with a single request and
+ * routes every record of the response to its own file or to a single
+ * concatenated file. The records of a batch are appended to the concatenated
+ * file at once, by opening and closing it, so that a compressed file always
+ * ends with a complete gzip member once the ids of the batch are recorded
+ *
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class FastaBatchTask extends DownloadTask {
+	public static final String BASE = "http://www.rcsb.org/pdb/files/fasta.txt?structureIdList=";
+	public static final int DEFAULT_BATCH_SIZE = 200;
+	// the directory where per chain or per structure files are created
+	private File directory;
+	// if not null all records are appended to this file
+	private File concatFile;
+	// if true one file is created per chain, else one file per structure
+	private boolean splitChains;
+	// if true the per chain or per structure files are gzip compressed
+	private boolean compressed = false;
+	// the records of the structure being read when writing one file per
+	// structure
+	private StringBuilder pending = new StringBuilder();
+	private String pendingId = null;
+	// the records of the whole response when writing to concatFile, written at
+	// once so that a retried batch never leaves a partial copy behind
+	private StringBuilder concatPending = new StringBuilder();
+	// the per chain files written for every id of the response, recorded in
+	// the manifest only once the whole response is stored
+	private Map<String, List<File>> chainFiles = new LinkedHashMap<String, List<File>>();
+	// if not null every stored file is recorded in this manifest
+	private MirrorManifest manifest = null;
+	private String format = null;
+
+	/**
+	 * @param someIds
+	 *            the PDB ids to retrieve
+	 * @param aDirectory
+	 *            the directory where the FASTA files will be created
+	 * @param aConcatFile
+	 *            a file shared by all tasks where every record will be
+	 *            appended, compressed if it is named *.gz, or null to create
+	 *            one file per record
+	 * @param aSplitChains
+	 *            if true records are written to PDBID-CHAIN.fasta, otherwise
+	 *            they are appended to PDBID.fasta
+	 * @throws MalformedURLException
+	 */
+	public FastaBatchTask(List<String> someIds, File aDirectory,
+			File aConcatFile, boolean aSplitChains)
+			throws MalformedURLException {
+		super(StringUtils.join(someIds, ","), new URL(BASE
+				+ StringUtils.join(someIds, ",")));
+		directory = aDirectory;
+		concatFile = aConcatFile;
+		splitChains = aSplitChains;
+	}
+
+	/**
+	 * Split someIds into tasks of at most aBatchSize ids each
+	 *
+	 * @return a list of tasks covering all of someIds
+	 * @throws MalformedURLException
+	 */
+	public static List<FastaBatchTask> createTasks(List<String> someIds,
+			int aBatchSize, File aDirectory, File aConcatFile,
+			boolean aSplitChains) throws MalformedURLException {
+		if (aBatchSize < 1) {
+			throw new IllegalArgumentException(
+					"The FASTA batch size must be at least 1!");
+		}
+		List<FastaBatchTask> rm = new ArrayList<FastaBatchTask>();
+		for (int i = 0; i < someIds.size(); i += aBatchSize) {
+			List<String> batch = someIds.subList(i,
+					Math.min(i + aBatchSize, someIds.size()));
+			rm.add(new FastaBatchTask(batch, aDirectory, aConcatFile,
+					aSplitChains));
+		}
+		return rm;
+	}
+
+	@Override
+	public boolean store(InputStream in) throws IOException {
+		FastaRecordReader r = new FastaRecordReader(new InputStreamReader(in,
+				"UTF-8"));
+		int count = 0;
+		pending.setLength(0);
+		pendingId = null;
+		concatPending.setLength(0);
+		chainFiles.clear();
+		Set<String> seen = new LinkedHashSet<String>();
+		FastaRecord rec;
+		while ((rec = r.next()) != null) {
+			route(rec);
+			seen.add(rec.getPdbId());
+			count++;
+		}
+		flushPending();
+		if (manifest != null) {
+			// an id is only current once all of its chains are stored
+			for (Map.Entry<String, List<File>> e : chainFiles.entrySet()) {
+				for (File f : e.getValue()) {
+					manifest.record(e.getKey(), format, f);
+				}
+			}
+		}
+		chainFiles.clear();
+		if (concatFile != null && concatPending.length() > 0) {
+			long length;
+			// several workers share the file. Closing the writer finishes the
+			// gzip member, so the recorded length is all readable
+			synchronized (FastaBatchTask.class) {
+				Writer w = CompressedFiles.openWriter(concatFile, true);
+				try {
+					w.write(concatPending.toString());
+				} finally {
+					w.close();
+				}
+				length = concatFile.length();
+			}
+			concatPending.setLength(0);
+			if (manifest != null) {
+				for (String anId : seen) {
+					manifest.recordAppended(anId, format, concatFile, length);
+				}
+			}
+		}
+		return count > 0;
+	}
+
+	/**
+	 * Write a single record to its destination
+	 *
+	 * @param aRecord
+	 * @throws IOException
+	 */
+	private void route(FastaRecord aRecord) throws IOException {
+		if (concatFile != null) {
+			concatPending.append(aRecord.toString());
+		} else if (splitChains) {
+			File f = getOutputFile(aRecord.getPdbIdChain());
+			CompressedFiles.writeString(f, aRecord.toString());
+			List<File> files = chainFiles.get(aRecord.getPdbId());
+			if (files == null) {
+				files = new ArrayList<File>();
+				chainFiles.put(aRecord.getPdbId(), files);
+			}
+			files.add(f);
+		} else {
+			// the records of a structure are contiguous in the response, so
+			// each file is written once all of its chains have been read
+			if (pendingId != null && !pendingId.equals(aRecord.getPdbId())) {
+				flushPending();
+			}
+			pendingId = aRecord.getPdbId();
+			pending.append(aRecord.toString());
+		}
+	}
+
+	private void flushPending() throws IOException {
+		if (pendingId != null) {
+			File f = getOutputFile(pendingId);
+			CompressedFiles.writeString(f, pending.toString());
+			if (manifest != null) {
+				manifest.record(pendingId, format, f);
+			}
+			pending.setLength(0);
+			pendingId = null;
+		}
+	}
+
+	private File getOutputFile(String aName) {
+		String fn = aName + ".fasta";
+		if (compressed) {
+			fn += CompressedFiles.GZ_EXTENSION;
+		}
+		return new File(directory, fn);
+	}
+
+	/**
+	 * @param aCompressed
+	 *            if true the per chain or per structure files are gzip
+	 *            compressed (PDBID-CHAIN.fasta.gz)
+	 */
+	public void setCompressed(boolean aCompressed) {
+		compressed = aCompressed;
+	}
+
+	/**
+	 * @param aManifest
+	 *            the manifest where the stored files are recorded
+	 * @param aFormat
+	 *            the format of the files as recorded in the manifest
+	 */
+	public void setManifest(MirrorManifest aManifest, String aFormat) {
+		manifest = aManifest;
+		format = aFormat;
+	}
+
+	/**
+	 * @return true if the per chain or per structure files are gzip compressed
+	 */
+	public boolean isCompressed() {
+		return compressed;
+	}
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.lib;
+
+/**
+ * A single entry of a FASTA file as served by the PDB. The id line has the
+ * form &gt;PDBID:CHAIN|PDBID|CHAIN|SEQUENCE
+ *
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class FastaRecord {
+	// the id line without the leading >
+	private String header;
+	// the sequence lines, each terminated by a new line
+	private String sequence;
+
+	public FastaRecord(String aHeader, String aSequence) {
+		header = aHeader;
+		sequence = aSequence;
+	}
+
+	/**
+	 * @return the PDB id found before the : in the id line
+	 */
+	public String getPdbId() {
+		return getIdChain()[0];
+	}
+
+	/**
+	 * @return the chain id found after the : in the id line or an empty string
+	 *         if the id line does not name a chain
+	 */
+	public String getChainId() {
+		String[] p = getIdChain();
+		if (p.length > 1) {
+			return p[1];
+		}
+		return "";
+	}
+
+	/**
+	 * @return PDBID-CHAIN, as used to name the per chain FASTA files
+	 */
+	public String getPdbIdChain() {
+		return getPdbId() + "-" + getChainId();
+	}
+
+	private String[] getIdChain() {
+		String idChain = header.split("\\|")[0];
+		return idChain.split("\\:");
+	}
+
+	/**
+	 * @return the header
+	 */
+	public String getHeader() {
+		return header;
+	}
+
+	/**
+	 * @return the sequence
+	 */
+	public String getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return this record in FASTA format
+	 */
+	@Override
+	public String toString() {
+		return ">" + header + "\n" + sequence;
+	}
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.lib;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads FastaRecords one at a time from a stream so that responses holding
+ * many entries never need to be held in memory at once
+ *
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class FastaRecordReader {
+	private BufferedReader reader;
+	// the id line of the next record, already consumed from reader
+	private String nextHeader = null;
+
+	public FastaRecordReader(Reader aReader) {
+		if (aReader instanceof BufferedReader) {
+			reader = (BufferedReader) aReader;
+		} else {
+			reader = new BufferedReader(aReader);
+		}
+	}
+
+	/**
+	 * @return the next record or null if there are no more
+	 * @throws IOException
+	 */
+	public FastaRecord next() throws IOException {
+		String line;
+		// skip anything before the first id line
+		while (nextHeader == null) {
+			line = reader.readLine();
+			if (line == null) {
+				return null;
+			}
+			if (line.startsWith(">")) {
+				nextHeader = line.substring(1);
+			}
+		}
+		String header = nextHeader;
+		nextHeader = null;
+		StringBuilder seq = new StringBuilder();
+		while ((line = reader.readLine()) != null) {
+			if (line.startsWith(">")) {
+				nextHeader = line.substring(1);
+				break;
+			}
+			if (line.length() > 0) {
+				seq.append(line).append("\n");
+			}
+		}
+		return new FastaRecord(header, seq.toString());
+	}
+
+	public void close() throws IOException {
+		reader.close();
+	}
+}
@@ -20,25 +20,36 @@
  */
 package org.semanticscience.PDBAptamerRetriever.lib;
 
-import java.util.ArrayList;
+import java.io.StringWriter;
 import java.util.List;
+
+import au.com.bytecode.opencsv.CSVWriter;
 //TODO: use REST to get the list of pdbids for a given ligand
 /**
  * @author Jose Cruz-Toledo
  * 
  */
 public class Ligand {
-	private List<String> pdbIds = null;
+	/**
+	 * The separator of the fields of the ligand report
+	 */
+	public static final char CSV_SEPARATOR = '\t';
+	// the ids of the structures this ligand is found in
+	private PdbIdSet pdbIds = null;
 	private String chemicalId = null;
 	private String type = null;
 	private Double molecularWeight = 0.0;
 	private String chemicalName = null;
 	private String formula = null;
-	private String inchiKey = null;
-	private String inchi = null;
-	private String chebiId = null;
-	private String smiles = null;
-	private boolean isION = false;
+	// filled in by fillFrom() while other threads may be reading them
+	private volatile String inchiKey = null;
+	private volatile String inchi = null;
+	private volatile String chebiId = null;
+	private volatile String smiles = null;
+	private volatile boolean isION = false;
+	// set once the ligand belongs to an ARLigandDictionary, which never
+	// changes
+	private volatile boolean frozen = false;
 	
 
 	
@@ -79,7 +90,7 @@ public class Ligand {
 		this.inchiKey = inchiKey;
 		this.inchi = inchi;
 		this.smiles = smiles;
-		this.pdbIds = new ArrayList<String>();
+		this.pdbIds = new PdbIdSet();
 	}
 	
 	public String getCSVHeader(){
@@ -87,19 +98,49 @@ public class Ligand {
 		b += "PDBID\tCHEMICAL ID\tCHEMICAL NAME\tTYPE\tMW\tFORMULA\tINCHI\tINCHIKEY\tSMILES\n";
 		return b;
 	}
+	/**
+	 * @return the fields of a line of the ligand report
+	 */
+	public String[] getCSVFields() {
+		return new String[] { getPdbIds().toString(), getChemicalId(),
+				getChemicalName(), getType(),
+				String.valueOf(getMolecularWeight()), getFormula(),
+				getSmiles() };
+	}
+
+	/**
+	 * @param aPdbId
+	 *            the structure the line is written for
+	 * @return the fields of a line of the ligand report of aPdbId
+	 */
+	public String[] getCSVFields(String aPdbId) {
+		String[] rm = getCSVFields();
+		rm[0] = "[" + aPdbId + "]";
+		return rm;
+	}
+
+	/**
+	 * @return a line of the ligand report, see getCSVFields()
+	 */
 	public String getCSVLine() {
-		String b = "";
-		b += getPdbIds() + "\t" + getChemicalId() + "\t"
-				+ getChemicalName().replaceAll(",", "") + "\t" + getType()
-				+"\t"+getMolecularWeight()+"\t"+getFormula()+"\t"+getSmiles()+"\n";
-		return b;
+		StringWriter sw = new StringWriter();
+		new CSVWriter(sw, CSV_SEPARATOR).writeNext(getCSVFields());
+		return sw.toString();
 	}
 	/**
 	 * Retrieve a list of all known pdbIds where this ligand is found
-	 * @return a list of pdbids
+	 * @return a copy of the list of upper case pdbids
+	 */
+	public synchronized List<String> getPdbIds(){
+		return this.pdbIds.toList();
+	}
+
+	/**
+	 * @param aPdbId a pdb id in any case
+	 * @return true if this ligand is known to be found in aPdbId
 	 */
-	public List<String> getPdbIds(){
-		return this.pdbIds;
+	public synchronized boolean containsPdbId(String aPdbId){
+		return pdbIds.contains(aPdbId);
 	}
 
 	/**
@@ -115,17 +156,62 @@ public class Ligand {
 	 * @param aPdbId a pdb id that you wish to add
 	 * @return true if added to the list. False if it was already in the list
 	 */
-	public boolean addPdbId(String aPdbId){
-		//check if the PDB ID is in the list
-		if(this.getPdbIds().contains(aPdbId)){
-			return false;
-		}else{
-			pdbIds.add(aPdbId);
-			return true;
+	public synchronized boolean addPdbId(String aPdbId){
+		checkNotFrozen();
+		return pdbIds.add(aPdbId);
+	}
+
+	/**
+	 * @param aPackedId a pdb id packed by PdbId.pack()
+	 * @return true if added to the list. False if it was already in the list
+	 */
+	synchronized boolean addPdbId(int aPackedId){
+		checkNotFrozen();
+		return pdbIds.add(aPackedId);
+	}
+
+	/**
+	 * Forbid any further change to this ligand
+	 */
+	void freeze(){
+		frozen = true;
+	}
+
+	private void checkNotFrozen(){
+		if(frozen){
+			throw new UnsupportedOperationException("The ligands of an ARLigandDictionary cannot change!");
 		}
-		
+	}
+
+	/**
+	 * Take the fields this ligand lacks from another description of the same
+	 * chemical, e.g. the ChEBI id from the ARLigandDictionary or the SMILES
+	 * from the PDB
+	 */
+	void fillFrom(Ligand anOther){
+		checkNotFrozen();
+		if(isEmpty(inchiKey)){
+			inchiKey = anOther.inchiKey;
+		}
+		if(isEmpty(inchi)){
+			inchi = anOther.inchi;
+		}
+		if(isEmpty(smiles)){
+			smiles = anOther.smiles;
+		}
+		if(isEmpty(chebiId)){
+			chebiId = anOther.chebiId;
+		}
+		if(anOther.isION){
+			isION = true;
+		}
+	}
+
+	private static boolean isEmpty(String aString){
+		return aString == null || aString.length() == 0;
 	}
 	public void setIsION(boolean anIsION){
+		checkNotFrozen();
 		this.isION = anIsION;
 	}
 	public boolean isION(){
@@ -188,6 +274,13 @@ public class Ligand {
 		return smiles;
 	}
 
+	/**
+	 * @return the ChEBI id
+	 */
+	public String getChebiId() {
+		return chebiId;
+	}
+
 	/* (non-Javadoc)
 	 * @see java.lang.Object#hashCode()
 	 */
@@ -0,0 +1,324 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.lib;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * The ARLigandDictionary compiled into a compact binary file at build time,
+ * so that the dictionary is loaded with a single read instead of parsing
+ * ligands.csv and cc-to-pdb.tdd. The file holds a table of the distinct
+ * strings, the ligands and, for every ligand id of cc-to-pdb.tdd, the
+ * posting list of its packed PDB ids. It also records the length, time of
+ * last modification and CRC32 of both resources: if either has another length
+ * or is newer than when the snapshot was compiled the snapshot is ignored and
+ * the text is parsed instead. Only the length and time are checked on load so
+ * that the resources themselves are not read. The snapshot is written to the
+ * classes directory by main() during the process-classes phase of the build
+ *
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class LigandDictionarySnapshot {
+	/**
+	 * The classpath resource of the snapshot
+	 */
+	public static final String SNAPSHOT = "ligand-dictionary.bin";
+	// identifies the file format
+	private static final int MAGIC = 0x41524C44;
+	private static final int VERSION = 3;
+	// the resources the snapshot is compiled from
+	private static final String[] RESOURCES = { ARLigandDictionary.dic_fn,
+			ARLigandDictionary.pdb_map };
+
+	private LigandDictionarySnapshot() {
+	}
+
+	/**
+	 * Compile the ARLigandDictionary resources into SNAPSHOT
+	 *
+	 * @param args
+	 *            the directory the snapshot is written to, usually
+	 *            target/classes
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 1) {
+			System.out
+					.println("Usage: LigandDictionarySnapshot <output directory>");
+			System.exit(1);
+		}
+		File dir = new File(args[0]);
+		FileUtils.forceMkdir(dir);
+		ARLigandDictionary d = new ARLigandDictionary(false);
+		File f = new File(dir, SNAPSHOT);
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(f));
+		try {
+			write(d.getLigands(), d.getLigToPdb(), fingerprint(), out);
+		} finally {
+			out.close();
+		}
+		System.out.println(f + " written with " + d.getLigands().size()
+				+ " ligands");
+	}
+
+	/**
+	 * Read the snapshot on the classpath into someLigands and aLigToPdb
+	 *
+	 * @return true if the snapshot was read, false if there is none or the
+	 *         resources changed since it was compiled, in which case nothing
+	 *         was added
+	 */
+	static boolean load(List<Ligand> someLigands, Map<String, int[]> aLigToPdb) {
+		InputStream in = resource(SNAPSHOT);
+		if (in == null) {
+			return false;
+		}
+		try {
+			long[] st = stamps();
+			return st != null && read(in, st, someLigands, aLigToPdb);
+		} catch (IOException e) {
+			System.err.println("Could not read " + SNAPSHOT + ": " + e);
+			return false;
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	/**
+	 * @return the length and time of last modification of ligands.csv and of
+	 *         cc-to-pdb.tdd, found without reading them, or null if either is
+	 *         missing
+	 */
+	static long[] stamps() throws IOException {
+		long[] rm = new long[2 * RESOURCES.length];
+		for (int i = 0; i < RESOURCES.length; i++) {
+			URL u = LigandDictionarySnapshot.class.getClassLoader()
+					.getResource(RESOURCES[i]);
+			if (u == null) {
+				return null;
+			}
+			URLConnection c = u.openConnection();
+			try {
+				rm[2 * i] = c.getContentLength();
+				rm[2 * i + 1] = c.getLastModified();
+			} finally {
+				// a jar entry or file is only opened to find its length
+				IOUtils.closeQuietly(c.getInputStream());
+			}
+		}
+		return rm;
+	}
+
+	/**
+	 * @return the length, time of last modification and CRC32 of ligands.csv
+	 *         and of cc-to-pdb.tdd as written to the snapshot, or null if
+	 *         either is missing. Both resources are read in full
+	 */
+	static long[] fingerprint() throws IOException {
+		long[] st = stamps();
+		if (st == null) {
+			return null;
+		}
+		long[] rm = new long[3 * RESOURCES.length];
+		for (int i = 0; i < RESOURCES.length; i++) {
+			InputStream in = resource(RESOURCES[i]);
+			try {
+				CRC32 crc = new CRC32();
+				crc.update(IOUtils.toByteArray(in));
+				rm[3 * i] = st[2 * i];
+				rm[3 * i + 1] = st[2 * i + 1];
+				rm[3 * i + 2] = crc.getValue();
+			} finally {
+				in.close();
+			}
+		}
+		return rm;
+	}
+
+	private static InputStream resource(String aName) {
+		return LigandDictionarySnapshot.class.getClassLoader()
+				.getResourceAsStream(aName);
+	}
+
+	/**
+	 * @param aFingerprint
+	 *            the fingerprint of the resources someLigands and aLigToPdb
+	 *            were read from, see fingerprint()
+	 */
+	static void write(List<Ligand> someLigands, Map<String, int[]> aLigToPdb,
+			long[] aFingerprint, OutputStream anOut) throws IOException {
+		// the strings in order of first use and their index
+		List<String> strings = new ArrayList<String>();
+		Map<String, Integer> index = new HashMap<String, Integer>();
+		for (Ligand l : someLigands) {
+			intern(l.getChemicalId(), strings, index);
+			intern(l.getType(), strings, index);
+			intern(l.getChemicalName(), strings, index);
+			intern(l.getFormula(), strings, index);
+			intern(l.getChebiId(), strings, index);
+		}
+		for (String aLigId : aLigToPdb.keySet()) {
+			intern(aLigId, strings, index);
+		}
+		DataOutputStream out = new DataOutputStream(anOut);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		for (long v : aFingerprint) {
+			out.writeLong(v);
+		}
+		out.writeInt(strings.size());
+		for (String s : strings) {
+			out.writeUTF(s);
+		}
+		out.writeInt(someLigands.size());
+		for (Ligand l : someLigands) {
+			out.writeInt(indexOf(l.getChemicalId(), index));
+			out.writeInt(indexOf(l.getType(), index));
+			out.writeDouble(l.getMolecularWeight() == null ? -1.0 : l
+					.getMolecularWeight());
+			out.writeInt(indexOf(l.getChemicalName(), index));
+			out.writeInt(indexOf(l.getFormula(), index));
+			out.writeInt(indexOf(l.getChebiId(), index));
+			out.writeBoolean(l.isION());
+		}
+		out.writeInt(aLigToPdb.size());
+		for (Map.Entry<String, int[]> e : aLigToPdb.entrySet()) {
+			out.writeInt(indexOf(e.getKey(), index));
+			out.writeInt(e.getValue().length);
+			for (int aPdbId : e.getValue()) {
+				out.writeInt(aPdbId);
+			}
+		}
+		out.flush();
+	}
+
+	/**
+	 * Read a snapshot written by write() with a single bulk read
+	 *
+	 * @param aStamps
+	 *            the lengths and times of the current resources, see stamps()
+	 * @return false if a resource has another length or is newer than the
+	 *         one the snapshot was compiled from, in which case nothing was
+	 *         added
+	 * @throws IOException
+	 *             if anIn is not a snapshot or is truncated
+	 */
+	static boolean read(InputStream anIn, long[] aStamps,
+			List<Ligand> someLigands, Map<String, int[]> aLigToPdb)
+			throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+				IOUtils.toByteArray(anIn)));
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Not a ligand dictionary snapshot");
+		}
+		if (in.readInt() != VERSION) {
+			return false;
+		}
+		for (int i = 0; i < RESOURCES.length; i++) {
+			long length = in.readLong();
+			long modified = in.readLong();
+			// the CRC is only a record of what the snapshot was built from
+			in.readLong();
+			if (length != aStamps[2 * i] || aStamps[2 * i + 1] > modified) {
+				return false;
+			}
+		}
+		String[] strings = new String[in.readInt()];
+		for (int i = 0; i < strings.length; i++) {
+			strings[i] = in.readUTF();
+		}
+		List<Ligand> ligands = new ArrayList<Ligand>();
+		int n = in.readInt();
+		for (int i = 0; i < n; i++) {
+			String chemicalId = string(strings, in.readInt());
+			String type = string(strings, in.readInt());
+			double mw = in.readDouble();
+			String name = string(strings, in.readInt());
+			String formula = string(strings, in.readInt());
+			String chebi = string(strings, in.readInt());
+			boolean ion = in.readBoolean();
+			Ligand l = new Ligand(chemicalId, type, mw < 0 ? null : mw, name,
+					formula, "", "", "", chebi);
+			if (ion) {
+				l.setIsION(true);
+			}
+			ligands.add(l);
+		}
+		Map<String, int[]> ligToPdb = new HashMap<String, int[]>();
+		n = in.readInt();
+		for (int i = 0; i < n; i++) {
+			String ligId = string(strings, in.readInt());
+			int[] pdbIds = new int[in.readInt()];
+			for (int j = 0; j < pdbIds.length; j++) {
+				pdbIds[j] = in.readInt();
+				if (pdbIds[j] <= 0) {
+					throw new IOException("Invalid packed PDB id " + pdbIds[j]);
+				}
+			}
+			ligToPdb.put(ligId, pdbIds);
+		}
+		// only add the ligands once the whole snapshot could be read
+		someLigands.addAll(ligands);
+		aLigToPdb.putAll(ligToPdb);
+		return true;
+	}
+
+	private static void intern(String aString, List<String> someStrings,
+			Map<String, Integer> anIndex) {
+		if (aString != null && !anIndex.containsKey(aString)) {
+			anIndex.put(aString, someStrings.size());
+			someStrings.add(aString);
+		}
+	}
+
+	private static int indexOf(String aString, Map<String, Integer> anIndex) {
+		return aString == null ? -1 : anIndex.get(aString);
+	}
+
+	private static String string(String[] someStrings, int anIndex)
+			throws IOException {
+		if (anIndex == -1) {
+			return null;
+		}
+		if (anIndex < 0 || anIndex >= someStrings.length) {
+			throw new IOException("Invalid string index " + anIndex);
+		}
+		return someStrings[anIndex];
+	}
+}
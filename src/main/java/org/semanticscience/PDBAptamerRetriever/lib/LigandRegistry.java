@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.lib;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps a single canonical Ligand per chemical id so that a ligand found in
+ * thousands of structures, e.g. MG, has its names, formula, InChI and SMILES
+ * stored once. The structures a ligand is found in are tracked by the
+ * registry rather than on the shared Ligand, the ligands of a structure by
+ * its PDBRecord. The ligands of the ARLigandDictionary are kept apart
+ *
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class LigandRegistry {
+	private static LigandRegistry defaultRegistry = null;
+	// the canonical ligands by upper case chemical id
+	private Map<String, Ligand> ligands = new HashMap<String, Ligand>();
+	// the structures every canonical ligand was found in, by upper case
+	// chemical id
+	private Map<String, PdbIdSet> structures = new HashMap<String, PdbIdSet>();
+
+	/**
+	 * @return the registry shared by PDBRecord and PDBRecordStore
+	 */
+	public static synchronized LigandRegistry getDefault() {
+		if (defaultRegistry == null) {
+			defaultRegistry = new LigandRegistry();
+		}
+		return defaultRegistry;
+	}
+
+	/**
+	 * Replace the shared registry, null for a new empty one
+	 */
+	public static synchronized void setDefault(LigandRegistry aRegistry) {
+		defaultRegistry = aRegistry;
+	}
+
+	/**
+	 * Find the canonical ligand with the chemical id of aLigand. If there is
+	 * none aLigand becomes the canonical one, otherwise the fields missing
+	 * from the canonical ligand are taken from aLigand
+	 *
+	 * @param aLigand
+	 *            a ligand that was just read
+	 * @return the canonical ligand, aLigand if it has no chemical id
+	 */
+	public synchronized Ligand intern(Ligand aLigand) {
+		if (aLigand.getChemicalId() == null) {
+			return aLigand;
+		}
+		String key = aLigand.getChemicalId().toUpperCase();
+		Ligand rm = ligands.get(key);
+		if (rm == null) {
+			ligands.put(key, aLigand);
+			return aLigand;
+		}
+		if (rm != aLigand) {
+			rm.fillFrom(aLigand);
+		}
+		return rm;
+	}
+
+	/**
+	 * Note that aLigand is found in the structure aPdbId
+	 *
+	 * @return true if this was not known yet
+	 */
+	public synchronized boolean addStructure(Ligand aLigand, String aPdbId) {
+		if (aLigand.getChemicalId() == null) {
+			return false;
+		}
+		String key = aLigand.getChemicalId().toUpperCase();
+		PdbIdSet s = structures.get(key);
+		if (s == null) {
+			s = new PdbIdSet();
+			structures.put(key, s);
+		}
+		return s.add(aPdbId);
+	}
+
+	/**
+	 * @return a copy of the upper case ids of the structures the ligand of
+	 *         aChemicalId was found in
+	 */
+	public synchronized List<String> getStructures(String aChemicalId) {
+		PdbIdSet s = structures.get(aChemicalId.toUpperCase());
+		return s == null ? new ArrayList<String>() : s.toList();
+	}
+
+	/**
+	 * @return true if the ligand of aChemicalId was found in aPdbId
+	 */
+	public synchronized boolean isFoundIn(String aChemicalId, String aPdbId) {
+		PdbIdSet s = structures.get(aChemicalId.toUpperCase());
+		return s != null && s.contains(aPdbId);
+	}
+
+	/**
+	 * @return the canonical ligand of aChemicalId, or null if there is none
+	 */
+	public synchronized Ligand get(String aChemicalId) {
+		return ligands.get(aChemicalId.toUpperCase());
+	}
+
+	/**
+	 * @return all of the canonical ligands
+	 */
+	public synchronized List<Ligand> getLigands() {
+		return new ArrayList<Ligand>(ligands.values());
+	}
+
+	/**
+	 * @return the number of canonical ligands
+	 */
+	public synchronized int size() {
+		return ligands.size();
+	}
+}
@@ -20,32 +20,29 @@
  */
 package org.semanticscience.PDBAptamerRetriever.lib;
 
-import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
+import org.apache.commons.lang.StringUtils;
+import org.semanticscience.PDBAptamerRetriever.shared.RemoteSource;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-
-import org.semanticscience.PDBAptamerRetriever.shared.URLReader;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
+import au.com.bytecode.opencsv.CSVWriter;
 
 /**
  * @author Jose Cruz-Toledo
  * 
  */
 public class PDBRecord {
-	private final String scheme = "http";
-	private final String host = "www.rcsb.org";
-	private final String path = "/pdb/rest/describePDB";
+	private static final String scheme = "http";
+	private static final String host = "www.rcsb.org";
+	private static final String path = "/pdb/rest/describePDB";
 	private String pdbId = null;
 	private String title = null;
 	private int pmid = -1;
@@ -54,152 +51,261 @@ public class PDBRecord {
 	private int numberOfResidues = -1;
 	private int numberOfAtoms = -1;
 	/**
-	 * The Ligands identified by PDB REST
+	 * The Ligands identified by PDB REST, null until they are first needed
 	 */
-	private List<Ligand> ligands = null;
+	private volatile List<Ligand> ligands = null;
+	// the id this record was created for
+	private String requestedId = null;
+	// why the last attempt to retrieve the description failed, null if it
+	// succeeded or the PDB does not know the id
+	private volatile Exception failure = null;
+	// why the last attempt to retrieve the ligands failed, null if it
+	// succeeded or was never made
+	private volatile Exception ligandFailure = null;
 
 	public PDBRecord(String aPdbid) {
-		retrieveRecordInfo(aPdbid);
-		ligands = retrieveLigands(aPdbid);
+		this(aPdbid, true);
 	}
 
 	/**
 	 * @param aPdbid
-	 * @return
+	 *            the PDB id of the record
+	 * @param aLoad
+	 *            if false nothing is retrieved until loadDescription() is
+	 *            called. The ligands are always retrieved on demand
 	 */
-	private List<Ligand> retrieveLigands(String aPdbid) {
-		List<Ligand> rm = new ArrayList<Ligand>();
-		try {
-			String p = "/pdb/rest/ligandInfo";
-			String qs = "structureId=" + aPdbid;
-			URLReader uread = new URLReader(scheme, host, p, qs);
-			Document doc = loadXMLFromString(uread.getContents());
-			doc.getDocumentElement().normalize();
-			NodeList nl = doc.getElementsByTagName("ligand");
-			for (int i = 0; i < nl.getLength(); i++) {
-				Node n = nl.item(i);
-				String chemicalId = null;
-				String type = null;
-				String chemicalName = null;
-				String formula = null;
-				String inchiKey = null;
-				String inchi = null;
-				String smiles = null;
-				Double mw = -1.0;
-				if (n.getNodeType() == Node.ELEMENT_NODE) {
-					Element e = (Element) n;
-					NamedNodeMap atts = e.getAttributes();
-					for (int j = 0; j < atts.getLength(); j++) {
-						if (atts.item(j).getNodeName().equals("chemicalID")) {
-							chemicalId = atts.item(j).getNodeValue();
-						}
-						if (atts.item(j).getNodeName().equals("type")) {
-							type = atts.item(j).getNodeValue();
-						}
-						if (atts.item(j).getNodeName()
-								.equals("molecularWeight")) {
-							mw = Double
-									.parseDouble(atts.item(j).getNodeValue());
-						}
-					}// attributes
-						// chemicalName
-					chemicalName = e.getElementsByTagName("chemicalName")
-							.item(0).getTextContent();
-					formula = e.getElementsByTagName("formula").item(0)
-							.getTextContent();
-					inchiKey = e.getElementsByTagName("InChIKey").item(0)
-							.getTextContent();
-					inchi = e.getElementsByTagName("InChI").item(0)
-							.getTextContent();
-					smiles = e.getElementsByTagName("smiles").item(0)
-							.getTextContent();
-					Ligand l = new Ligand(chemicalId, type,
-							mw, chemicalName, formula, inchiKey, inchi, smiles, "");
-					l.addPdbId(aPdbid);
-					rm.add(l);
-				}
-			}
-
-		} catch (ParserConfigurationException e) {
-			e.printStackTrace();
-		} catch (Exception e) {
-			e.printStackTrace();
+	PDBRecord(String aPdbid, boolean aLoad) {
+		requestedId = aPdbid;
+		if (aLoad) {
+			loadDescription();
 		}
-		return rm;
 	}
 
-	private void retrieveRecordInfo(String aPDBId) {
-		try {
-			String qs = "structureId=" + aPDBId;
-			URLReader uread = new URLReader(scheme, host, path, qs);
-			Document doc = loadXMLFromString(uread.getContents());
-			doc.getDocumentElement().normalize();
-			NodeList nl = doc.getElementsByTagName("PDB");
-			if (nl.getLength() > 0) {
-				for (int i = 0; i < nl.getLength(); i++) {
-					Node n = nl.item(i);
-					if (n.getNodeType() == Node.ELEMENT_NODE) {
-						Element e = (Element) n;
-						NamedNodeMap atts = e.getAttributes();
-						for (int j = 0; j < atts.getLength(); j++) {
-
-							if (atts.item(j).getNodeName()
-									.equals("structureId")) {
-								pdbId = atts.item(j).getNodeValue();
-							}
-							if (atts.item(j).getNodeName().equals("title")) {
-								title = atts.item(j).getNodeValue().replaceAll(",", "");								
-							}
-							if (atts.item(j).getNodeName().equals("pubmedId")) {
-								pmid = Integer.parseInt(atts.item(j)
-										.getNodeValue());
-							}
-							if (atts.item(j).getNodeName().equals("expMethod")) {
-								expMethod = atts.item(j).getNodeValue();
-							}
-							if (atts.item(j).getNodeName().equals("resolution")) {
-								resolution = Double.parseDouble(atts.item(j)
-										.getNodeValue());
-							}
-							if (atts.item(j).getNodeName()
-									.equals("nr_residues")) {
-								numberOfResidues = Integer.parseInt(atts
-										.item(j).getNodeValue());
-							}
-							if (atts.item(j).getNodeName().equals("nr_atoms")) {
-								numberOfAtoms = Integer.parseInt(atts.item(j)
-										.getNodeValue());
+	/**
+	 * Restore a record read from a PDBRecordStore
+	 * 
+	 * @param someLigands
+	 *            the ligands of the record, or null if they were never
+	 *            retrieved
+	 */
+	PDBRecord(String aRequestedId, String aPdbId, String aTitle, int aPmid,
+			String anExpMethod, Double aResolution, int aNumberOfResidues,
+			int aNumberOfAtoms, List<Ligand> someLigands) {
+		requestedId = aRequestedId;
+		pdbId = aPdbId;
+		title = aTitle;
+		pmid = aPmid;
+		expMethod = anExpMethod;
+		resolution = aResolution;
+		numberOfResidues = aNumberOfResidues;
+		numberOfAtoms = aNumberOfAtoms;
+		ligands = someLigands;
+	}
+
+	/**
+	 * Retrieve the description of this record (title, resolution, etc.)
+	 */
+	void loadDescription() {
+		loadDescriptions(Collections.singletonList(this));
+	}
+
+	/**
+	 * Retrieve the ligands of this record
+	 */
+	void loadLigands() {
+		loadLigands(Collections.singletonList(this));
+	}
+
+	/**
+	 * Retrieve the descriptions of someRecords with a single describePDB
+	 * request
+	 * 
+	 * @param someRecords
+	 *            records created for distinct PDB ids
+	 */
+	static void loadDescriptions(List<PDBRecord> someRecords) {
+		final Map<String, PDBRecord> byId = indexById(someRecords);
+		for (PDBRecord r : someRecords) {
+			r.failure = null;
+		}
+		PDBResponseParser parser = new PDBResponseParser(
+				new PDBResponseParser.Listener() {
+					public void start() {
+					}
+
+					public void description(Map<String, String> someAttributes) {
+						String id = someAttributes.get("structureId");
+						PDBRecord r = id == null ? null : byId.get(id
+								.toUpperCase());
+						if (r != null) {
+							try {
+								r.readDescription(someAttributes);
+							} catch (NumberFormatException e) {
+								r.failure = e;
 							}
 						}
 					}
+
+					public void ligand(String aStructureId, Ligand aLigand) {
+					}
+				});
+		try {
+			RemoteSource.getDefault().get(
+					getURL(path, joinIds(someRecords)), parser);
+		} catch (Exception e) {
+			System.err.println("Could not retrieve the descriptions of "
+					+ someRecords.size() + " PDB records: " + e);
+			for (PDBRecord r : someRecords) {
+				if (!r.isRetrieved()) {
+					r.failure = e;
 				}
-			}else{
-				throw new Exception("Invalid PDB ID: "+aPDBId);
 			}
+			return;
+		}
+		for (PDBRecord r : someRecords) {
+			if (!r.isRetrieved() && r.failure == null) {
+				System.err.println("Invalid PDB ID: " + r.getRequestedId());
+			}
+		}
+	}
+
+	/**
+	 * Retrieve the ligands of someRecords with a single ligandInfo request.
+	 * Every ligand of the response names the structure it belongs to. If the
+	 * request fails the ligands of someRecords are left unloaded, rather than
+	 * empty, and getLigandFailure() tells why
+	 * 
+	 * @param someRecords
+	 *            records created for distinct PDB ids
+	 */
+	static void loadLigands(final List<PDBRecord> someRecords) {
+		final Map<String, PDBRecord> byId = indexById(someRecords);
+		// the ligands are only published once the whole response is read
+		final Map<PDBRecord, List<Ligand>> found = new HashMap<PDBRecord, List<Ligand>>();
+		PDBResponseParser parser = new PDBResponseParser(
+				new PDBResponseParser.Listener() {
+					public void start() {
+						for (PDBRecord r : someRecords) {
+							found.put(r, new ArrayList<Ligand>());
+						}
+					}
+
+					public void description(Map<String, String> someAttributes) {
+					}
 
-		} catch (ParserConfigurationException e) {
-			e.printStackTrace();
+					public void ligand(String aStructureId, Ligand aLigand) {
+						PDBRecord r = aStructureId == null ? null : byId
+								.get(aStructureId.toUpperCase());
+						if (r == null && someRecords.size() == 1) {
+							r = someRecords.get(0);
+						}
+						if (r != null) {
+							LigandRegistry reg = LigandRegistry.getDefault();
+							Ligand l = reg.intern(aLigand);
+							reg.addStructure(l, r.getRequestedId());
+							found.get(r).add(l);
+						}
+					}
+				});
+		try {
+			RemoteSource.getDefault().get(
+					getURL("/pdb/rest/ligandInfo", joinIds(someRecords)),
+					parser);
 		} catch (Exception e) {
-			e.printStackTrace();
-			System.exit(1);
+			System.err.println("Could not retrieve the ligands of "
+					+ someRecords.size() + " PDB records: " + e);
+			// the ligands read before the failure are dropped
+			for (PDBRecord r : someRecords) {
+				r.ligandFailure = e;
+			}
+			return;
+		}
+		for (PDBRecord r : someRecords) {
+			List<Ligand> ll = found.get(r);
+			r.ligands = ll == null ? new ArrayList<Ligand>() : ll;
+			r.ligandFailure = null;
+		}
+	}
+
+	/**
+	 * Fill this record from the attributes of a PDB element of a describePDB
+	 * response
+	 */
+	private void readDescription(Map<String, String> someAttributes) {
+		if (someAttributes.containsKey("title")) {
+			title = someAttributes.get("title");
+		}
+		if (someAttributes.containsKey("pubmedId")) {
+			pmid = Integer.parseInt(someAttributes.get("pubmedId"));
+		}
+		if (someAttributes.containsKey("expMethod")) {
+			expMethod = someAttributes.get("expMethod");
+		}
+		if (someAttributes.containsKey("resolution")) {
+			resolution = Double.parseDouble(someAttributes.get("resolution"));
+		}
+		if (someAttributes.containsKey("nr_residues")) {
+			numberOfResidues = Integer.parseInt(someAttributes
+					.get("nr_residues"));
+		}
+		if (someAttributes.containsKey("nr_atoms")) {
+			numberOfAtoms = Integer.parseInt(someAttributes.get("nr_atoms"));
+		}
+		pdbId = someAttributes.get("structureId");
+	}
+
+	private static String getURL(String aPath, String someIds)
+			throws URISyntaxException {
+		return new URI(scheme, host, aPath, "structureId=" + someIds, null)
+				.toString();
+	}
+
+	private static Map<String, PDBRecord> indexById(List<PDBRecord> someRecords) {
+		Map<String, PDBRecord> rm = new HashMap<String, PDBRecord>();
+		for (PDBRecord r : someRecords) {
+			rm.put(r.getRequestedId().toUpperCase(), r);
+		}
+		return rm;
+	}
+
+	private static String joinIds(List<PDBRecord> someRecords) {
+		List<String> ids = new ArrayList<String>();
+		for (PDBRecord r : someRecords) {
+			ids.add(r.getRequestedId());
 		}
+		return StringUtils.join(ids, ",");
 	}
 
+	/**
+	 * The ligands column lists the chemical ids of the ligands only if they
+	 * have already been retrieved, so that a summary can be written from
+	 * describePDB alone
+	 * 
+	 * @return the fields of a line of the record summary
+	 */
+	public String[] getCSVFields() {
+		return new String[] { getPdbId(), getTitle(), getExpMethod(),
+				String.valueOf(getResolution()),
+				String.valueOf(getNumberOfAtoms()),
+				String.valueOf(getNumberOfResidues()),
+				"http://www.ncbi.nlm.nih.gov/pubmed/" + getPmid(),
+				getLigandsCSV() };
+	}
+
+	/**
+	 * @return a line of the record summary, see getCSVFields()
+	 */
 	public String getCSVLine() {
-		String b = "";
-		b += getPdbId() + ",\"" + getTitle() + "\",\"" + getExpMethod() + "\","
-				+ getResolution() + "," + getNumberOfAtoms() + ","
-				+ getNumberOfResidues()
-				+ ",http://www.ncbi.nlm.nih.gov/pubmed/" + getPmid() + ","
-				+ getLigandsCSV() + "\n";
-		return b;
+		StringWriter sw = new StringWriter();
+		new CSVWriter(sw).writeNext(getCSVFields());
+		return sw.toString();
 	}
 
 	/**
 	 * @return
 	 */
 	private String getLigandsCSV() {
-		if (getLigands().size() > 1) {
+		if (isLigandsLoaded() && !getLigands().isEmpty()) {
 			Iterator<Ligand> itr = getLigands().iterator();
 			String b = "";
 			while (itr.hasNext()) {
@@ -213,17 +319,10 @@ public class PDBRecord {
 		return "";
 	}
 
-	private static Document loadXMLFromString(String xml) throws Exception {
-		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-		DocumentBuilder builder = factory.newDocumentBuilder();
-		InputSource is = new InputSource(new StringReader(xml));
-		return builder.parse(is);
-	}
-
 	/**
 	 * @return the title
 	 */
-	private String getTitle() {
+	String getTitle() {
 		return title;
 	}
 
@@ -238,47 +337,96 @@ public class PDBRecord {
 	/**
 	 * @return the resolution
 	 */
-	private Double getResolution() {
+	Double getResolution() {
 		return resolution;
 	}
 
 	/**
 	 * 
-	 * The Ligands identified by PDB REST service
-	 * @return the ligands
+	 * The Ligands identified by PDB REST service. They are retrieved the first
+	 * time they are asked for unless a PDBRecordLoader already did
+	 * @return the ligands, empty if they could not be retrieved
 	 */
 	public List<Ligand> getLigands() {
-		return ligands;
+		if (ligands == null && ligandFailure == null) {
+			synchronized (this) {
+				if (ligands == null && ligandFailure == null) {
+					loadLigands();
+				}
+			}
+		}
+		List<Ligand> rm = ligands;
+		if (rm == null) {
+			return Collections.emptyList();
+		}
+		return rm;
+	}
+
+	/**
+	 * @return true if the ligands of this record have been retrieved
+	 */
+	public boolean isLigandsLoaded() {
+		return ligands != null;
 	}
 
 	/**
 	 * @return the pmid
 	 */
-	private int getPmid() {
+	int getPmid() {
 		return pmid;
 	}
 
 	/**
 	 * @return the expMethod
 	 */
-	private String getExpMethod() {
+	String getExpMethod() {
 		return expMethod;
 	}
 
 	/**
 	 * @return the numberOfResidues
 	 */
-	private int getNumberOfResidues() {
+	int getNumberOfResidues() {
 		return numberOfResidues;
 	}
 
 	/**
 	 * @return the numberOfAtoms
 	 */
-	private int getNumberOfAtoms() {
+	int getNumberOfAtoms() {
 		return numberOfAtoms;
 	}
 
+	/**
+	 * @return true if the description of this record could be retrieved
+	 */
+	public boolean isRetrieved() {
+		return pdbId != null;
+	}
+
+	/**
+	 * @return why the last attempt to retrieve the description failed, or
+	 *         null if it succeeded or the PDB does not know the id
+	 */
+	Exception getFailure() {
+		return failure;
+	}
+
+	/**
+	 * @return why the last attempt to retrieve the ligands failed, or null if
+	 *         it succeeded or was never made
+	 */
+	Exception getLigandFailure() {
+		return ligandFailure;
+	}
+
+	/**
+	 * @return the PDB id this record was created for
+	 */
+	public String getRequestedId() {
+		return requestedId;
+	}
+
 	public String getPdbId() {
 		return pdbId;
 	}
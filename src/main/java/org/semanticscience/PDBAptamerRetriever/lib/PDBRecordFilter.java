@@ -0,0 +1,262 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.lib;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The conditions a PDBRecord must meet to be selected by a PDBRecordIndex.
+ * Every condition that is set must hold; a bound on the resolution, atoms or
+ * residues leaves out the records where that value is unknown. A filter can
+ * be written as clauses separated by ';', e.g.
+ * "method=X-RAY DIFFRACTION;resolution<2.5;ligand=*", see parse()
+ *
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class PDBRecordFilter {
+	private Double minResolution = null;
+	private Double maxResolution = null;
+	private Integer minAtoms = null;
+	private Integer maxAtoms = null;
+	private Integer minResidues = null;
+	private Integer maxResidues = null;
+	private String expMethod = null;
+	// the chemical ids of the ligands every record must have
+	private List<String> ligands = new ArrayList<String>();
+	private boolean anyLigand = false;
+
+	/**
+	 * Parse clauses of the form <field><operator><value> separated by ';'.
+	 * The fields are resolution, atoms and residues, compared with <, <=,
+	 * >, >= or =, method, the experimental method, and ligand, a chemical id
+	 * or * for any ligand
+	 *
+	 * @param aFilter
+	 *            e.g. "method=X-RAY DIFFRACTION;resolution<2.5;ligand=*"
+	 * @throws IllegalArgumentException
+	 *             if a clause cannot be read
+	 */
+	public static PDBRecordFilter parse(String aFilter) {
+		PDBRecordFilter rm = new PDBRecordFilter();
+		for (String clause : aFilter.split(";")) {
+			clause = clause.trim();
+			if (clause.length() == 0) {
+				continue;
+			}
+			int i = 0;
+			while (i < clause.length() && "<>=".indexOf(clause.charAt(i)) == -1) {
+				i++;
+			}
+			int j = i;
+			while (j < clause.length() && "<>=".indexOf(clause.charAt(j)) != -1) {
+				j++;
+			}
+			String field = clause.substring(0, i).trim().toLowerCase();
+			String op = clause.substring(i, j);
+			String value = clause.substring(j).trim();
+			if (op.length() == 0 || value.length() == 0) {
+				throw new IllegalArgumentException("Invalid filter clause: "
+						+ clause);
+			}
+			try {
+				if (field.equals("resolution")) {
+					rm.boundResolution(op, Double.parseDouble(value), clause);
+				} else if (field.equals("atoms")) {
+					int[] b = bounds(op, Integer.parseInt(value), clause);
+					if (b[0] != Integer.MIN_VALUE) {
+						rm.minAtoms = b[0];
+					}
+					if (b[1] != Integer.MAX_VALUE) {
+						rm.maxAtoms = b[1];
+					}
+				} else if (field.equals("residues")) {
+					int[] b = bounds(op, Integer.parseInt(value), clause);
+					if (b[0] != Integer.MIN_VALUE) {
+						rm.minResidues = b[0];
+					}
+					if (b[1] != Integer.MAX_VALUE) {
+						rm.maxResidues = b[1];
+					}
+				} else if (field.equals("method") && op.equals("=")) {
+					rm.setExpMethod(value);
+				} else if (field.equals("ligand") && op.equals("=")) {
+					if (value.equals("*")) {
+						rm.setAnyLigand(true);
+					} else {
+						rm.addLigand(value);
+					}
+				} else {
+					throw new IllegalArgumentException(
+							"Invalid filter clause: " + clause);
+				}
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException(
+						"Invalid number in filter clause: " + clause);
+			}
+		}
+		return rm;
+	}
+
+	private void boundResolution(String anOp, double aValue, String aClause) {
+		if (anOp.equals("<")) {
+			maxResolution = Math.nextAfter(aValue, Double.NEGATIVE_INFINITY);
+		} else if (anOp.equals("<=")) {
+			maxResolution = aValue;
+		} else if (anOp.equals(">")) {
+			minResolution = Math.nextUp(aValue);
+		} else if (anOp.equals(">=")) {
+			minResolution = aValue;
+		} else if (anOp.equals("=")) {
+			minResolution = aValue;
+			maxResolution = aValue;
+		} else {
+			throw new IllegalArgumentException("Invalid filter clause: "
+					+ aClause);
+		}
+	}
+
+	/**
+	 * @return {min, max} of an integer clause, MIN_VALUE and MAX_VALUE
+	 *         standing for no bound
+	 */
+	private static int[] bounds(String anOp, int aValue, String aClause) {
+		if (anOp.equals("<")) {
+			return new int[] { Integer.MIN_VALUE, aValue - 1 };
+		} else if (anOp.equals("<=")) {
+			return new int[] { Integer.MIN_VALUE, aValue };
+		} else if (anOp.equals(">")) {
+			return new int[] { aValue + 1, Integer.MAX_VALUE };
+		} else if (anOp.equals(">=")) {
+			return new int[] { aValue, Integer.MAX_VALUE };
+		} else if (anOp.equals("=")) {
+			return new int[] { aValue, aValue };
+		}
+		throw new IllegalArgumentException("Invalid filter clause: " + aClause);
+	}
+
+	/**
+	 * @param aMin
+	 *            the smallest resolution, or null for no lower bound
+	 * @param aMax
+	 *            the largest resolution, or null for no upper bound
+	 */
+	public void setResolution(Double aMin, Double aMax) {
+		minResolution = aMin;
+		maxResolution = aMax;
+	}
+
+	/**
+	 * @param aMin
+	 *            the fewest atoms, or null for no lower bound
+	 * @param aMax
+	 *            the most atoms, or null for no upper bound
+	 */
+	public void setAtoms(Integer aMin, Integer aMax) {
+		minAtoms = aMin;
+		maxAtoms = aMax;
+	}
+
+	/**
+	 * @param aMin
+	 *            the fewest residues, or null for no lower bound
+	 * @param aMax
+	 *            the most residues, or null for no upper bound
+	 */
+	public void setResidues(Integer aMin, Integer aMax) {
+		minResidues = aMin;
+		maxResidues = aMax;
+	}
+
+	/**
+	 * @param anExpMethod
+	 *            the experimental method, e.g. X-RAY DIFFRACTION, in any case,
+	 *            or null for any
+	 */
+	public void setExpMethod(String anExpMethod) {
+		expMethod = anExpMethod;
+	}
+
+	/**
+	 * @param aChemicalId
+	 *            the chemical id of a ligand the records must have
+	 */
+	public void addLigand(String aChemicalId) {
+		ligands.add(aChemicalId.toUpperCase());
+	}
+
+	/**
+	 * @param anAnyLigand
+	 *            if true the records must have at least one ligand
+	 */
+	public void setAnyLigand(boolean anAnyLigand) {
+		anyLigand = anAnyLigand;
+	}
+
+	/**
+	 * @return true if the ligands of the records must be known to apply this
+	 *         filter
+	 */
+	public boolean needsLigands() {
+		return anyLigand || !ligands.isEmpty();
+	}
+
+	public Double getMinResolution() {
+		return minResolution;
+	}
+
+	public Double getMaxResolution() {
+		return maxResolution;
+	}
+
+	public Integer getMinAtoms() {
+		return minAtoms;
+	}
+
+	public Integer getMaxAtoms() {
+		return maxAtoms;
+	}
+
+	public Integer getMinResidues() {
+		return minResidues;
+	}
+
+	public Integer getMaxResidues() {
+		return maxResidues;
+	}
+
+	public String getExpMethod() {
+		return expMethod;
+	}
+
+	/**
+	 * @return the upper case chemical ids of the ligands the records must
+	 *         have
+	 */
+	public List<String> getLigands() {
+		return new ArrayList<String>(ligands);
+	}
+
+	public boolean isAnyLigand() {
+		return anyLigand;
+	}
+}
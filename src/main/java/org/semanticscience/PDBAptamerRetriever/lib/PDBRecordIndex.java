@@ -0,0 +1,284 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.lib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Answers PDBRecordFilters over a set of records already retrieved, so that
+ * every variation of a question does not need a new search of the PDB. The
+ * rows of the records are kept sorted by resolution and by number of atoms,
+ * so that a range of either is found with a binary search, and the rows of
+ * every ligand are indexed the first time a filter needs them
+ *
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class PDBRecordIndex {
+	private List<PDBRecord> records;
+	private PDBRecordTable table;
+	// the rows with a known resolution, by increasing resolution
+	private int[] byResolution;
+	private double[] sortedResolutions;
+	// the rows with a known number of atoms, by increasing number of atoms
+	private int[] byAtoms;
+	private int[] sortedAtoms;
+	// the rows of every upper case chemical id, null until first needed
+	private Map<String, BitSet> ligandRows = null;
+	private BitSet withLigands = null;
+
+	/**
+	 * @param someRecords
+	 *            the records to query, which should have been retrieved
+	 */
+	public PDBRecordIndex(List<PDBRecord> someRecords) {
+		records = new ArrayList<PDBRecord>(someRecords);
+		table = new PDBRecordTable(records);
+		final PDBRecordTable t = table;
+		byResolution = sortRows(new Comparator<Integer>() {
+			public int compare(Integer o1, Integer o2) {
+				return Double.compare(t.getResolution(o1), t.getResolution(o2));
+			}
+		}, true);
+		sortedResolutions = new double[byResolution.length];
+		for (int i = 0; i < byResolution.length; i++) {
+			sortedResolutions[i] = table.getResolution(byResolution[i]);
+		}
+		byAtoms = sortRows(new Comparator<Integer>() {
+			public int compare(Integer o1, Integer o2) {
+				int a1 = t.getNumberOfAtoms(o1);
+				int a2 = t.getNumberOfAtoms(o2);
+				return a1 < a2 ? -1 : (a1 == a2 ? 0 : 1);
+			}
+		}, false);
+		sortedAtoms = new int[byAtoms.length];
+		for (int i = 0; i < byAtoms.length; i++) {
+			sortedAtoms[i] = table.getNumberOfAtoms(byAtoms[i]);
+		}
+	}
+
+	/**
+	 * @return the rows whose resolution (if aResolution) or number of atoms
+	 *         is known, sorted with aComparator
+	 */
+	private int[] sortRows(Comparator<Integer> aComparator, boolean aResolution) {
+		List<Integer> rows = new ArrayList<Integer>();
+		for (int i = 0; i < table.size(); i++) {
+			if (aResolution ? table.getResolution(i) >= 0 : table
+					.getNumberOfAtoms(i) >= 0) {
+				rows.add(i);
+			}
+		}
+		Integer[] sorted = rows.toArray(new Integer[rows.size()]);
+		Arrays.sort(sorted, aComparator);
+		int[] rm = new int[sorted.length];
+		for (int i = 0; i < sorted.length; i++) {
+			rm[i] = sorted[i];
+		}
+		return rm;
+	}
+
+	/**
+	 * @return the rows with a resolution between aMin and aMax, inclusive
+	 */
+	public BitSet resolutionBetween(double aMin, double aMax) {
+		BitSet rm = new BitSet(table.size());
+		for (int i = lowerBound(sortedResolutions, aMin); i < sortedResolutions.length
+				&& sortedResolutions[i] <= aMax; i++) {
+			rm.set(byResolution[i]);
+		}
+		return rm;
+	}
+
+	/**
+	 * @return the rows with between aMin and aMax atoms, inclusive
+	 */
+	public BitSet atomsBetween(int aMin, int aMax) {
+		BitSet rm = new BitSet(table.size());
+		for (int i = lowerBound(sortedAtoms, aMin); i < sortedAtoms.length
+				&& sortedAtoms[i] <= aMax; i++) {
+			rm.set(byAtoms[i]);
+		}
+		return rm;
+	}
+
+	/**
+	 * @return the index of the first value of someValues not below aValue
+	 */
+	private static int lowerBound(double[] someValues, double aValue) {
+		int lo = 0;
+		int hi = someValues.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (someValues[mid] < aValue) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	private static int lowerBound(int[] someValues, int aValue) {
+		int lo = 0;
+		int hi = someValues.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (someValues[mid] < aValue) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * @return the rows determined by anExpMethod, in any case
+	 */
+	public BitSet withExpMethod(String anExpMethod) {
+		BitSet rm = new BitSet(table.size());
+		for (String m : table.getExpMethods()) {
+			if (m.equalsIgnoreCase(anExpMethod)) {
+				rm.or(table.withExpMethod(m));
+			}
+		}
+		return rm;
+	}
+
+	/**
+	 * Retrieves the ligands of records that do not have them yet one record
+	 * at a time, see PDBRecordLoader.loadLigands()
+	 * 
+	 * @return the rows with a ligand of aChemicalId, in any case
+	 */
+	public BitSet withLigand(String aChemicalId) {
+		BitSet rows = getLigandRows().get(aChemicalId.toUpperCase());
+		return rows == null ? new BitSet(table.size()) : (BitSet) rows.clone();
+	}
+
+	/**
+	 * @return the rows with at least one ligand
+	 */
+	public BitSet withAnyLigand() {
+		getLigandRows();
+		return (BitSet) withLigands.clone();
+	}
+
+	private synchronized Map<String, BitSet> getLigandRows() {
+		if (ligandRows == null) {
+			Map<String, BitSet> rows = new HashMap<String, BitSet>();
+			withLigands = new BitSet(table.size());
+			for (int i = 0; i < records.size(); i++) {
+				for (Ligand l : records.get(i).getLigands()) {
+					String id = l.getChemicalId().toUpperCase();
+					BitSet b = rows.get(id);
+					if (b == null) {
+						b = new BitSet(table.size());
+						rows.put(id, b);
+					}
+					b.set(i);
+					withLigands.set(i);
+				}
+			}
+			ligandRows = rows;
+		}
+		return ligandRows;
+	}
+
+	/**
+	 * @return the rows that meet every condition of aFilter
+	 */
+	public BitSet select(PDBRecordFilter aFilter) {
+		BitSet rm = table.all();
+		if (aFilter.getMinResolution() != null
+				|| aFilter.getMaxResolution() != null) {
+			rm.and(resolutionBetween(
+					aFilter.getMinResolution() == null ? 0 : aFilter
+							.getMinResolution(),
+					aFilter.getMaxResolution() == null ? Double.MAX_VALUE
+							: aFilter.getMaxResolution()));
+		}
+		if (aFilter.getMinAtoms() != null || aFilter.getMaxAtoms() != null) {
+			rm.and(atomsBetween(
+					aFilter.getMinAtoms() == null ? 0 : aFilter.getMinAtoms(),
+					aFilter.getMaxAtoms() == null ? Integer.MAX_VALUE : aFilter
+							.getMaxAtoms()));
+		}
+		if (aFilter.getMinResidues() != null
+				|| aFilter.getMaxResidues() != null) {
+			rm.and(table.residuesBetween(aFilter.getMinResidues() == null ? 0
+					: aFilter.getMinResidues(),
+					aFilter.getMaxResidues() == null ? Integer.MAX_VALUE
+							: aFilter.getMaxResidues()));
+		}
+		if (aFilter.getExpMethod() != null) {
+			rm.and(withExpMethod(aFilter.getExpMethod()));
+		}
+		if (aFilter.isAnyLigand()) {
+			rm.and(withAnyLigand());
+		}
+		for (String l : aFilter.getLigands()) {
+			rm.and(withLigand(l));
+		}
+		return rm;
+	}
+
+	/**
+	 * @return the records that meet every condition of aFilter, in their
+	 *         original order
+	 */
+	public List<PDBRecord> filter(PDBRecordFilter aFilter) {
+		return getRecords(select(aFilter));
+	}
+
+	/**
+	 * @return the records of someRows in row order
+	 */
+	public List<PDBRecord> getRecords(BitSet someRows) {
+		List<PDBRecord> rm = new ArrayList<PDBRecord>(someRows.cardinality());
+		for (int i = someRows.nextSetBit(0); i >= 0 && i < records.size(); i = someRows
+				.nextSetBit(i + 1)) {
+			rm.add(records.get(i));
+		}
+		return rm;
+	}
+
+	/**
+	 * @return the columns of the records, in the same rows
+	 */
+	public PDBRecordTable getTable() {
+		return table;
+	}
+
+	/**
+	 * @return the number of records
+	 */
+	public int size() {
+		return records.size();
+	}
+}
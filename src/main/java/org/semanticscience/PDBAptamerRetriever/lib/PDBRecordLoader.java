@@ -0,0 +1,383 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.lib;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads many PDBRecords at once. The ids are split into batches and the
+ * descriptions of every batch are retrieved with a single request, as are
+ * their ligands when these are loaded up front. The requests run as separate
+ * tasks spread over a fixed number of threads, so that the round trips of
+ * different batches overlap. Ligands not loaded up front are retrieved when
+ * first needed, either with loadLigands() or record by record. If a
+ * PDBRecordStore is set, fresh records are taken from it and every record
+ * retrieved is saved to it
+ *
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class PDBRecordLoader {
+	public static final int DEFAULT_THREADS = 8;
+	public static final int DEFAULT_BATCH_SIZE = 100;
+	// the number of threads retrieving records
+	private int threads;
+	// the number of ids sent in one request
+	private int batchSize;
+	// if true load() also retrieves the ligands of the records
+	private boolean loadLigands = false;
+	// the local copy of the records, may be null
+	private PDBRecordStore store = null;
+	// notified whenever a record is complete, may be null
+	private ProgressListener listener = null;
+
+	/**
+	 * Notified from the loading threads whenever a record is complete
+	 */
+	public interface ProgressListener {
+		/**
+		 * @param aRecord
+		 *            the record that was just loaded
+		 * @param aLoaded
+		 *            the number of records loaded so far
+		 * @param aTotal
+		 *            the number of records being loaded
+		 */
+		void recordLoaded(PDBRecord aRecord, int aLoaded, int aTotal);
+	}
+
+	public PDBRecordLoader() {
+		this(DEFAULT_THREADS);
+	}
+
+	/**
+	 * @param aThreads
+	 *            the number of requests made at the same time
+	 */
+	public PDBRecordLoader(int aThreads) {
+		this(aThreads, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * @param aThreads
+	 *            the number of requests made at the same time
+	 * @param aBatchSize
+	 *            the number of ids sent in one request
+	 */
+	public PDBRecordLoader(int aThreads, int aBatchSize) {
+		if (aThreads < 1) {
+			throw new IllegalArgumentException(
+					"At least 1 thread is needed to load records!");
+		}
+		if (aBatchSize < 1) {
+			throw new IllegalArgumentException(
+					"The record batch size must be at least 1!");
+		}
+		threads = aThreads;
+		batchSize = aBatchSize;
+	}
+
+	/**
+	 * Load the records of someIds and wait for all of them
+	 *
+	 * @param someIds
+	 *            the PDB ids to load
+	 * @return one record per id in the order of someIds. Records whose
+	 *         description could not be retrieved are included, see
+	 *         PDBRecord.isRetrieved()
+	 */
+	public List<PDBRecord> load(List<String> someIds) {
+		return retrieve(someIds).getRecords();
+	}
+
+	/**
+	 * Load the records of someIds and wait for all of them. A failing
+	 * request never stops the other ones: the records of a batch whose
+	 * request failed are tried again one at a time, so that a single bad
+	 * response only loses its own id
+	 *
+	 * @param someIds
+	 *            the PDB ids to load
+	 * @return the records in the order of someIds and which of them failed
+	 */
+	public RecordLoadResult retrieve(List<String> someIds) {
+		List<PDBRecord> all = new ArrayList<PDBRecord>();
+		// the records that are not in the store or are stale
+		List<PDBRecord> fetch = new ArrayList<PDBRecord>();
+		for (String anId : someIds) {
+			PDBRecord r = null;
+			if (store != null && store.isFresh(anId)) {
+				r = store.get(anId);
+			}
+			if (r == null) {
+				r = new PDBRecord(anId, false);
+				fetch.add(r);
+			}
+			all.add(r);
+		}
+		run(fetch, batchSize, true, loadLigands, listener);
+		List<PDBRecord> retry = new ArrayList<PDBRecord>();
+		for (PDBRecord r : fetch) {
+			if (!r.isRetrieved() && r.getFailure() != null) {
+				retry.add(r);
+			}
+		}
+		if (!retry.isEmpty()) {
+			System.out.println("Retrying " + retry.size()
+					+ " PDB records one at a time");
+			run(retry, 1, true, false, null);
+		}
+		if (loadLigands) {
+			// stored and retried records may lack their ligands
+			loadLigands(all, null);
+		}
+		updateStore(fetch);
+		Set<PDBRecord> retried = new HashSet<PDBRecord>(retry);
+		RecordLoadResult rm = new RecordLoadResult();
+		for (PDBRecord r : all) {
+			if (!r.isRetrieved()) {
+				Exception e = r.getFailure();
+				rm.add(r, RecordLoadResult.Status.FAILED,
+						e == null ? "Not found by describePDB" : e.toString());
+			} else if (retried.contains(r)) {
+				rm.add(r, RecordLoadResult.Status.RETRIED, null);
+			} else {
+				rm.add(r, RecordLoadResult.Status.SUCCEEDED, null);
+			}
+		}
+		rm.updateLigands(all);
+		return rm;
+	}
+
+	/**
+	 * Retrieve the ligands of the records in someRecords that do not have
+	 * them yet, in batches, and wait for all of them
+	 *
+	 * @param someRecords
+	 *            records of distinct PDB ids
+	 */
+	public void loadLigands(List<PDBRecord> someRecords) {
+		loadLigands(someRecords, null);
+	}
+
+	/**
+	 * Retrieve the ligands of the records in someRecords that do not have
+	 * them yet and note in aResult those whose ligands could not be retrieved
+	 *
+	 * @param aResult
+	 *            the result of retrieving someRecords, may be null
+	 */
+	public void loadLigands(List<PDBRecord> someRecords,
+			RecordLoadResult aResult) {
+		List<PDBRecord> missing = new ArrayList<PDBRecord>();
+		for (PDBRecord r : someRecords) {
+			if (!r.isLigandsLoaded()) {
+				missing.add(r);
+			}
+		}
+		run(missing, batchSize, false, true, null);
+		updateStore(missing);
+		if (aResult != null) {
+			aResult.updateLigands(missing);
+		}
+	}
+
+	/**
+	 * Save someRecords to the store, if there is one. Records whose ligands
+	 * could not be retrieved are left out, so that they are not taken as
+	 * fresh by the next run
+	 */
+	private void updateStore(List<PDBRecord> someRecords) {
+		if (store == null || someRecords.isEmpty()) {
+			return;
+		}
+		for (PDBRecord r : someRecords) {
+			if (r.getLigandFailure() == null) {
+				store.put(r);
+			}
+		}
+		try {
+			store.save();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Run the requests for someRecords in batches of aBatchSize and wait for
+	 * them
+	 *
+	 * @param aListener
+	 *            notified whenever a record is complete, may be null
+	 */
+	private void run(List<PDBRecord> someRecords, int aBatchSize,
+			boolean aDescriptions, boolean aLigands, ProgressListener aListener) {
+		if (someRecords.isEmpty()) {
+			return;
+		}
+		int tasks = (aDescriptions ? 1 : 0) + (aLigands ? 1 : 0);
+		int batches = (someRecords.size() + aBatchSize - 1) / aBatchSize;
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads,
+				tasks * batches));
+		AtomicInteger loaded = new AtomicInteger(0);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int i = 0; i < someRecords.size(); i += aBatchSize) {
+			List<PDBRecord> batch = someRecords.subList(i,
+					Math.min(i + aBatchSize, someRecords.size()));
+			AtomicInteger pending = new AtomicInteger(tasks);
+			if (aDescriptions) {
+				futures.add(pool.submit(new LoadTask(batch, false, pending,
+						loaded, someRecords.size(), aListener)));
+			}
+			if (aLigands) {
+				futures.add(pool.submit(new LoadTask(batch, true, pending,
+						loaded, someRecords.size(), aListener)));
+			}
+		}
+		pool.shutdown();
+		for (Future<?> f : futures) {
+			try {
+				f.get();
+			} catch (InterruptedException e) {
+				// the records not loaded yet are left unretrieved
+				pool.shutdownNow();
+				Thread.currentThread().interrupt();
+				break;
+			} catch (ExecutionException e) {
+				e.getCause().printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Retrieves either the descriptions or the ligands of a batch of records
+	 */
+	private class LoadTask implements Runnable {
+		private List<PDBRecord> batch;
+		private boolean ligands;
+		// the number of tasks of batch still running
+		private AtomicInteger pending;
+		private AtomicInteger loaded;
+		private int total;
+		private ProgressListener progress;
+
+		private LoadTask(List<PDBRecord> aBatch, boolean aLigands,
+				AtomicInteger aPending, AtomicInteger aLoaded, int aTotal,
+				ProgressListener aListener) {
+			batch = aBatch;
+			ligands = aLigands;
+			pending = aPending;
+			loaded = aLoaded;
+			total = aTotal;
+			progress = aListener;
+		}
+
+		public void run() {
+			try {
+				if (ligands) {
+					PDBRecord.loadLigands(batch);
+				} else {
+					PDBRecord.loadDescriptions(batch);
+				}
+			} finally {
+				if (pending.decrementAndGet() == 0) {
+					for (PDBRecord r : batch) {
+						int n = loaded.incrementAndGet();
+						if (progress != null) {
+							progress.recordLoaded(r, n, total);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the number of requests made at the same time
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * @return the number of ids sent in one request
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * @return true if load() also retrieves the ligands of the records
+	 */
+	public boolean isLoadLigands() {
+		return loadLigands;
+	}
+
+	/**
+	 * @param aLoadLigands
+	 *            if true load() also retrieves the ligands of the records,
+	 *            otherwise they are retrieved when first needed
+	 */
+	public void setLoadLigands(boolean aLoadLigands) {
+		this.loadLigands = aLoadLigands;
+	}
+
+	/**
+	 * @return the local copy of the records, null if there is none
+	 */
+	public PDBRecordStore getStore() {
+		return store;
+	}
+
+	/**
+	 * @param aStore
+	 *            where fresh records are taken from and retrieved records are
+	 *            saved, or null to always retrieve them
+	 */
+	public void setStore(PDBRecordStore aStore) {
+		this.store = aStore;
+	}
+
+	/**
+	 * @return the listener notified whenever a record is complete
+	 */
+	public ProgressListener getProgressListener() {
+		return listener;
+	}
+
+	/**
+	 * @param aListener
+	 *            notified from the loading threads whenever a record is
+	 *            complete, or null
+	 */
+	public void setProgressListener(ProgressListener aListener) {
+		this.listener = aListener;
+	}
+}
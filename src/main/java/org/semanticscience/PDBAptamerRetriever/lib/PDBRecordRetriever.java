@@ -21,12 +21,16 @@
 package org.semanticscience.PDBAptamerRetriever.lib;
 
 import java.io.File;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.Iterator;
 import java.util.List;
 
 import org.apache.commons.io.FileUtils;
 
+import au.com.bytecode.opencsv.CSVWriter;
+
 /**
  * @author  Jose Cruz-Toledo
  *
@@ -35,28 +39,72 @@ public class PDBRecordRetriever {
 
 	private List<String> pdbIds = null;
 	private List<PDBRecord> records =null;
+	private RecordLoadResult loadResult = null;
+	// built when first asked for
+	private PDBRecordTable table = null;
 	private File csvDescription = null;
 	public PDBRecordRetriever(List<String> aPdbids){
+		this(aPdbids, new PDBRecordLoader());
+	}
+
+	/**
+	 * @param aPdbids
+	 *            the PDB ids of the records
+	 * @param aLoader
+	 *            retrieves the records concurrently
+	 */
+	public PDBRecordRetriever(List<String> aPdbids, PDBRecordLoader aLoader){
 		pdbIds = aPdbids;
 		//load the records
-		records = new ArrayList<PDBRecord>();
-		Iterator<String> itr = pdbIds.iterator();
+		loadResult = aLoader.retrieve(pdbIds);
+		records = loadResult.getSucceeded();
+		Iterator<PDBRecord> itr = loadResult.getFailed().iterator();
 		while(itr.hasNext()){
-			String anId = itr.next();
-			PDBRecord p = new PDBRecord(anId);
-			records.add(p);
+			PDBRecord p = itr.next();
+			System.err.println("Skipping "+p.getRequestedId()+": "+loadResult.getCause(p));
 		}
 	}
+
+	/**
+	 * @return which records were retrieved and which failed
+	 */
+	public RecordLoadResult getLoadResult(){
+		return loadResult;
+	}
+
+	/**
+	 * @return the retrieved records as columns, for filters and statistics
+	 */
+	public synchronized PDBRecordTable getRecordTable(){
+		if(table == null){
+			table = new PDBRecordTable(records);
+		}
+		return table;
+	}
 	
 	 
 	public String getCSVString(){
+		StringWriter sw = new StringWriter();
+		try{
+			writeCSV(sw);
+		}catch(IOException e){
+			e.printStackTrace();
+		}
+		return sw.toString();
+	}
+
+	/**
+	 * Write the summary of the records to aWriter one line at a time
+	 * @param aWriter where the lines are written, left open
+	 * @throws IOException
+	 */
+	public void writeCSV(Writer aWriter) throws IOException{
+		CSVWriter w = new CSVWriter(aWriter);
 		Iterator<PDBRecord> itr = records.iterator();
-		String b = "";
 		while(itr.hasNext()){
-			PDBRecord p = itr.next();
-			b+= p.getCSVLine();
+			w.writeNext(itr.next().getCSVFields());
 		}
-		return b;
+		w.flush();
 	}
 	
 }
@@ -0,0 +1,285 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.lib;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.semanticscience.PDBAptamerRetriever.shared.FileDownloadTask;
+
+/**
+ * A local copy of the PDBRecords retrieved so far, with their ligands when
+ * these were retrieved, so that a rerun only asks the PDB about ids that are
+ * new or stale. The records are kept in memory keyed by PDB id and saved as a
+ * compact binary file
+ *
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class PDBRecordStore {
+	public static final long DEFAULT_MAX_AGE = 30L * 24 * 60 * 60 * 1000;
+	// identifies the file format
+	private static final int MAGIC = 0x50444252;
+	private static final int VERSION = 2;
+	private File file;
+	// the records by upper case PDB id
+	private Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+	// records older than this many milliseconds are retrieved again
+	private long maxAge = DEFAULT_MAX_AGE;
+	// true if entries changed since the store was loaded or saved
+	private boolean modified = false;
+
+	private PDBRecordStore(File aFile) {
+		file = aFile;
+	}
+
+	/**
+	 * Load the store kept in aFile, an empty store is returned if aFile does
+	 * not exist yet
+	 *
+	 * @param aFile
+	 *            the file of the store
+	 * @throws IOException
+	 *             if an existing store could not be read
+	 */
+	public static PDBRecordStore load(File aFile) throws IOException {
+		PDBRecordStore rm = new PDBRecordStore(aFile);
+		if (aFile.exists()) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(aFile)));
+			try {
+				if (in.readInt() != MAGIC) {
+					throw new IOException(aFile + " is not a PDB record store");
+				}
+				if (in.readInt() != VERSION) {
+					// written by another version, its records are retrieved
+					// again and the file is replaced on the next save
+					System.out.println(aFile
+							+ " was written by another version and is ignored");
+					return rm;
+				}
+				int count = in.readInt();
+				for (int i = 0; i < count; i++) {
+					long fetched = in.readLong();
+					PDBRecord r = readRecord(in);
+					rm.entries.put(r.getRequestedId().toUpperCase(), new Entry(
+							r, fetched));
+				}
+			} finally {
+				in.close();
+			}
+		}
+		return rm;
+	}
+
+	/**
+	 * @return the stored record of anId, or null if there is none
+	 */
+	public synchronized PDBRecord get(String anId) {
+		Entry e = entries.get(anId.toUpperCase());
+		return e == null ? null : e.record;
+	}
+
+	/**
+	 * @return true if a record of anId is stored and is not older than the
+	 *         maximum age
+	 */
+	public synchronized boolean isFresh(String anId) {
+		Entry e = entries.get(anId.toUpperCase());
+		return e != null
+				&& System.currentTimeMillis() - e.fetched <= maxAge;
+	}
+
+	/**
+	 * Store aRecord as retrieved now, replacing any record of the same id.
+	 * Putting a stored record again, e.g. once its ligands are loaded, keeps
+	 * its retrieval time. Records whose description could not be retrieved
+	 * are ignored
+	 */
+	public synchronized void put(PDBRecord aRecord) {
+		if (aRecord.isRetrieved()) {
+			String key = aRecord.getRequestedId().toUpperCase();
+			Entry e = entries.get(key);
+			long fetched = System.currentTimeMillis();
+			if (e != null && e.record == aRecord) {
+				fetched = e.fetched;
+			}
+			entries.put(key, new Entry(aRecord, fetched));
+			modified = true;
+		}
+	}
+
+	/**
+	 * Write the store to its file if it changed. The store is written to a
+	 * temporary file which is then renamed over the previous one, so an
+	 * interrupted save leaves the previous one intact. Only platforms that
+	 * refuse to rename over an existing file delete it first
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void save() throws IOException {
+		if (!modified) {
+			return;
+		}
+		File tmp = new File(file.getAbsolutePath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(tmp)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(entries.size());
+			for (Entry e : entries.values()) {
+				out.writeLong(e.fetched);
+				writeRecord(out, e.record);
+			}
+		} finally {
+			out.close();
+		}
+		FileDownloadTask.replace(tmp, file);
+		modified = false;
+	}
+
+	private static void writeRecord(DataOutputStream out, PDBRecord r)
+			throws IOException {
+		out.writeUTF(r.getRequestedId());
+		writeString(out, r.getPdbId());
+		writeString(out, r.getTitle());
+		out.writeInt(r.getPmid());
+		writeString(out, r.getExpMethod());
+		out.writeDouble(r.getResolution() == null ? -1.0 : r.getResolution());
+		out.writeInt(r.getNumberOfResidues());
+		out.writeInt(r.getNumberOfAtoms());
+		if (!r.isLigandsLoaded()) {
+			out.writeInt(-1);
+			return;
+		}
+		List<Ligand> ligands = r.getLigands();
+		out.writeInt(ligands.size());
+		for (Ligand l : ligands) {
+			writeString(out, l.getChemicalId());
+			writeString(out, l.getType());
+			out.writeDouble(l.getMolecularWeight() == null ? -1.0 : l
+					.getMolecularWeight());
+			writeString(out, l.getChemicalName());
+			writeString(out, l.getFormula());
+			writeString(out, l.getInchiKey());
+			writeString(out, l.getInchi());
+			writeString(out, l.getSmiles());
+			writeString(out, l.getChebiId());
+			out.writeBoolean(l.isION());
+		}
+	}
+
+	private static PDBRecord readRecord(DataInputStream in) throws IOException {
+		String requestedId = in.readUTF();
+		String pdbId = readString(in);
+		String title = readString(in);
+		int pmid = in.readInt();
+		String expMethod = readString(in);
+		double resolution = in.readDouble();
+		int residues = in.readInt();
+		int atoms = in.readInt();
+		List<Ligand> ligands = null;
+		int count = in.readInt();
+		if (count >= 0) {
+			ligands = new ArrayList<Ligand>(count);
+			for (int i = 0; i < count; i++) {
+				LigandRegistry reg = LigandRegistry.getDefault();
+				Ligand l = reg.intern(
+						new Ligand(readString(in), readString(in), in
+								.readDouble(), readString(in), readString(in),
+								readString(in), readString(in),
+								readString(in), readString(in), in
+										.readBoolean()));
+				reg.addStructure(l, requestedId);
+				ligands.add(l);
+			}
+		}
+		return new PDBRecord(requestedId, pdbId, title, pmid, expMethod,
+				resolution, residues, atoms, ligands);
+	}
+
+	/**
+	 * Write aString, which may be null
+	 */
+	private static void writeString(DataOutputStream out, String aString)
+			throws IOException {
+		out.writeBoolean(aString != null);
+		if (aString != null) {
+			out.writeUTF(aString);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	/**
+	 * @return the number of stored records
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return the file of the store
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return the age in milliseconds after which a record is retrieved again
+	 */
+	public long getMaxAge() {
+		return maxAge;
+	}
+
+	/**
+	 * @param aMaxAge
+	 *            the age in milliseconds after which a record is retrieved
+	 *            again
+	 */
+	public void setMaxAge(long aMaxAge) {
+		this.maxAge = aMaxAge;
+	}
+
+	private static class Entry {
+		private PDBRecord record;
+		// when record was retrieved
+		private long fetched;
+
+		private Entry(PDBRecord aRecord, long aFetched) {
+			record = aRecord;
+			fetched = aFetched;
+		}
+	}
+}
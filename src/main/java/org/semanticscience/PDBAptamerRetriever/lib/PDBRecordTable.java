@@ -0,0 +1,347 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.lib;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The descriptions of a set of PDBRecords stored column by column in
+ * primitive arrays so that filters and summary statistics are tight loops
+ * over a single array. Experimental methods are dictionary encoded and PDB
+ * ids are packed into ints. Filters return the matching rows as a BitSet,
+ * which can be combined with and() / or() and passed to the statistics
+ *
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class PDBRecordTable {
+	private int size;
+	// the PDB id of each row packed by PdbId.pack()
+	private int[] ids;
+	// the ids that are not 4 ASCII characters long, null if there are none
+	private String[] otherIds = null;
+	private double[] resolutions;
+	private int[] atoms;
+	private int[] residues;
+	private int[] pmids;
+	// the index in methods of the experimental method of each row, -1 if
+	// unknown
+	private int[] methodCodes;
+	private List<String> methods = new ArrayList<String>();
+
+	/**
+	 * @param someRecords
+	 *            the records of the table, one row each in the same order
+	 */
+	public PDBRecordTable(List<PDBRecord> someRecords) {
+		size = someRecords.size();
+		ids = new int[size];
+		resolutions = new double[size];
+		atoms = new int[size];
+		residues = new int[size];
+		pmids = new int[size];
+		methodCodes = new int[size];
+		Map<String, Integer> codes = new HashMap<String, Integer>();
+		for (int i = 0; i < size; i++) {
+			PDBRecord r = someRecords.get(i);
+			String id = r.isRetrieved() ? r.getPdbId() : r.getRequestedId();
+			ids[i] = PdbId.pack(id);
+			if (ids[i] == -1) {
+				if (otherIds == null) {
+					otherIds = new String[size];
+				}
+				otherIds[i] = id;
+			}
+			resolutions[i] = r.getResolution() == null ? -1.0 : r
+					.getResolution();
+			atoms[i] = r.getNumberOfAtoms();
+			residues[i] = r.getNumberOfResidues();
+			pmids[i] = r.getPmid();
+			String m = r.getExpMethod();
+			if (m == null) {
+				methodCodes[i] = -1;
+			} else {
+				Integer c = codes.get(m);
+				if (c == null) {
+					c = methods.size();
+					methods.add(m);
+					codes.put(m, c);
+				}
+				methodCodes[i] = c;
+			}
+		}
+	}
+
+	/**
+	 * @return every row
+	 */
+	public BitSet all() {
+		BitSet rm = new BitSet(size);
+		rm.set(0, size);
+		return rm;
+	}
+
+	/**
+	 * @return the rows with a resolution between aMin and aMax, inclusive
+	 */
+	public BitSet resolutionBetween(double aMin, double aMax) {
+		BitSet rm = new BitSet(size);
+		double[] col = resolutions;
+		for (int i = 0; i < size; i++) {
+			if (col[i] >= aMin && col[i] <= aMax) {
+				rm.set(i);
+			}
+		}
+		return rm;
+	}
+
+	/**
+	 * @return the rows with between aMin and aMax atoms, inclusive
+	 */
+	public BitSet atomsBetween(int aMin, int aMax) {
+		return between(atoms, aMin, aMax);
+	}
+
+	/**
+	 * @return the rows with between aMin and aMax residues, inclusive
+	 */
+	public BitSet residuesBetween(int aMin, int aMax) {
+		return between(residues, aMin, aMax);
+	}
+
+	private BitSet between(int[] aColumn, int aMin, int aMax) {
+		BitSet rm = new BitSet(size);
+		for (int i = 0; i < size; i++) {
+			if (aColumn[i] >= aMin && aColumn[i] <= aMax) {
+				rm.set(i);
+			}
+		}
+		return rm;
+	}
+
+	/**
+	 * @return the rows determined by anExpMethod, e.g. X-RAY DIFFRACTION
+	 */
+	public BitSet withExpMethod(String anExpMethod) {
+		BitSet rm = new BitSet(size);
+		int code = methods.indexOf(anExpMethod);
+		if (code == -1) {
+			return rm;
+		}
+		for (int i = 0; i < size; i++) {
+			if (methodCodes[i] == code) {
+				rm.set(i);
+			}
+		}
+		return rm;
+	}
+
+	/**
+	 * @return the number of someRows determined by each experimental method
+	 */
+	public Map<String, Integer> countByExpMethod(BitSet someRows) {
+		int[] counts = new int[methods.size()];
+		for (int i = someRows.nextSetBit(0); i >= 0 && i < size; i = someRows
+				.nextSetBit(i + 1)) {
+			if (methodCodes[i] >= 0) {
+				counts[methodCodes[i]]++;
+			}
+		}
+		Map<String, Integer> rm = new LinkedHashMap<String, Integer>();
+		for (int c = 0; c < counts.length; c++) {
+			if (counts[c] > 0) {
+				rm.put(methods.get(c), counts[c]);
+			}
+		}
+		return rm;
+	}
+
+	/**
+	 * @return the statistics of the known resolutions of someRows
+	 */
+	public Stats resolutionStats(BitSet someRows) {
+		Stats rm = new Stats();
+		double[] col = resolutions;
+		for (int i = someRows.nextSetBit(0); i >= 0 && i < size; i = someRows
+				.nextSetBit(i + 1)) {
+			rm.add(col[i]);
+		}
+		return rm;
+	}
+
+	/**
+	 * @return the statistics of the known number of atoms of someRows
+	 */
+	public Stats atomStats(BitSet someRows) {
+		return stats(atoms, someRows);
+	}
+
+	/**
+	 * @return the statistics of the known number of residues of someRows
+	 */
+	public Stats residueStats(BitSet someRows) {
+		return stats(residues, someRows);
+	}
+
+	private Stats stats(int[] aColumn, BitSet someRows) {
+		Stats rm = new Stats();
+		for (int i = someRows.nextSetBit(0); i >= 0 && i < size; i = someRows
+				.nextSetBit(i + 1)) {
+			rm.add(aColumn[i]);
+		}
+		return rm;
+	}
+
+	/**
+	 * @return the PDB ids of someRows in row order
+	 */
+	public List<String> getIds(BitSet someRows) {
+		List<String> rm = new ArrayList<String>(someRows.cardinality());
+		for (int i = someRows.nextSetBit(0); i >= 0 && i < size; i = someRows
+				.nextSetBit(i + 1)) {
+			rm.add(getId(i));
+		}
+		return rm;
+	}
+
+	/**
+	 * @return the PDB id of aRow
+	 */
+	public String getId(int aRow) {
+		if (ids[aRow] == -1) {
+			return otherIds[aRow];
+		}
+		return PdbId.unpack(ids[aRow]);
+	}
+
+	/**
+	 * @return the resolution of aRow, -1 if unknown
+	 */
+	public double getResolution(int aRow) {
+		return resolutions[aRow];
+	}
+
+	/**
+	 * @return the number of atoms of aRow, -1 if unknown
+	 */
+	public int getNumberOfAtoms(int aRow) {
+		return atoms[aRow];
+	}
+
+	/**
+	 * @return the number of residues of aRow, -1 if unknown
+	 */
+	public int getNumberOfResidues(int aRow) {
+		return residues[aRow];
+	}
+
+	/**
+	 * @return the PubMed id of aRow, -1 if unknown
+	 */
+	public int getPmid(int aRow) {
+		return pmids[aRow];
+	}
+
+	/**
+	 * @return the experimental method of aRow, null if unknown
+	 */
+	public String getExpMethod(int aRow) {
+		return methodCodes[aRow] == -1 ? null : methods.get(methodCodes[aRow]);
+	}
+
+	/**
+	 * @return the distinct experimental methods of the table
+	 */
+	public List<String> getExpMethods() {
+		return new ArrayList<String>(methods);
+	}
+
+	/**
+	 * @return the number of rows
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Count, minimum, maximum and mean of the known (non negative) values of
+	 * a column
+	 */
+	public static class Stats {
+		private int count = 0;
+		private double min = Double.NaN;
+		private double max = Double.NaN;
+		private double sum = 0;
+
+		private void add(double aValue) {
+			if (aValue < 0) {
+				return;
+			}
+			if (count == 0 || aValue < min) {
+				min = aValue;
+			}
+			if (count == 0 || aValue > max) {
+				max = aValue;
+			}
+			sum += aValue;
+			count++;
+		}
+
+		/**
+		 * @return the number of known values
+		 */
+		public int getCount() {
+			return count;
+		}
+
+		/**
+		 * @return the smallest value, NaN if there is none
+		 */
+		public double getMin() {
+			return min;
+		}
+
+		/**
+		 * @return the largest value, NaN if there is none
+		 */
+		public double getMax() {
+			return max;
+		}
+
+		/**
+		 * @return the mean value, NaN if there is none
+		 */
+		public double getMean() {
+			return count == 0 ? Double.NaN : sum / count;
+		}
+
+		@Override
+		public String toString() {
+			return "count=" + count + ", min=" + min + ", max=" + max
+					+ ", mean=" + getMean();
+		}
+	}
+}
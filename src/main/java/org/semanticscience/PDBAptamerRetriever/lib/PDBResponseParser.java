@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.lib;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.semanticscience.PDBAptamerRetriever.shared.RemoteSource;
+
+/**
+ * Reads describePDB and ligandInfo responses with a streaming (StAX) parser.
+ * Every PDB and ligand element is handed to a Listener as soon as it has been
+ * read, so that responses for thousands of structures are parsed in bounded
+ * memory
+ *
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class PDBResponseParser implements RemoteSource.ResponseHandler<Integer> {
+	// factories are expensive to create and not thread safe
+	private static final ThreadLocal<XMLInputFactory> factories = new ThreadLocal<XMLInputFactory>() {
+		@Override
+		protected XMLInputFactory initialValue() {
+			XMLInputFactory f = XMLInputFactory.newInstance();
+			f.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+			f.setProperty(XMLInputFactory.IS_COALESCING, true);
+			return f;
+		}
+	};
+	private Listener listener;
+
+	/**
+	 * Notified of the elements of a response in document order
+	 */
+	public interface Listener {
+		/**
+		 * Called before anything is read, and again if the response is read
+		 * another time
+		 */
+		void start();
+
+		/**
+		 * @param someAttributes
+		 *            the attributes of a PDB element of a describePDB response
+		 *            by name
+		 */
+		void description(Map<String, String> someAttributes);
+
+		/**
+		 * @param aStructureId
+		 *            the structure the ligand belongs to, null if the response
+		 *            does not say
+		 * @param aLigand
+		 *            a ligand of a ligandInfo response
+		 */
+		void ligand(String aStructureId, Ligand aLigand);
+	}
+
+	/**
+	 * @param aListener
+	 *            notified of the elements of every response read
+	 */
+	public PDBResponseParser(Listener aListener) {
+		listener = aListener;
+	}
+
+	/**
+	 * Read a whole response
+	 *
+	 * @return the number of PDB and ligand elements read
+	 */
+	public Integer handle(Reader aReader) throws IOException {
+		listener.start();
+		int count = 0;
+		XMLStreamReader r = null;
+		try {
+			r = factories.get().createXMLStreamReader(aReader);
+			while (r.hasNext()) {
+				if (r.next() != XMLStreamConstants.START_ELEMENT) {
+					continue;
+				}
+				if (r.getLocalName().equals("PDB")) {
+					listener.description(readAttributes(r));
+					count++;
+				} else if (r.getLocalName().equals("ligand")) {
+					Map<String, String> atts = readAttributes(r);
+					listener.ligand(atts.get("structureId"),
+							readLigand(r, atts));
+					count++;
+				}
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException("Invalid response: " + e.getMessage());
+		} finally {
+			if (r != null) {
+				try {
+					r.close();
+				} catch (XMLStreamException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		return count;
+	}
+
+	private Map<String, String> readAttributes(XMLStreamReader r) {
+		Map<String, String> rm = new HashMap<String, String>();
+		for (int i = 0; i < r.getAttributeCount(); i++) {
+			rm.put(r.getAttributeLocalName(i), r.getAttributeValue(i));
+		}
+		return rm;
+	}
+
+	/**
+	 * Read the children of the ligand element r is positioned on, leaving r
+	 * on its end tag
+	 */
+	private Ligand readLigand(XMLStreamReader r, Map<String, String> someAtts)
+			throws XMLStreamException {
+		Map<String, String> fields = new HashMap<String, String>();
+		int depth = 1;
+		while (depth > 0) {
+			int event = r.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				// getElementText() leaves r on the end tag of the child
+				fields.put(r.getLocalName(), r.getElementText());
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+		Double mw = -1.0;
+		if (someAtts.containsKey("molecularWeight")) {
+			try {
+				mw = Double.parseDouble(someAtts.get("molecularWeight"));
+			} catch (NumberFormatException e) {
+				e.printStackTrace();
+			}
+		}
+		return new Ligand(someAtts.get("chemicalID"), someAtts.get("type"),
+				mw, fields.get("chemicalName"), fields.get("formula"),
+				fields.get("InChIKey"), fields.get("InChI"),
+				fields.get("smiles"), "");
+	}
+}
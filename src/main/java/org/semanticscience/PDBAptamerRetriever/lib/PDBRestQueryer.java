@@ -22,17 +22,16 @@ package org.semanticscience.PDBAptamerRetriever.lib;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLConnection;
 import java.net.URLEncoder;
-import java.util.ArrayList;
 import java.util.List;
 
+import org.semanticscience.PDBAptamerRetriever.shared.RemoteSource;
+
 /**
  * @author Jose Cruz-Toledo
  * 
@@ -40,53 +39,76 @@ import java.util.List;
 public class PDBRestQueryer {
 	private final String SERVICELOCATION = "http://www.rcsb.org/pdb/rest/search";
 	private String xmlQuery = "";
-	private List<String> pdbIds = null;
+	// the distinct ids found, kept packed until they are asked for
+	private PdbIdSet pdbIds = null;
+	private RemoteSource source = null;
+	// why the query failed, null if it succeeded
+	private Exception failure = null;
 
 	public PDBRestQueryer() {
-		pdbIds = new ArrayList<String>();
+		pdbIds = new PdbIdSet();
 	}
 
 	public PDBRestQueryer(String anXMLQuery) {
+		this(anXMLQuery, RemoteSource.getDefault());
+	}
+
+	/**
+	 * @param anXMLQuery
+	 *            the query to post
+	 * @param aSource
+	 *            the source the query is posted to
+	 */
+	public PDBRestQueryer(String anXMLQuery, RemoteSource aSource) {
 		xmlQuery = anXMLQuery;
+		source = aSource;
 		pdbIds = postQuery(xmlQuery);
 	}
 
-	private List<String> postQuery(String anXMLQuery) {
-		List<String> rm = null;
+	/**
+	 * @return the ids found, an empty list if the query failed
+	 */
+	private PdbIdSet postQuery(String anXMLQuery) {
+		PdbIdSet rm = new PdbIdSet();
 		try {
 			URL u = new URL(SERVICELOCATION);
 			String encodedXML = URLEncoder.encode(anXMLQuery, "UTF-8");
-			InputStream in = doPOST(u, encodedXML);
-			rm = new ArrayList<String>();
-			BufferedReader rd  = new BufferedReader(new InputStreamReader(in));
-			String l;
-			while((l = rd.readLine())!= null){
-				rm.add(l);
-			}
-			rd.close();
+			rm = readIds(new StringReader(doPOST(u, encodedXML)));
 		} catch (MalformedURLException e) {
+			failure = e;
 			e.printStackTrace();
 		} catch (UnsupportedEncodingException e) {
+			failure = e;
 			e.printStackTrace();
 		} catch (IOException e) {
-			e.printStackTrace();
+			failure = e;
+			System.err.println("The PDB search failed: " + e);
 		}
 		return rm;
 	}
 	
-	private InputStream doPOST(URL u, String d){
+	/**
+	 * @return the ids of the non blank lines of aReader
+	 */
+	private PdbIdSet readIds(Reader aReader) throws IOException {
+		PdbIdSet rm = new PdbIdSet(1024);
+		BufferedReader rd = new BufferedReader(aReader);
 		try {
-			URLConnection conn = u.openConnection();
-			conn.setDoOutput(true);
-			OutputStreamWriter wr = new OutputStreamWriter(conn.getOutputStream());
-			wr.write(d);
-			wr.flush();
-			return conn.getInputStream();
-		} catch (IOException e) {
-			e.printStackTrace();
+			String l;
+			while ((l = rd.readLine()) != null) {
+				l = l.trim();
+				if (l.length() > 0) {
+					rm.add(l);
+				}
+			}
+		} finally {
+			rd.close();
 		}
-		return null;
-		
+		return rm;
+	}
+
+	private String doPOST(URL u, String d) throws IOException {
+		return source.post(u.toString(), d);
 	}
 
 	/**
@@ -98,10 +120,18 @@ public class PDBRestQueryer {
 
 
 	/**
-	 * @return the pdbIds
+	 * @return the distinct upper case pdbIds in the order they were found,
+	 *         empty if the query failed
 	 */
 	public List<String> getPdbIds() {
-		return pdbIds;
+		return pdbIds.toList();
+	}
+
+	/**
+	 * @return why the query failed, null if it succeeded
+	 */
+	public Exception getFailure() {
+		return failure;
 	}
 
 	
@@ -0,0 +1,67 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.lib;
+
+/**
+ * Packs a PDB id into an int, one upper case ASCII character per byte. Ids
+ * are kept packed in memory, e.g. by PdbIdSet, and only turned back into
+ * Strings when they are read or written
+ *
+ * @author Jose Cruz-Toledo
+ *
+ */
+final class PdbId {
+
+	private PdbId() {
+	}
+
+	/**
+	 * @return anId as an int with one upper case character per byte, or -1
+	 *         if anId is not 4 ASCII characters long. A packed id is never 0
+	 *         or negative
+	 */
+	public static int pack(String anId) {
+		if (anId == null || anId.length() != 4) {
+			return -1;
+		}
+		int rm = 0;
+		for (int i = 0; i < 4; i++) {
+			char c = Character.toUpperCase(anId.charAt(i));
+			if (c == 0 || c > 127) {
+				return -1;
+			}
+			rm = (rm << 8) | c;
+		}
+		return rm;
+	}
+
+	/**
+	 * @return the id packed by pack()
+	 */
+	public static String unpack(int aPackedId) {
+		char[] cs = new char[4];
+		for (int i = 3; i >= 0; i--) {
+			cs[i] = (char) (aPackedId & 0xFF);
+			aPackedId >>>= 8;
+		}
+		return new String(cs);
+	}
+}
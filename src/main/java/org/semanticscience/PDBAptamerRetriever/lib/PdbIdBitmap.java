@@ -0,0 +1,288 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.lib;
+
+import java.util.Arrays;
+
+/**
+ * An immutable set of PDB ids of an ARLigandDictionary, stored as the
+ * ordinals the dictionary gives its ids. A sparse set is kept as the sorted
+ * array of its ordinals and a dense one as a bitmap, whichever is smaller,
+ * so the posting list of a rare ligand costs a few ints and that of a
+ * common ion one bit per structure. Sets are combined with and(), or() and
+ * andNot(); both sets must come from the same dictionary
+ *
+ * @author Jose Cruz-Toledo
+ *
+ */
+public final class PdbIdBitmap {
+	// the number of ordinals of the dictionary
+	private final int universe;
+	// the sorted ordinals of a sparse set, null if the set is dense
+	private final int[] members;
+	// the bits of a dense set, null if the set is sparse
+	private final long[] words;
+	private final int cardinality;
+
+	private PdbIdBitmap(int aUniverse, int[] someMembers, long[] someWords,
+			int aCardinality) {
+		universe = aUniverse;
+		members = someMembers;
+		words = someWords;
+		cardinality = aCardinality;
+	}
+
+	/**
+	 * @return the empty set of a dictionary of aUniverse ids
+	 */
+	static PdbIdBitmap empty(int aUniverse) {
+		return new PdbIdBitmap(aUniverse, new int[0], null, 0);
+	}
+
+	/**
+	 * @param someOrdinals
+	 *            distinct ordinals below aUniverse, in any order
+	 */
+	static PdbIdBitmap of(int[] someOrdinals, int aUniverse) {
+		int[] sorted = someOrdinals.clone();
+		Arrays.sort(sorted);
+		for (int i = 0; i < sorted.length; i++) {
+			if (sorted[i] < 0 || sorted[i] >= aUniverse
+					|| (i > 0 && sorted[i] == sorted[i - 1])) {
+				throw new IllegalArgumentException("Invalid ordinal "
+						+ sorted[i]);
+			}
+		}
+		return compact(sorted, sorted.length, aUniverse);
+	}
+
+	/**
+	 * @return the set of the first aLength sorted distinct ordinals of
+	 *         someOrdinals, in the smaller representation
+	 */
+	private static PdbIdBitmap compact(int[] someOrdinals, int aLength,
+			int aUniverse) {
+		if (isSparse(aLength, aUniverse)) {
+			return new PdbIdBitmap(aUniverse, Arrays.copyOf(someOrdinals,
+					aLength), null, aLength);
+		}
+		long[] w = new long[(aUniverse + 63) >>> 6];
+		for (int i = 0; i < aLength; i++) {
+			w[someOrdinals[i] >>> 6] |= 1L << someOrdinals[i];
+		}
+		return new PdbIdBitmap(aUniverse, null, w, aLength);
+	}
+
+	private static PdbIdBitmap compact(long[] someWords, int aUniverse) {
+		int n = 0;
+		for (long w : someWords) {
+			n += Long.bitCount(w);
+		}
+		if (!isSparse(n, aUniverse)) {
+			return new PdbIdBitmap(aUniverse, null, someWords, n);
+		}
+		return new PdbIdBitmap(aUniverse, ordinals(someWords, n), null, n);
+	}
+
+	/**
+	 * @return the sorted ordinals of the aCardinality bits set in someWords
+	 */
+	private static int[] ordinals(long[] someWords, int aCardinality) {
+		int[] rm = new int[aCardinality];
+		int k = 0;
+		for (int i = 0; i < someWords.length; i++) {
+			long w = someWords[i];
+			while (w != 0) {
+				rm[k++] = (i << 6) + Long.numberOfTrailingZeros(w);
+				w &= w - 1;
+			}
+		}
+		return rm;
+	}
+
+	/**
+	 * @return true if aCardinality ordinals take less room as an array than
+	 *         as a bitmap
+	 */
+	private static boolean isSparse(int aCardinality, int aUniverse) {
+		return (long) aCardinality * 32 < aUniverse;
+	}
+
+	/**
+	 * @return the ids in both this set and anOther
+	 */
+	public PdbIdBitmap and(PdbIdBitmap anOther) {
+		check(anOther);
+		if (members != null || anOther.members != null) {
+			PdbIdBitmap sparse = members != null ? this : anOther;
+			PdbIdBitmap other = sparse == this ? anOther : this;
+			int[] m = new int[sparse.cardinality];
+			int n = 0;
+			for (int o : sparse.members) {
+				if (other.contains(o)) {
+					m[n++] = o;
+				}
+			}
+			return compact(m, n, universe);
+		}
+		long[] w = new long[words.length];
+		for (int i = 0; i < w.length; i++) {
+			w[i] = words[i] & anOther.words[i];
+		}
+		return compact(w, universe);
+	}
+
+	/**
+	 * @return the ids in this set or in anOther
+	 */
+	public PdbIdBitmap or(PdbIdBitmap anOther) {
+		check(anOther);
+		if (members != null && anOther.members != null) {
+			int[] m = new int[cardinality + anOther.cardinality];
+			int n = 0;
+			int i = 0;
+			int j = 0;
+			while (i < members.length || j < anOther.members.length) {
+				if (j == anOther.members.length
+						|| (i < members.length && members[i] < anOther.members[j])) {
+					m[n++] = members[i++];
+				} else if (i == members.length
+						|| anOther.members[j] < members[i]) {
+					m[n++] = anOther.members[j++];
+				} else {
+					m[n++] = members[i++];
+					j++;
+				}
+			}
+			return compact(m, n, universe);
+		}
+		long[] w = toWords();
+		long[] o = anOther.toWords();
+		for (int i = 0; i < w.length; i++) {
+			w[i] |= o[i];
+		}
+		return compact(w, universe);
+	}
+
+	/**
+	 * @return the ids in this set but not in anOther
+	 */
+	public PdbIdBitmap andNot(PdbIdBitmap anOther) {
+		check(anOther);
+		if (members != null) {
+			int[] m = new int[cardinality];
+			int n = 0;
+			for (int o : members) {
+				if (!anOther.contains(o)) {
+					m[n++] = o;
+				}
+			}
+			return compact(m, n, universe);
+		}
+		long[] w = toWords();
+		long[] o = anOther.toWords();
+		for (int i = 0; i < w.length; i++) {
+			w[i] &= ~o[i];
+		}
+		return compact(w, universe);
+	}
+
+	/**
+	 * @return true if anOrdinal is in this set
+	 */
+	public boolean contains(int anOrdinal) {
+		if (anOrdinal < 0 || anOrdinal >= universe) {
+			return false;
+		}
+		if (members != null) {
+			return Arrays.binarySearch(members, anOrdinal) >= 0;
+		}
+		return (words[anOrdinal >>> 6] & (1L << anOrdinal)) != 0;
+	}
+
+	/**
+	 * @return the ordinals of this set in increasing order
+	 */
+	public int[] toArray() {
+		if (members != null) {
+			return members.clone();
+		}
+		return ordinals(words, cardinality);
+	}
+
+	private long[] toWords() {
+		if (words != null) {
+			return words.clone();
+		}
+		long[] w = new long[(universe + 63) >>> 6];
+		for (int o : members) {
+			w[o >>> 6] |= 1L << o;
+		}
+		return w;
+	}
+
+	private void check(PdbIdBitmap anOther) {
+		if (anOther.universe != universe) {
+			throw new IllegalArgumentException(
+					"The sets come from different dictionaries");
+		}
+	}
+
+	/**
+	 * @return the number of ids in this set
+	 */
+	public int cardinality() {
+		return cardinality;
+	}
+
+	public boolean isEmpty() {
+		return cardinality == 0;
+	}
+
+	/**
+	 * @return the number of ids of the dictionary this set comes from
+	 */
+	public int getUniverse() {
+		return universe;
+	}
+
+	/**
+	 * @return true if the set is stored as a bitmap rather than an array
+	 */
+	boolean isDense() {
+		return words != null;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof PdbIdBitmap)) {
+			return false;
+		}
+		PdbIdBitmap other = (PdbIdBitmap) obj;
+		return universe == other.universe
+				&& Arrays.equals(toArray(), other.toArray());
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * universe + Arrays.hashCode(toArray());
+	}
+}
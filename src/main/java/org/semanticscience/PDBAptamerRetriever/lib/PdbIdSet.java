@@ -0,0 +1,229 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.lib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A set of PDB ids that remembers the order they were added in. Ids are
+ * kept packed (see PdbId) in an int array and found through an open
+ * addressing hash table of their positions, so that neither adding nor
+ * looking up an id creates objects. The rare ids that cannot be packed are
+ * kept as upper case Strings. Every id has a stable index, its position in
+ * the order of addition. Not thread safe
+ *
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class PdbIdSet {
+	// the packed ids in the order they were added; an id that could not be
+	// packed is stored as -1 - its index in others
+	private int[] ids;
+	private int size = 0;
+	// the index + 1 of every packed id, 0 for an empty slot
+	private int[] slots;
+	private int packed = 0;
+	// the upper case ids that could not be packed, null until there is one
+	private List<String> others = null;
+	private Map<String, Integer> otherIndex = null;
+
+	public PdbIdSet() {
+		this(4);
+	}
+
+	/**
+	 * @param aCapacity
+	 *            the number of ids expected
+	 */
+	public PdbIdSet(int aCapacity) {
+		ids = new int[Math.max(aCapacity, 1)];
+		int n = 2;
+		while (n < aCapacity * 2) {
+			n <<= 1;
+		}
+		slots = new int[n];
+	}
+
+	/**
+	 * @param anId
+	 *            a PDB id in any case
+	 * @return true if anId was added, false if it was already in the set
+	 */
+	public boolean add(String anId) {
+		int p = PdbId.pack(anId);
+		if (p != -1) {
+			return add(p);
+		}
+		String u = anId.toUpperCase();
+		if (others == null) {
+			others = new ArrayList<String>();
+			otherIndex = new HashMap<String, Integer>();
+		} else if (otherIndex.containsKey(u)) {
+			return false;
+		}
+		otherIndex.put(u, size);
+		append(-1 - others.size());
+		others.add(u);
+		return true;
+	}
+
+	/**
+	 * @param aPackedId
+	 *            an id packed by PdbId.pack()
+	 * @return true if aPackedId was added, false if it was already in the set
+	 */
+	public boolean add(int aPackedId) {
+		if (aPackedId <= 0) {
+			throw new IllegalArgumentException("Invalid packed PDB id: "
+					+ aPackedId);
+		}
+		int s = slot(aPackedId);
+		if (slots[s] != 0) {
+			return false;
+		}
+		if ((packed + 1) * 2 > slots.length) {
+			rehash(slots.length * 2);
+			s = slot(aPackedId);
+		}
+		append(aPackedId);
+		slots[s] = size;
+		packed++;
+		return true;
+	}
+
+	/**
+	 * @return the index of anId, -1 if it is not in the set
+	 */
+	public int indexOf(String anId) {
+		int p = PdbId.pack(anId);
+		if (p != -1) {
+			return indexOf(p);
+		}
+		if (otherIndex == null || anId == null) {
+			return -1;
+		}
+		Integer i = otherIndex.get(anId.toUpperCase());
+		return i == null ? -1 : i;
+	}
+
+	/**
+	 * @return the index of aPackedId, -1 if it is not in the set
+	 */
+	public int indexOf(int aPackedId) {
+		if (aPackedId <= 0) {
+			return -1;
+		}
+		return slots[slot(aPackedId)] - 1;
+	}
+
+	public boolean contains(String anId) {
+		return indexOf(anId) != -1;
+	}
+
+	public boolean contains(int aPackedId) {
+		return indexOf(aPackedId) != -1;
+	}
+
+	/**
+	 * @return the upper case id of anIndex
+	 */
+	public String get(int anIndex) {
+		if (anIndex < 0 || anIndex >= size) {
+			throw new IndexOutOfBoundsException("Index: " + anIndex
+					+ ", size: " + size);
+		}
+		int v = ids[anIndex];
+		return v > 0 ? PdbId.unpack(v) : others.get(-1 - v);
+	}
+
+	/**
+	 * @return the upper case ids in the order they were added
+	 */
+	public List<String> toList() {
+		List<String> rm = new ArrayList<String>(size);
+		for (int i = 0; i < size; i++) {
+			rm.add(get(i));
+		}
+		return rm;
+	}
+
+	/**
+	 * @return the packed ids in increasing order, without the ids that could
+	 *         not be packed
+	 */
+	public int[] toSortedArray() {
+		int[] rm = new int[packed];
+		int n = 0;
+		for (int i = 0; i < size; i++) {
+			if (ids[i] > 0) {
+				rm[n++] = ids[i];
+			}
+		}
+		Arrays.sort(rm);
+		return rm;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return the slot of aPackedId, or the empty slot where it would go
+	 */
+	private int slot(int aPackedId) {
+		int mask = slots.length - 1;
+		int h = aPackedId * 0x9E3779B9;
+		int s = (h ^ (h >>> 16)) & mask;
+		while (slots[s] != 0 && ids[slots[s] - 1] != aPackedId) {
+			s = (s + 1) & mask;
+		}
+		return s;
+	}
+
+	private void rehash(int aLength) {
+		slots = new int[aLength];
+		for (int i = 0; i < size; i++) {
+			if (ids[i] > 0) {
+				slots[slot(ids[i])] = i + 1;
+			}
+		}
+	}
+
+	private void append(int aValue) {
+		if (size == ids.length) {
+			ids = Arrays.copyOf(ids, size * 2);
+		}
+		ids[size++] = aValue;
+	}
+
+	@Override
+	public String toString() {
+		return toList().toString();
+	}
+}
@@ -0,0 +1,206 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.lib;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import au.com.bytecode.opencsv.CSVWriter;
+
+/**
+ * The outcome of loading a list of PDB ids with a PDBRecordLoader: which
+ * records were retrieved, which needed a second attempt and which failed and
+ * why. Records whose ligands could not be retrieved are listed apart, since
+ * their description may still have been
+ *
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class RecordLoadResult {
+	/**
+	 * What happened to a single id
+	 */
+	public enum Status {
+		// retrieved at the first attempt, or taken from the store
+		SUCCEEDED,
+		// retrieved after its batch failed
+		RETRIED,
+		// could not be retrieved
+		FAILED
+	}
+
+	// one record per id in the order the ids were given
+	private List<PDBRecord> records = new ArrayList<PDBRecord>();
+	private Map<PDBRecord, Status> statuses = new HashMap<PDBRecord, Status>();
+	private Map<PDBRecord, String> causes = new HashMap<PDBRecord, String>();
+	// the records whose ligands could not be retrieved, and why
+	private Map<PDBRecord, String> ligandCauses = new LinkedHashMap<PDBRecord, String>();
+
+	RecordLoadResult() {
+	}
+
+	/**
+	 * Add the outcome of the next id
+	 *
+	 * @param aCause
+	 *            why aRecord failed, null unless aStatus is FAILED
+	 */
+	void add(PDBRecord aRecord, Status aStatus, String aCause) {
+		records.add(aRecord);
+		statuses.put(aRecord, aStatus);
+		if (aCause != null) {
+			causes.put(aRecord, aCause);
+		}
+	}
+
+	/**
+	 * @return one record per id in the order the ids were given, including
+	 *         the ones that failed
+	 */
+	public List<PDBRecord> getRecords() {
+		return records;
+	}
+
+	/**
+	 * Note which of someRecords failed the last attempt to retrieve their
+	 * ligands, forgetting earlier failures of those that have them now
+	 */
+	synchronized void updateLigands(List<PDBRecord> someRecords) {
+		for (PDBRecord r : someRecords) {
+			Exception e = r.getLigandFailure();
+			if (e != null) {
+				ligandCauses.put(r, e.toString());
+			} else if (r.isLigandsLoaded()) {
+				ligandCauses.remove(r);
+			}
+		}
+	}
+
+	/**
+	 * @return the records whose ligands could not be retrieved
+	 */
+	public synchronized List<PDBRecord> getLigandsFailed() {
+		return new ArrayList<PDBRecord>(ligandCauses.keySet());
+	}
+
+	/**
+	 * @return why the ligands of aRecord could not be retrieved, null if they
+	 *         were or were never asked for
+	 */
+	public synchronized String getLigandCause(PDBRecord aRecord) {
+		return ligandCauses.get(aRecord);
+	}
+
+	/**
+	 * @return true if no record and no ligands failed
+	 */
+	public synchronized boolean isComplete() {
+		return getFailed().isEmpty() && ligandCauses.isEmpty();
+	}
+
+	/**
+	 * @return the records that were retrieved
+	 */
+	public List<PDBRecord> getSucceeded() {
+		List<PDBRecord> rm = new ArrayList<PDBRecord>();
+		for (PDBRecord r : records) {
+			if (statuses.get(r) != Status.FAILED) {
+				rm.add(r);
+			}
+		}
+		return rm;
+	}
+
+	/**
+	 * @return the records that could not be retrieved
+	 */
+	public List<PDBRecord> getFailed() {
+		List<PDBRecord> rm = new ArrayList<PDBRecord>();
+		for (PDBRecord r : records) {
+			if (statuses.get(r) == Status.FAILED) {
+				rm.add(r);
+			}
+		}
+		return rm;
+	}
+
+	/**
+	 * @return the number of records retrieved after their batch failed
+	 */
+	public int getRetriedCount() {
+		int rm = 0;
+		for (Status s : statuses.values()) {
+			if (s == Status.RETRIED) {
+				rm++;
+			}
+		}
+		return rm;
+	}
+
+	/**
+	 * @return what happened to aRecord
+	 */
+	public Status getStatus(PDBRecord aRecord) {
+		return statuses.get(aRecord);
+	}
+
+	/**
+	 * @return why aRecord could not be retrieved, null if it was
+	 */
+	public String getCause(PDBRecord aRecord) {
+		return causes.get(aRecord);
+	}
+
+	/**
+	 * Write a tab separated line (PDB id, cause) per failed record, then one
+	 * per record whose ligands could not be retrieved
+	 *
+	 * @param aWriter
+	 *            where the lines are written, left open
+	 * @throws IOException
+	 */
+	public void writeFailures(Writer aWriter) throws IOException {
+		CSVWriter w = new CSVWriter(aWriter, '\t');
+		for (PDBRecord r : getFailed()) {
+			w.writeNext(new String[] { r.getRequestedId(), getCause(r) });
+		}
+		for (PDBRecord r : getLigandsFailed()) {
+			w.writeNext(new String[] { r.getRequestedId(),
+					"Ligands not retrieved: " + getLigandCause(r) });
+		}
+		w.flush();
+	}
+
+	@Override
+	public String toString() {
+		int failed = getFailed().size();
+		return (records.size() - failed) + " of " + records.size()
+				+ " PDB records retrieved, " + getRetriedCount()
+				+ " after a retry, " + failed + " failed"
+				+ (ligandCauses.isEmpty() ? "" : ", ligands of "
+						+ ligandCauses.size() + " not retrieved");
+	}
+}
@@ -22,6 +22,7 @@ package org.semanticscience.PDBAptamerRetriever.main;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.Comparator;
 
 import org.apache.commons.cli.CommandLine;
@@ -35,6 +36,21 @@ import org.apache.commons.cli.ParseException;
 import org.apache.commons.io.FileUtils;
 import org.semanticscience.PDBAptamerRetriever.bin.PDBAptamerIDRetriever;
 import org.semanticscience.PDBAptamerRetriever.bin.PDBRecordRetriever;
+import org.semanticscience.PDBAptamerRetriever.lib.FastaBatchTask;
+import org.semanticscience.PDBAptamerRetriever.lib.PDBRecord;
+import org.semanticscience.PDBAptamerRetriever.lib.PDBRecordFilter;
+import org.semanticscience.PDBAptamerRetriever.lib.PDBRecordLoader;
+import org.semanticscience.PDBAptamerRetriever.lib.PDBRecordStore;
+import org.semanticscience.PDBAptamerRetriever.lib.RecordLoadResult;
+import org.semanticscience.PDBAptamerRetriever.shared.CompressedFiles;
+import org.semanticscience.PDBAptamerRetriever.shared.DownloadEngine;
+import org.semanticscience.PDBAptamerRetriever.shared.HttpRemoteSource;
+import org.semanticscience.PDBAptamerRetriever.shared.PooledHttpClient;
+import org.semanticscience.PDBAptamerRetriever.shared.RecordingRemoteSource;
+import org.semanticscience.PDBAptamerRetriever.shared.RemoteSource;
+import org.semanticscience.PDBAptamerRetriever.shared.ReplayRemoteSource;
+import org.semanticscience.PDBAptamerRetriever.shared.RequestPolicy;
+import org.semanticscience.PDBAptamerRetriever.shared.ResponseCache;
 import org.semanticscience.PDBAptamerRetriever.shared.OptionComparator;
 
 /**
@@ -57,6 +73,22 @@ public class RetrieveAptamers {
 		Double gapOpen = null;
 		boolean ligandReport = false;
 		boolean ligandFreqs = false;
+		int workers = DownloadEngine.DEFAULT_WORKERS;
+		int hostConnections = DownloadEngine.DEFAULT_MAX_PER_HOST;
+		int fastaBatchSize = FastaBatchTask.DEFAULT_BATCH_SIZE;
+		boolean compressed = false;
+		boolean verify = false;
+		int connectTimeout = PooledHttpClient.DEFAULT_CONNECT_TIMEOUT / 1000;
+		int readTimeout = PooledHttpClient.DEFAULT_READ_TIMEOUT / 1000;
+		double rate = RequestPolicy.DEFAULT_RATE;
+		int attempts = RequestPolicy.DEFAULT_MAX_ATTEMPTS;
+		int recordThreads = PDBRecordLoader.DEFAULT_THREADS;
+		int recordBatch = PDBRecordLoader.DEFAULT_BATCH_SIZE;
+		// keeps only some of the retrieved records, may be null
+		PDBRecordFilter recordFilter = null;
+		File cacheDir = null;
+		long cacheSize = ResponseCache.DEFAULT_MAX_BYTES / (1024 * 1024);
+		long cacheTtl = ResponseCache.DEFAULT_TTL / (60 * 60 * 1000);
 		try {
 			CommandLine cmd = parser.parse(options, args);
 			if (cmd.hasOption("help")) {
@@ -69,6 +101,154 @@ public class RetrieveAptamers {
 			if(cmd.hasOption("pdbmlDir")){
 				pdbmlDir = new File(cmd.getOptionValue("pdbmlDir"));
 			}
+			if (cmd.hasOption("workers")) {
+				workers = Integer.parseInt(cmd.getOptionValue("workers"));
+			}
+			if (cmd.hasOption("hostConnections")) {
+				hostConnections = Integer.parseInt(cmd
+						.getOptionValue("hostConnections"));
+			}
+			if (cmd.hasOption("gz")) {
+				compressed = true;
+			}
+			if (cmd.hasOption("verify")) {
+				verify = true;
+			}
+			if (cmd.hasOption("fastaBatch")) {
+				fastaBatchSize = Integer.parseInt(cmd
+						.getOptionValue("fastaBatch"));
+			}
+			if (workers < 1 || hostConnections < 1 || fastaBatchSize < 1) {
+				System.out
+						.println("workers, hostConnections and fastaBatch must be at least 1!");
+				printUsage();
+				System.exit(1);
+			}
+			if (cmd.hasOption("connectTimeout")) {
+				connectTimeout = Integer.parseInt(cmd
+						.getOptionValue("connectTimeout"));
+			}
+			if (cmd.hasOption("readTimeout")) {
+				readTimeout = Integer.parseInt(cmd
+						.getOptionValue("readTimeout"));
+			}
+			if (connectTimeout < 0 || readTimeout < 0) {
+				System.out
+						.println("connectTimeout and readTimeout cannot be negative!");
+				printUsage();
+				System.exit(1);
+			}
+			if (cmd.hasOption("rate")) {
+				rate = Double.parseDouble(cmd.getOptionValue("rate"));
+			}
+			if (cmd.hasOption("attempts")) {
+				attempts = Integer.parseInt(cmd.getOptionValue("attempts"));
+			}
+			if (cmd.hasOption("recordThreads")) {
+				recordThreads = Integer.parseInt(cmd
+						.getOptionValue("recordThreads"));
+			}
+			if (cmd.hasOption("recordBatch")) {
+				recordBatch = Integer.parseInt(cmd
+						.getOptionValue("recordBatch"));
+			}
+			if (cmd.hasOption("filter")) {
+				try {
+					recordFilter = PDBRecordFilter.parse(cmd
+							.getOptionValue("filter"));
+				} catch (IllegalArgumentException e) {
+					System.out.println(e.getMessage());
+					printUsage();
+					System.exit(1);
+				}
+			}
+			if (recordThreads < 1) {
+				System.out.println("recordThreads must be at least 1!");
+				printUsage();
+				System.exit(1);
+			}
+			if (recordBatch < 1) {
+				System.out.println("recordBatch must be at least 1!");
+				printUsage();
+				System.exit(1);
+			}
+			PDBRecordLoader loader = new PDBRecordLoader(recordThreads,
+					recordBatch);
+			// the ligands are otherwise only retrieved for -lr and -lf
+			loader.setLoadLigands(cmd.hasOption("summaryLigands"));
+			if (cmd.hasOption("store")) {
+				PDBRecordStore store = PDBRecordStore.load(new File(cmd
+						.getOptionValue("store")));
+				if (cmd.hasOption("storeMaxAge")) {
+					store.setMaxAge(Long.parseLong(cmd
+							.getOptionValue("storeMaxAge")) * 24 * 60 * 60 * 1000);
+				}
+				loader.setStore(store);
+			}
+			loader.setProgressListener(new PDBRecordLoader.ProgressListener() {
+				public void recordLoaded(PDBRecord aRecord, int aLoaded,
+						int aTotal) {
+					if (aLoaded % 100 == 0 || aLoaded == aTotal) {
+						System.out.println("Loaded " + aLoaded + " of "
+								+ aTotal + " PDB records");
+					}
+				}
+			});
+			if (rate <= 0 || attempts < 1) {
+				System.out
+						.println("rate must be positive and attempts must be at least 1!");
+				printUsage();
+				System.exit(1);
+			}
+			// every request made from here on shares these connections and
+			// this policy
+			PooledHttpClient.setDefault(new PooledHttpClient(hostConnections,
+					Math.max(hostConnections,
+							PooledHttpClient.DEFAULT_MAX_TOTAL),
+					connectTimeout * 1000, readTimeout * 1000));
+			RequestPolicy.setDefault(new RequestPolicy(rate, attempts));
+			if (cmd.hasOption("cache")) {
+				cacheDir = new File(cmd.getOptionValue("cache"));
+			}
+			if (cmd.hasOption("cacheSize")) {
+				cacheSize = Long.parseLong(cmd.getOptionValue("cacheSize"));
+			}
+			if (cmd.hasOption("cacheTtl")) {
+				cacheTtl = Long.parseLong(cmd.getOptionValue("cacheTtl"));
+			}
+			if (cmd.hasOption("offline") && cacheDir == null) {
+				System.out
+						.println("offline needs a cache directory given with -cache!");
+				printUsage();
+				System.exit(1);
+			}
+			if (cacheDir != null) {
+				ResponseCache rc = new ResponseCache(cacheDir,
+						cacheSize * 1024 * 1024);
+				rc.setDefaultTtl(cacheTtl * 60 * 60 * 1000);
+				rc.setOffline(cmd.hasOption("offline"));
+				ResponseCache.setDefault(rc);
+			}
+			if (cmd.hasOption("record") && cmd.hasOption("replay")) {
+				System.out.println("record and replay cannot be used together!");
+				printUsage();
+				System.exit(1);
+			}
+			if (cmd.hasOption("replay")) {
+				File replayDir = new File(cmd.getOptionValue("replay"));
+				if (!replayDir.isDirectory()) {
+					System.out
+							.println("Invalid directory selected for replay!");
+					printUsage();
+					System.exit(1);
+				}
+				RemoteSource.setDefault(new ReplayRemoteSource(replayDir));
+			}
+			if (cmd.hasOption("record")) {
+				RemoteSource.setDefault(new RecordingRemoteSource(
+						new HttpRemoteSource(), new File(cmd
+								.getOptionValue("record"))));
+			}
 			
 			if (cmd.hasOption("em")) {
 				// validate mehtod
@@ -96,13 +276,25 @@ public class RetrieveAptamers {
 				if (cmd.hasOption("pdbDir") || cmd.hasOption("pdbmlDir")) {
 					pdbDir = new File(cmd.getOptionValue("pdbDir"));
 					PDBAptamerIDRetriever par = new PDBAptamerIDRetriever(molT, expMeth, false, true);
+					par.setDownloadEngine(new DownloadEngine(workers, hostConnections));
+					par.setCompressed(compressed);
+					par.setVerifyChecksums(verify);
 					if (par.getPdbids().size() > 0) {
 						String workingDir = pdbDir.getAbsolutePath()+"/";
 						System.out.println("Fetching Data from PDB ...");
-						PDBRecordRetriever prr = new PDBRecordRetriever(par.getPdbids());
+						PDBRecordRetriever prr = new PDBRecordRetriever(par.getPdbids(), loader);
+						if (recordFilter != null) {
+							writeFilteredIds(prr, recordFilter, workingDir);
+						}
 						File csv = new File(workingDir+"pdb-record-summary.csv");
-						FileUtils.writeStringToFile(csv, prr.getCSVString());
+						Writer out = CompressedFiles.openWriter(csv, false);
+						try {
+							prr.writeCSV(out);
+						} finally {
+							out.close();
+						}
 						System.out.println(workingDir+"pdb-record-summary successfully created!");
+						writeRecordFailures(prr, workingDir);
 						if (pdbDir != null) {
 							try {
 								boolean b = par.retrievePDB(pdbDir);
@@ -136,7 +328,7 @@ public class RetrieveAptamers {
 					System.out.println("Please specify an pdbDir where to download the files");
 					System.exit(1);
 				}
-				
+				RequestPolicy.getDefault().reportFailures();
 				System.exit(1);
 			}
 
@@ -169,16 +361,9 @@ public class RetrieveAptamers {
 					System.exit(1);
 				}
 			}
-			// check that pdbDir and fastaDir are empty
+			// check that pdbDir and fastaDir are directories
 			if (fastaDir != null) {
-				if (fastaDir.isDirectory()) {
-					if (fastaDir.list().length > 0) {
-						System.out
-								.println("The FASTA directory you selected is not empty! \n Please provide a path to an empty directory!");
-						printUsage();
-						System.exit(1);
-					}
-				} else {
+				if (!fastaDir.isDirectory()) {
 					System.out
 							.println("Invalid directory selected for fastaDir!");
 					printUsage();
@@ -201,29 +386,51 @@ public class RetrieveAptamers {
 				}
 			}
 			PDBAptamerIDRetriever par = new PDBAptamerIDRetriever(molT, expMeth);
+			par.setDownloadEngine(new DownloadEngine(workers, hostConnections));
+			par.setFastaBatchSize(fastaBatchSize);
+			par.setCompressed(compressed);
+			par.setVerifyChecksums(verify);
 			if (par.getPdbids().size() > 0) {
 				String workingDir = pdbDir.getAbsolutePath()+"/";
 				System.out.println("Fetching Data from PDB ...");
-				PDBRecordRetriever prr = new PDBRecordRetriever(par.getPdbids());
+				PDBRecordRetriever prr = new PDBRecordRetriever(par.getPdbids(), loader);
+				if (recordFilter != null) {
+					writeFilteredIds(prr, recordFilter, workingDir);
+				}
 				// now write the CSV file
 				File csv = new File(workingDir+"pdb-record-summary.csv");
-				FileUtils.writeStringToFile(csv, prr.getCSVString());
+				Writer out = CompressedFiles.openWriter(csv, false);
+				try {
+					prr.writeCSV(out);
+				} finally {
+					out.close();
+				}
 				System.out.println(workingDir+"pdb-record-summary successfully created!");
 				// verify the options
 				if (ligandReport) {
 					// create the ligand report
 					File lr = new File(workingDir+"ligand-report.csv");
-					String ligRep = prr.getLigandCSVReport();
-					FileUtils.writeStringToFile(lr, ligRep);
+					out = CompressedFiles.openWriter(lr, false);
+					try {
+						prr.writeLigandCSVReport(out);
+					} finally {
+						out.close();
+					}
 					System.out
 							.println(workingDir+"ligand-report.csv successfully created!");
 				}
 				if (ligandFreqs) {
 					File lf = new File("ligand-freqs.csv");
-					String ligCounts = prr.getLigandFrequenciesCSV();
-					FileUtils.writeStringToFile(lf, ligCounts);
+					out = CompressedFiles.openWriter(lf, false);
+					try {
+						prr.writeLigandFrequenciesCSV(out);
+					} finally {
+						out.close();
+					}
 					System.out.println("ligand-freqs.csv succesffuly created!");
 				}
+				// after the ligand reports, which may fail to retrieve ligands
+				writeRecordFailures(prr, workingDir);
 				if (fastaDir != null) {
 					try {
 						boolean b = par.retrieveFasta(fastaDir, concatFasta);
@@ -287,6 +494,7 @@ public class RetrieveAptamers {
 				System.out.println("No PDB records found!");
 				System.exit(1);
 			}
+			RequestPolicy.getDefault().reportFailures();
 		} catch (ParseException e) {
 			System.out.println("Unable to parse specified options!");
 			printUsage();
@@ -369,7 +577,150 @@ public class RetrieveAptamers {
 				.hasArg(true)
 				.withDescription("Add this parameter if you are running Needle")
 				.create("gapExtend");
+		Option workers = OptionBuilder
+				.withArgName("4")
+				.hasArg(true)
+				.withDescription(
+						"The number of files to download at the same time")
+				.create("workers");
+		Option hostConnections = OptionBuilder
+				.withArgName("4")
+				.hasArg(true)
+				.withDescription(
+						"The maximum number of simultaneous connections to the PDB")
+				.create("hostConnections");
+		Option fastaBatch = OptionBuilder
+				.withArgName("200")
+				.hasArg(true)
+				.withDescription(
+						"The number of PDB ids requested at once when retrieving FASTA files")
+				.create("fastaBatch");
+		Option gz = OptionBuilder
+				.hasArg(false)
+				.withDescription(
+						"Add this parameter to download and store gzip compressed PDB, PDBML and FASTA files")
+				.create("gz");
+		Option verify = OptionBuilder
+				.hasArg(false)
+				.withDescription(
+						"Add this parameter to verify the checksums of the files already downloaded before skipping them")
+				.create("verify");
+		Option connectTimeout = OptionBuilder
+				.withArgName("10")
+				.hasArg(true)
+				.withDescription(
+						"Seconds to wait for a connection to the PDB, 0 waits forever")
+				.create("connectTimeout");
+		Option readTimeout = OptionBuilder
+				.withArgName("60")
+				.hasArg(true)
+				.withDescription(
+						"Seconds to wait for data from the PDB, 0 waits forever")
+				.create("readTimeout");
+		Option rate = OptionBuilder
+				.withArgName("5")
+				.hasArg(true)
+				.withDescription(
+						"The maximum number of requests per second sent to the PDB")
+				.create("rate");
+		Option attempts = OptionBuilder
+				.withArgName("5")
+				.hasArg(true)
+				.withDescription(
+						"The number of times a request that timed out or was throttled is tried")
+				.create("attempts");
+		Option cache = OptionBuilder
+				.withArgName("/path/to/cache/dir")
+				.hasArg(true)
+				.withDescription(
+						"Keep the responses of the PDB web services in this directory and reuse them on later runs")
+				.create("cache");
+		Option cacheSize = OptionBuilder
+				.withArgName("512")
+				.hasArg(true)
+				.withDescription(
+						"The maximum size of the cache in megabytes, the least recently used responses are removed first")
+				.create("cacheSize");
+		Option cacheTtl = OptionBuilder
+				.withArgName("168")
+				.hasArg(true)
+				.withDescription(
+						"The number of hours a cached record description is used for, searches are used for 24 hours")
+				.create("cacheTtl");
+		Option offline = OptionBuilder
+				.hasArg(false)
+				.withDescription(
+						"Only use the responses found in the cache, whatever their age")
+				.create("offline");
+		Option record = OptionBuilder
+				.withArgName("/path/to/recording/dir")
+				.hasArg(true)
+				.withDescription(
+						"Save every response of the PDB in this directory so that the run can be replayed")
+				.create("record");
+		Option replay = OptionBuilder
+				.withArgName("/path/to/recording/dir")
+				.hasArg(true)
+				.withDescription(
+						"Serve every request from a directory filled with -record instead of the network")
+				.create("replay");
+		Option recordThreads = OptionBuilder
+				.withArgName("8")
+				.hasArg(true)
+				.withDescription(
+						"The number of requests made at the same time when retrieving the descriptions and ligands of the PDB records")
+				.create("recordThreads");
+		Option summaryLigands = OptionBuilder
+				.hasArg(false)
+				.withDescription(
+						"List the chemical ids of the ligands of every record in the last column of pdb-record-summary.csv. Without it that column is left empty unless the ligands were already retrieved for -filter or kept in a -store file. This needs a ligandInfo request per batch of records")
+				.create("summaryLigands");
+		Option store = OptionBuilder
+				.withArgName("file")
+				.hasArg(true)
+				.withDescription(
+						"A file where the retrieved PDB records are kept so that later runs only retrieve new or stale ones")
+				.create("store");
+		Option storeMaxAge = OptionBuilder
+				.withArgName("30")
+				.hasArg(true)
+				.withDescription(
+						"The age in days after which a record kept with -store is retrieved again")
+				.create("storeMaxAge");
+		Option filter = OptionBuilder
+				.withArgName("method=X-RAY DIFFRACTION;resolution<2.5;ligand=*")
+				.hasArg(true)
+				.withDescription(
+						"Keep only the retrieved records that meet every clause, separated by ';'. The fields are resolution, atoms and residues, compared with <, <=, >, >= or =, method (the experimental method) and ligand (a chemical id, or * for any ligand). The ids kept are written to pdb-filtered-ids.txt and the summary and reports only list them")
+				.create("filter");
+		Option recordBatch = OptionBuilder
+				.withArgName("100")
+				.hasArg(true)
+				.withDescription(
+						"The number of PDB ids whose descriptions or ligands are retrieved with a single request")
+				.create("recordBatch");
 		o.addOption(getAll);
+		o.addOption(recordThreads);
+		o.addOption(recordBatch);
+		o.addOption(filter);
+		o.addOption(summaryLigands);
+		o.addOption(store);
+		o.addOption(storeMaxAge);
+		o.addOption(record);
+		o.addOption(replay);
+		o.addOption(cache);
+		o.addOption(cacheSize);
+		o.addOption(cacheTtl);
+		o.addOption(offline);
+		o.addOption(rate);
+		o.addOption(attempts);
+		o.addOption(connectTimeout);
+		o.addOption(readTimeout);
+		o.addOption(gz);
+		o.addOption(verify);
+		o.addOption(fastaBatch);
+		o.addOption(workers);
+		o.addOption(hostConnections);
 		o.addOption(outputPDBMLDir);
 		o.addOption(gapExtend);
 		o.addOption(gapOpen);
@@ -393,7 +744,7 @@ public class RetrieveAptamers {
 	private static void printUsage() {
 		HelpFormatter hf = new HelpFormatter();
 		hf.setOptionComparator(new Comparator() {
-			private final String OPTS_ORDER = "helpgetallemmtcflrlffastaDirpdbDirpdbmlDirclickneedlegapOpengapExtend";
+			private final String OPTS_ORDER = "helpgetallemmtcflrlfsummaryLigandsfastaDirfastaBatchpdbDirpdbmlDirgzverifyworkershostConnectionsrecordThreadsrecordBatchfilterstorestoreMaxAgeconnectTimeoutreadTimeoutrateattemptscachecacheSizecacheTtlofflinerecordreplayclickneedlegapOpengapExtend";
 			public int compare(Object o1, Object o2) {
 				Option opt1 = (Option) o1;
 				Option opt2 = (Option) o2;
@@ -405,6 +756,47 @@ public class RetrieveAptamers {
 				createOptions());
 	}
 
+	/**
+	 * Report how loading the records of prr went and write the ids that could
+	 * not be retrieved, or whose ligands could not be, with the reason, to
+	 * pdb-record-failures.tsv
+	 */
+	private static void writeRecordFailures(PDBRecordRetriever prr,
+			String workingDir) throws IOException {
+		RecordLoadResult result = prr.getLoadResult();
+		System.out.println(result);
+		File f = new File(workingDir + "pdb-record-failures.tsv");
+		if (result.isComplete()) {
+			// do not leave the failures of an earlier run behind
+			FileUtils.deleteQuietly(f);
+			return;
+		}
+		Writer out = CompressedFiles.openWriter(f, false);
+		try {
+			result.writeFailures(out);
+		} finally {
+			out.close();
+		}
+		System.out.println(f + " lists the records that could not be retrieved");
+	}
+
+	/**
+	 * Keep the records of prr that meet aFilter and write their ids to
+	 * pdb-filtered-ids.txt
+	 */
+	private static void writeFilteredIds(PDBRecordRetriever prr,
+			PDBRecordFilter aFilter, String workingDir) throws IOException {
+		int n = prr.filter(aFilter);
+		File f = new File(workingDir + "pdb-filtered-ids.txt");
+		Writer out = CompressedFiles.openWriter(f, false);
+		try {
+			prr.writeIds(out);
+		} finally {
+			out.close();
+		}
+		System.out.println(n + " PDB records meet the filter, see " + f);
+	}
+
 	private static boolean validateExpMethod(String aMethod) {
 		if (aMethod.equals("X-RAY") || aMethod.equals("NMR")
 				|| aMethod.equals("all")) {
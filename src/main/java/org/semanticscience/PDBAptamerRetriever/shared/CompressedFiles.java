@@ -0,0 +1,177 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.shared;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Helpers to read and write files that may be gzip compressed. A file is
+ * treated as compressed if its name ends in .gz
+ *
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class CompressedFiles {
+	public static final String GZ_EXTENSION = ".gz";
+
+	private CompressedFiles() {
+	}
+
+	/**
+	 * @return true if aFile is named *.gz
+	 */
+	public static boolean isCompressed(File aFile) {
+		return aFile.getName().endsWith(GZ_EXTENSION);
+	}
+
+	/**
+	 * @return aName without a trailing .gz
+	 */
+	public static String uncompressedName(String aName) {
+		if (aName.endsWith(GZ_EXTENSION)) {
+			return aName.substring(0, aName.length() - GZ_EXTENSION.length());
+		}
+		return aName;
+	}
+
+	/**
+	 * Open aFile for reading, decompressing it on the fly if it is named
+	 * *.gz
+	 */
+	public static InputStream openInputStream(File aFile) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(aFile));
+		if (isCompressed(aFile)) {
+			try {
+				return new GZIPInputStream(in);
+			} catch (IOException e) {
+				in.close();
+				throw e;
+			}
+		}
+		return in;
+	}
+
+	/**
+	 * Open aFile for reading as UTF-8 text, decompressing it on the fly if it
+	 * is named *.gz
+	 */
+	public static BufferedReader openReader(File aFile) throws IOException {
+		return new BufferedReader(new InputStreamReader(
+				openInputStream(aFile), "UTF-8"));
+	}
+
+	/**
+	 * Open aFile for writing UTF-8 text, compressing it if it is named *.gz
+	 *
+	 * @param append
+	 *            if true the output is added to the end of aFile. A compressed
+	 *            file then gets a new gzip member, which gzip readers treat as
+	 *            a continuation of the same file
+	 */
+	public static Writer openWriter(File aFile, boolean append)
+			throws IOException {
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(
+				aFile, append));
+		if (isCompressed(aFile)) {
+			out = new GZIPOutputStream(out);
+		}
+		return new OutputStreamWriter(out, "UTF-8");
+	}
+
+	/**
+	 * Write aString to aFile, compressing it if aFile is named *.gz
+	 */
+	public static void writeString(File aFile, String aString)
+			throws IOException {
+		Writer w = openWriter(aFile, false);
+		try {
+			w.write(aString);
+		} finally {
+			w.close();
+		}
+	}
+
+	/**
+	 * Make the files with anExtension found in aMirror available uncompressed.
+	 * Programs such as Click only read plain files, so if aMirror holds any
+	 * *.anExtension.gz files they are decompressed into aStaging together
+	 * with copies of the plain ones. Files already staged and newer than
+	 * their source are not decompressed again
+	 *
+	 * @param aMirror
+	 *            a directory with plain and/or gzip compressed files
+	 * @param aStaging
+	 *            a directory that may be created to hold the plain files
+	 * @param anExtension
+	 *            the extension of the files to prepare, e.g. pdb
+	 * @return aMirror if it holds no compressed files, aStaging otherwise
+	 * @throws IOException
+	 */
+	public static File prepareDirectory(File aMirror, File aStaging,
+			String anExtension) throws IOException {
+		String ext = "." + anExtension;
+		File[] files = aMirror.listFiles();
+		boolean anyCompressed = false;
+		for (File f : files) {
+			if (f.getName().endsWith(ext + GZ_EXTENSION)) {
+				anyCompressed = true;
+				break;
+			}
+		}
+		if (!anyCompressed) {
+			return aMirror;
+		}
+		FileUtils.forceMkdir(aStaging);
+		for (File f : files) {
+			String plainName = uncompressedName(f.getName());
+			if (!plainName.endsWith(ext)) {
+				continue;
+			}
+			File staged = new File(aStaging, plainName);
+			if (staged.exists() && staged.lastModified() >= f.lastModified()) {
+				continue;
+			}
+			InputStream in = openInputStream(f);
+			try {
+				FileUtils.copyInputStreamToFile(in, staged);
+			} finally {
+				IOUtils.closeQuietly(in);
+			}
+		}
+		return aStaging;
+	}
+}
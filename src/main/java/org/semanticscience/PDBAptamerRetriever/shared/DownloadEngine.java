@@ -0,0 +1,237 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.shared;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Fetches a list of DownloadTasks using a fixed number of worker threads. The
+ * number of simultaneous connections to any one host is capped separately so
+ * that the workers can be raised without hammering a single server. A failing
+ * task never stops the others, its outcome is reported in the returned list
+ * of DownloadResults
+ *
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class DownloadEngine {
+	public static final int DEFAULT_WORKERS = 4;
+	public static final int DEFAULT_MAX_PER_HOST = 4;
+	// the number of worker threads
+	private int workers;
+	// the maximum number of simultaneous connections to one host
+	private int maxPerHost;
+	// a semaphore per host name
+	private final Map<String, Semaphore> hostPermits = new HashMap<String, Semaphore>();
+	// where the files come from, null for the shared source
+	private RemoteSource source = null;
+
+	public DownloadEngine() {
+		this(DEFAULT_WORKERS, DEFAULT_MAX_PER_HOST);
+	}
+
+	/**
+	 * @param aWorkers
+	 *            the number of concurrent downloads
+	 * @param aMaxPerHost
+	 *            the maximum number of concurrent connections to any one host
+	 */
+	public DownloadEngine(int aWorkers, int aMaxPerHost) {
+		if (aWorkers < 1 || aMaxPerHost < 1) {
+			throw new IllegalArgumentException(
+					"Workers and connections per host must be at least 1!");
+		}
+		workers = aWorkers;
+		maxPerHost = aMaxPerHost;
+	}
+
+	/**
+	 * Run all of the tasks and wait for them to finish
+	 *
+	 * @param someTasks
+	 *            the files to fetch
+	 * @return one DownloadResult per task in the same order as someTasks
+	 */
+	public List<DownloadResult> download(List<? extends DownloadTask> someTasks) {
+		List<DownloadResult> rm = new ArrayList<DownloadResult>();
+		if (someTasks.isEmpty()) {
+			return rm;
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(workers,
+				someTasks.size()));
+		List<Future<DownloadResult>> futures = new ArrayList<Future<DownloadResult>>();
+		for (final DownloadTask t : someTasks) {
+			futures.add(pool.submit(new Callable<DownloadResult>() {
+				public DownloadResult call() {
+					return fetch(t);
+				}
+			}));
+		}
+		pool.shutdown();
+		for (int i = 0; i < futures.size(); i++) {
+			DownloadTask t = someTasks.get(i);
+			try {
+				rm.add(futures.get(i).get());
+			} catch (InterruptedException e) {
+				pool.shutdownNow();
+				Thread.currentThread().interrupt();
+				rm.add(new DownloadResult(t, false, e));
+			} catch (ExecutionException e) {
+				rm.add(new DownloadResult(t, false, new Exception(e.getCause())));
+			}
+		}
+		return rm;
+	}
+
+	/**
+	 * Fetch a single task on the calling thread, retrying it as the
+	 * RemoteSource allows
+	 *
+	 * @param aTask
+	 *            the task to fetch
+	 * @return the outcome of the task
+	 */
+	private DownloadResult fetch(final DownloadTask aTask) {
+		try {
+			if (!isHttp(aTask.getUrl())) {
+				// local files are neither paced nor retried
+				return new DownloadResult(aTask, attempt(aTask), null);
+			}
+			boolean stored = getSource().execute(aTask.getUrl().getHost(),
+					aTask.getUrl().toString(),
+					new RequestPolicy.Request<Boolean>() {
+						public Boolean execute() throws IOException {
+							return attempt(aTask);
+						}
+					});
+			return new DownloadResult(aTask, stored, null);
+		} catch (IOException e) {
+			return new DownloadResult(aTask, false, e);
+		}
+	}
+
+	/**
+	 * Make a single attempt at fetching aTask. The permit for its host is
+	 * only held while connected, not while waiting to retry
+	 */
+	private boolean attempt(DownloadTask aTask) throws IOException {
+		Semaphore permits = getPermits(aTask.getUrl().getHost());
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for "
+					+ aTask.getUrl().getHost());
+		}
+		InputStream in = null;
+		try {
+			in = getSource().openStream(aTask.getUrl());
+			return aTask.store(in);
+		} finally {
+			IOUtils.closeQuietly(in);
+			permits.release();
+		}
+	}
+
+	private boolean isHttp(URL aUrl) {
+		String protocol = aUrl.getProtocol();
+		return protocol.equals("http") || protocol.equals("https");
+	}
+
+	private Semaphore getPermits(String aHost) {
+		synchronized (hostPermits) {
+			Semaphore s = hostPermits.get(aHost);
+			if (s == null) {
+				s = new Semaphore(maxPerHost);
+				hostPermits.put(aHost, s);
+			}
+			return s;
+		}
+	}
+
+	/**
+	 * Count the successful downloads and print the failed ones
+	 *
+	 * @param someResults
+	 *            the results of a call to download()
+	 * @return the number of successful downloads
+	 */
+	public static int report(List<DownloadResult> someResults) {
+		int count = 0;
+		for (DownloadResult r : someResults) {
+			if (r.isSucceeded()) {
+				count++;
+			} else {
+				System.err.println(r);
+			}
+		}
+		System.out.println(count + " of " + someResults.size()
+				+ " files retrieved");
+		return count;
+	}
+
+	/**
+	 * @return the source the files are read from
+	 */
+	public RemoteSource getSource() {
+		if (source == null) {
+			return RemoteSource.getDefault();
+		}
+		return source;
+	}
+
+	/**
+	 * @param aSource
+	 *            the source to read the files from, null for the shared one
+	 */
+	public void setSource(RemoteSource aSource) {
+		this.source = aSource;
+	}
+
+	/**
+	 * @return the number of worker threads
+	 */
+	public int getWorkers() {
+		return workers;
+	}
+
+	/**
+	 * @return the maximum number of concurrent connections to one host
+	 */
+	public int getMaxPerHost() {
+		return maxPerHost;
+	}
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.shared;
+
+import java.net.URL;
+
+/**
+ * The outcome of a single DownloadTask
+ *
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class DownloadResult {
+	private String id;
+	private URL url;
+	// true if the task stored a non empty response
+	private boolean succeeded;
+	// the reason for the failure, null if succeeded or if the response was
+	// empty
+	private Exception cause;
+
+	public DownloadResult(DownloadTask aTask, boolean aSucceeded,
+			Exception aCause) {
+		id = aTask.getId();
+		url = aTask.getUrl();
+		succeeded = aSucceeded;
+		cause = aCause;
+	}
+
+	/**
+	 * @return the id of the task
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * @return the url of the task
+	 */
+	public URL getUrl() {
+		return url;
+	}
+
+	/**
+	 * @return true if the file was retrieved and stored
+	 */
+	public boolean isSucceeded() {
+		return succeeded;
+	}
+
+	/**
+	 * @return the exception that made this download fail or null
+	 */
+	public Exception getCause() {
+		return cause;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		if (succeeded) {
+			return id + "\tOK";
+		}
+		if (cause == null) {
+			return id + "\tFAILED\tempty response from " + url;
+		}
+		return id + "\tFAILED\t" + cause;
+	}
+}
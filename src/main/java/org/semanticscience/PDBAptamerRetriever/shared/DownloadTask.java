@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.shared;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+/**
+ * A single file to be fetched by a DownloadEngine. Subclasses decide what to
+ * do with the body of the response
+ *
+ * @author Jose Cruz-Toledo
+ *
+ */
+public abstract class DownloadTask {
+	// an identifier for this download (usually a PDB id)
+	private String id;
+	// the location of the remote file
+	private URL url;
+
+	/**
+	 * @param anId
+	 *            an identifier used when reporting the outcome of this task
+	 * @param aUrl
+	 *            the location of the remote file
+	 */
+	public DownloadTask(String anId, URL aUrl) {
+		id = anId;
+		url = aUrl;
+	}
+
+	/**
+	 * Consume the body of the response. Called from a worker thread of the
+	 * DownloadEngine, implementations writing to a shared file must
+	 * synchronize themselves
+	 *
+	 * @param in
+	 *            the body of the response, closed by the caller
+	 * @return true if something was stored, false if the response was empty
+	 * @throws IOException
+	 *             if the body could not be read or stored
+	 */
+	public abstract boolean store(InputStream in) throws IOException;
+
+	/**
+	 * @return the id
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * @return the url
+	 */
+	public URL getUrl() {
+		return url;
+	}
+
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.shared;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * A DownloadTask that saves the body of the response to a single file. The
+ * bytes are copied straight into a FileChannel without decoding them, first
+ * into a temporary file next to the target which is then renamed. An
+ * interrupted download never leaves a truncated target behind
+ *
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class FileDownloadTask extends DownloadTask {
+	// the number of bytes transferred per call to FileChannel.transferFrom
+	private static final long CHUNK_SIZE = 1 << 20;
+	// where the response will be saved
+	private File target;
+	// if not null every stored file is recorded in this manifest
+	private MirrorManifest manifest = null;
+	private String format = null;
+
+	/**
+	 * @param anId
+	 *            an identifier for this download
+	 * @param aUrl
+	 *            the location of the remote file
+	 * @param aTarget
+	 *            the local file to create
+	 */
+	public FileDownloadTask(String anId, URL aUrl, File aTarget) {
+		super(anId, aUrl);
+		target = aTarget;
+	}
+
+	@Override
+	public boolean store(InputStream in) throws IOException {
+		File tmp = File.createTempFile(target.getName(), ".part",
+				target.getAbsoluteFile().getParentFile());
+		long size = 0;
+		MessageDigest md = MirrorManifest.newDigest();
+		try {
+			FileOutputStream out = new FileOutputStream(tmp);
+			try {
+				size = copy(Channels.newChannel(new DigestInputStream(in, md)),
+						out.getChannel());
+			} finally {
+				out.close();
+			}
+			if (size > 0) {
+				replace(tmp, target);
+				if (manifest != null) {
+					manifest.record(getId(), format, target, new String(
+							Hex.encodeHex(md.digest())));
+				}
+			}
+		} finally {
+			tmp.delete();
+		}
+		return size > 0;
+	}
+
+	/**
+	 * Copy all of the bytes from src into the file channel dest
+	 * 
+	 * @param src
+	 *            a blocking channel
+	 * @param dest
+	 *            a channel positioned at the start of the file
+	 * @return the number of bytes copied
+	 * @throws IOException
+	 */
+	public static long copy(ReadableByteChannel src, FileChannel dest)
+			throws IOException {
+		long pos = 0;
+		long n;
+		// src is blocking, so 0 bytes transferred means we reached its end
+		while ((n = dest.transferFrom(src, pos, CHUNK_SIZE)) > 0) {
+			pos += n;
+		}
+		return pos;
+	}
+
+	/**
+	 * Rename aTemp to aTarget, replacing aTarget if it exists. On the same file
+	 * system the rename is atomic on POSIX platforms
+	 * 
+	 * @param aTemp
+	 *            a complete file
+	 * @param aTarget
+	 *            the file to create or replace
+	 * @throws IOException
+	 *             if the file could not be renamed
+	 */
+	public static void replace(File aTemp, File aTarget) throws IOException {
+		if (!aTemp.renameTo(aTarget)) {
+			// some platforms refuse to rename over an existing file
+			if (aTarget.exists() && aTarget.delete() && aTemp.renameTo(aTarget)) {
+				return;
+			}
+			throw new IOException("Could not rename " + aTemp + " to "
+					+ aTarget);
+		}
+	}
+
+	/**
+	 * @param aManifest
+	 *            the manifest where the target is recorded once stored
+	 * @param aFormat
+	 *            the format of the target as recorded in the manifest
+	 */
+	public void setManifest(MirrorManifest aManifest, String aFormat) {
+		manifest = aManifest;
+		format = aFormat;
+	}
+
+	/**
+	 * @return the target
+	 */
+	public File getTarget() {
+		return target;
+	}
+}
@@ -0,0 +1,221 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.shared;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.StringEntity;
+
+/**
+ * Reads from the web services through a PooledHttpClient. Text requests are
+ * paced and retried according to a RequestPolicy and their responses are
+ * taken from a ResponseCache when one is in use. Without a cache responses
+ * given to a ResponseHandler are streamed from the connection. Unless given
+ * explicitly the shared client, policy and cache are used
+ *
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class HttpRemoteSource extends RemoteSource {
+	private PooledHttpClient client = null;
+	private RequestPolicy policy = null;
+	private ResponseCache cache = null;
+	// if true cache is used even when it is null
+	private boolean cacheSet = false;
+
+	/**
+	 * Use the shared client, policy and cache
+	 */
+	public HttpRemoteSource() {
+	}
+
+	/**
+	 * @param aClient
+	 *            the client used to execute the requests
+	 * @param aPolicy
+	 *            the policy used to pace and retry the requests
+	 * @param aCache
+	 *            the cache of responses, or null to always fetch
+	 */
+	public HttpRemoteSource(PooledHttpClient aClient, RequestPolicy aPolicy,
+			ResponseCache aCache) {
+		client = aClient;
+		policy = aPolicy;
+		cache = aCache;
+		cacheSet = true;
+	}
+
+	@Override
+	public String get(String aUrl) throws IOException {
+		return getString(aUrl, null);
+	}
+
+	/**
+	 * Responses are cached as a whole, so aHandler only reads straight from
+	 * the connection when no cache is in use
+	 */
+	@Override
+	public <T> T get(final String aUrl, final ResponseHandler<T> aHandler)
+			throws IOException {
+		if (getCache() != null) {
+			return super.get(aUrl, aHandler);
+		}
+		return getPolicy().execute(toURI(aUrl).getHost(), aUrl,
+				new RequestPolicy.Request<T>() {
+					public T execute() throws IOException {
+						// an aborted request cannot be executed again
+						HttpGet get = new HttpGet(toURI(aUrl));
+						get.setHeader("Accept-Encoding", "gzip");
+						InputStream in = getClient().openStream(get, null);
+						try {
+							return aHandler.handle(new InputStreamReader(in,
+									"UTF-8"));
+						} finally {
+							IOUtils.closeQuietly(in);
+						}
+					}
+				});
+	}
+
+	@Override
+	public String post(String aUrl, String aBody) throws IOException {
+		return getString(aUrl, aBody);
+	}
+
+	/**
+	 * Every attempt builds its own request, since a request aborted by a
+	 * timeout or a reset connection cannot be executed again
+	 * 
+	 * @param aBody
+	 *            the body of a POST request, or null to GET aUrl
+	 */
+	private String getString(final String aUrl, final String aBody)
+			throws IOException {
+		RequestPolicy.Request<String> fetch = getPolicy().wrap(
+				toURI(aUrl).getHost(), aUrl,
+				new RequestPolicy.Request<String>() {
+					public String execute() throws IOException {
+						return getClient().getString(newRequest(aUrl, aBody),
+								null);
+					}
+				});
+		ResponseCache c = getCache();
+		if (c == null) {
+			return fetch.execute();
+		}
+		return c.get(aUrl, aBody, fetch);
+	}
+
+	/**
+	 * Open aUrl asking the server to gzip the response. Compressed responses
+	 * are decompressed on the fly so callers always see the original bytes.
+	 * The request is not retried, wrap the whole download in execute() for
+	 * that
+	 */
+	@Override
+	public InputStream openStream(URL aUrl) throws IOException {
+		String protocol = aUrl.getProtocol();
+		if (protocol.equals("http") || protocol.equals("https")) {
+			HttpGet get = new HttpGet(toURI(aUrl.toString()));
+			get.setHeader("Accept-Encoding", "gzip");
+			return getClient().openStream(get, null);
+		}
+		URLConnection conn = aUrl.openConnection();
+		conn.setRequestProperty("Accept-Encoding", "gzip");
+		InputStream in = conn.getInputStream();
+		if ("gzip".equalsIgnoreCase(conn.getContentEncoding())) {
+			try {
+				return new GZIPInputStream(in);
+			} catch (IOException e) {
+				IOUtils.closeQuietly(in);
+				throw e;
+			}
+		}
+		return in;
+	}
+
+	@Override
+	public <T> T execute(String aHost, String aDescription,
+			RequestPolicy.Request<T> aRequest) throws IOException {
+		return getPolicy().execute(aHost, aDescription, aRequest);
+	}
+
+	private HttpUriRequest newRequest(String aUrl, String aBody)
+			throws IOException {
+		if (aBody == null) {
+			return new HttpGet(toURI(aUrl));
+		}
+		HttpPost post = new HttpPost(toURI(aUrl));
+		post.setEntity(new StringEntity(aBody,
+				"application/x-www-form-urlencoded", "UTF-8"));
+		return post;
+	}
+
+	private URI toURI(String aUrl) throws IOException {
+		try {
+			return new URI(aUrl);
+		} catch (URISyntaxException e) {
+			throw new IOException("Invalid URL " + aUrl + ": "
+					+ e.getMessage());
+		}
+	}
+
+	/**
+	 * @return the client used to execute the requests
+	 */
+	public PooledHttpClient getClient() {
+		if (client == null) {
+			return PooledHttpClient.getDefault();
+		}
+		return client;
+	}
+
+	/**
+	 * @return the policy used to pace and retry the requests
+	 */
+	public RequestPolicy getPolicy() {
+		if (policy == null) {
+			return RequestPolicy.getDefault();
+		}
+		return policy;
+	}
+
+	/**
+	 * @return the cache of responses, null if responses are not cached
+	 */
+	public ResponseCache getCache() {
+		if (!cacheSet) {
+			return ResponseCache.getDefault();
+		}
+		return cache;
+	}
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.shared;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a server answers a request with an error status
+ *
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class HttpStatusException extends IOException {
+	private static final long serialVersionUID = 1L;
+	private int statusCode;
+	// milliseconds the server asked to wait before retrying, -1 if it did not
+	private long retryAfter;
+
+	public HttpStatusException(String aMessage, int aStatusCode,
+			long aRetryAfter) {
+		super(aMessage);
+		statusCode = aStatusCode;
+		retryAfter = aRetryAfter;
+	}
+
+	/**
+	 * @return the status code of the response
+	 */
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	/**
+	 * @return the milliseconds given in the Retry-After header of the
+	 *         response, or -1 if there was none
+	 */
+	public long getRetryAfter() {
+		return retryAfter;
+	}
+}
@@ -0,0 +1,334 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.shared;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Keeps track of the files downloaded into a local mirror directory so that a
+ * rerun only fetches the ids that are missing, truncated or changed. Every
+ * stored file is appended to a tab separated journal (id, format, file, size,
+ * MD5 checksum, fetch time) as soon as it is complete, so an interrupted run
+ * resumes where it stopped
+ *
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class MirrorManifest {
+	public static final String MANIFEST_FILE = ".mirror-manifest.tsv";
+	// the checksum used for files that are appended to, e.g. output.fasta
+	private static final String NO_CHECKSUM = "-";
+	private File directory;
+	private File manifestFile;
+	// the latest entry for each id, format and file name
+	private Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+	// the entries stored for each id and format
+	private Map<String, List<Entry>> entriesById = new HashMap<String, List<Entry>>();
+	// if true the checksum of every file is verified, else only its size
+	private boolean verifyChecksums = false;
+	private Writer journal = null;
+
+	private MirrorManifest(File aDirectory) {
+		directory = aDirectory;
+		manifestFile = new File(aDirectory, MANIFEST_FILE);
+	}
+
+	/**
+	 * Load the manifest of aDirectory, an empty manifest is returned if the
+	 * directory has none yet
+	 *
+	 * @param aDirectory
+	 *            a mirror directory
+	 * @throws IOException
+	 *             if an existing manifest could not be read
+	 */
+	public static MirrorManifest load(File aDirectory) throws IOException {
+		MirrorManifest rm = new MirrorManifest(aDirectory);
+		if (rm.manifestFile.exists()) {
+			BufferedReader br = new BufferedReader(new FileReader(
+					rm.manifestFile));
+			try {
+				String l;
+				while ((l = br.readLine()) != null) {
+					String[] t = l.split("\\t");
+					// skip lines left incomplete by an interrupted run
+					if (t.length == 6) {
+						try {
+							rm.put(new Entry(t[0], t[1], t[2], Long
+									.parseLong(t[3]), t[4], Long
+									.parseLong(t[5])));
+						} catch (NumberFormatException e) {
+							continue;
+						}
+					}
+				}
+			} finally {
+				br.close();
+			}
+		}
+		return rm;
+	}
+
+	/**
+	 * Find the ids for which no current files of aFormat are present
+	 *
+	 * @param someIds
+	 *            the ids that should be in the mirror
+	 * @param aFormat
+	 *            the format of the files
+	 * @return the ids that need to be retrieved, in the order of someIds
+	 */
+	public List<String> findMissing(List<String> someIds, String aFormat) {
+		List<String> rm = new ArrayList<String>();
+		for (String anId : someIds) {
+			if (!isCurrent(anId, aFormat)) {
+				rm.add(anId);
+			}
+		}
+		return rm;
+	}
+
+	/**
+	 * @return true if files of aFormat were stored for anId and none of them
+	 *         went missing, was truncated or changed since
+	 */
+	public synchronized boolean isCurrent(String anId, String aFormat) {
+		List<Entry> es = entriesById.get(key(anId, aFormat));
+		if (es == null) {
+			return false;
+		}
+		for (Entry e : es) {
+			File f = new File(directory, e.fileName);
+			if (!f.isFile()) {
+				return false;
+			}
+			if (e.checksum.equals(NO_CHECKSUM)) {
+				// appended files only grow
+				if (f.length() < e.size) {
+					return false;
+				}
+			} else {
+				if (f.length() != e.size) {
+					return false;
+				}
+				if (verifyChecksums) {
+					try {
+						if (!e.checksum.equals(checksum(f))) {
+							return false;
+						}
+					} catch (IOException ex) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Record a complete file, computing its checksum
+	 *
+	 * @param anId
+	 *            the id the file was retrieved for
+	 * @param aFormat
+	 *            the format of the file
+	 * @param aFile
+	 *            a file inside this manifest's directory
+	 * @throws IOException
+	 */
+	public void record(String anId, String aFormat, File aFile)
+			throws IOException {
+		record(anId, aFormat, aFile, checksum(aFile));
+	}
+
+	/**
+	 * Record a complete file whose checksum is already known
+	 *
+	 * @param aChecksum
+	 *            the hex encoded MD5 of aFile
+	 * @throws IOException
+	 */
+	public synchronized void record(String anId, String aFormat, File aFile,
+			String aChecksum) throws IOException {
+		Entry e = new Entry(anId, aFormat, aFile.getName(), aFile.length(),
+				aChecksum, System.currentTimeMillis());
+		put(e);
+		appendToJournal(e);
+	}
+
+	/**
+	 * Record that the entries for anId were appended to aFile, a file shared
+	 * by many ids. Only its length is checked later on
+	 *
+	 * @param aLength
+	 *            the length of aFile once the entries of anId were written
+	 */
+	public synchronized void recordAppended(String anId, String aFormat,
+			File aFile, long aLength) throws IOException {
+		Entry e = new Entry(anId, aFormat, aFile.getName(), aLength,
+				NO_CHECKSUM, System.currentTimeMillis());
+		put(e);
+		appendToJournal(e);
+	}
+
+	/**
+	 * Rewrite the manifest with a single line per file and close the journal
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException {
+		if (journal == null) {
+			return;
+		}
+		journal.close();
+		journal = null;
+		File tmp = File.createTempFile(MANIFEST_FILE, ".part", directory);
+		Writer w = new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8");
+		try {
+			for (Entry e : entries.values()) {
+				w.write(e.toString());
+			}
+		} finally {
+			w.close();
+		}
+		FileDownloadTask.replace(tmp, manifestFile);
+	}
+
+	private void appendToJournal(Entry e) throws IOException {
+		if (journal == null) {
+			journal = new OutputStreamWriter(new FileOutputStream(
+					manifestFile, true), "UTF-8");
+		}
+		journal.write(e.toString());
+		// make the entry survive an interrupted run
+		journal.flush();
+	}
+
+	private void put(Entry e) {
+		String k = key(e.id, e.format);
+		Entry old = entries.put(k + "\t" + e.fileName, e);
+		List<Entry> es = entriesById.get(k);
+		if (es == null) {
+			es = new ArrayList<Entry>();
+			entriesById.put(k, es);
+		}
+		if (old != null) {
+			es.remove(old);
+		}
+		es.add(e);
+	}
+
+	private static String key(String anId, String aFormat) {
+		return anId.toUpperCase() + "\t" + aFormat;
+	}
+
+	/**
+	 * @return a new MD5 digest
+	 */
+	public static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			// every JRE provides MD5
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return the hex encoded MD5 of aFile
+	 */
+	public static String checksum(File aFile) throws IOException {
+		MessageDigest md = newDigest();
+		InputStream in = new FileInputStream(aFile);
+		try {
+			byte[] buf = new byte[64 * 1024];
+			int n;
+			while ((n = in.read(buf)) != -1) {
+				md.update(buf, 0, n);
+			}
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+		return new String(Hex.encodeHex(md.digest()));
+	}
+
+	/**
+	 * @return true if the checksum of every file is verified, not only its
+	 *         size
+	 */
+	public boolean isVerifyChecksums() {
+		return verifyChecksums;
+	}
+
+	/**
+	 * @param aVerifyChecksums
+	 *            if true isCurrent() reads every file to verify its checksum
+	 */
+	public void setVerifyChecksums(boolean aVerifyChecksums) {
+		this.verifyChecksums = aVerifyChecksums;
+	}
+
+	/**
+	 * A single line of the manifest
+	 */
+	private static class Entry {
+		private String id;
+		private String format;
+		private String fileName;
+		private long size;
+		private String checksum;
+		private long fetchTime;
+
+		private Entry(String anId, String aFormat, String aFileName,
+				long aSize, String aChecksum, long aFetchTime) {
+			id = anId;
+			format = aFormat;
+			fileName = aFileName;
+			size = aSize;
+			checksum = aChecksum;
+			fetchTime = aFetchTime;
+		}
+
+		@Override
+		public String toString() {
+			return id + "\t" + format + "\t" + fileName + "\t" + size + "\t"
+					+ checksum + "\t" + fetchTime + "\n";
+		}
+	}
+}
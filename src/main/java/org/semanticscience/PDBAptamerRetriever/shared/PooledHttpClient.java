@@ -0,0 +1,246 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.shared;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * A thread safe HttpClient whose connections are pooled and kept alive
+ * between requests, so that the many small REST calls made per PDB id reuse
+ * the same TCP (and TLS) connections instead of opening new ones. A single
+ * process wide instance is available through getDefault()
+ *
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class PooledHttpClient {
+	public static final int DEFAULT_MAX_PER_ROUTE = 4;
+	public static final int DEFAULT_MAX_TOTAL = 20;
+	// milliseconds
+	public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+	public static final int DEFAULT_READ_TIMEOUT = 60000;
+	private static PooledHttpClient defaultClient = null;
+	private ThreadSafeClientConnManager connectionManager;
+	private DefaultHttpClient client;
+	private int connectTimeout;
+	private int readTimeout;
+
+	public PooledHttpClient() {
+		this(DEFAULT_MAX_PER_ROUTE, DEFAULT_MAX_TOTAL, DEFAULT_CONNECT_TIMEOUT,
+				DEFAULT_READ_TIMEOUT);
+	}
+
+	/**
+	 * @param aMaxPerRoute
+	 *            the maximum number of open connections to one host
+	 * @param aMaxTotal
+	 *            the maximum number of open connections
+	 * @param aConnectTimeout
+	 *            milliseconds to wait for a connection to be established, 0
+	 *            waits forever
+	 * @param aReadTimeout
+	 *            milliseconds to wait for data once connected, 0 waits forever
+	 */
+	public PooledHttpClient(int aMaxPerRoute, int aMaxTotal,
+			int aConnectTimeout, int aReadTimeout) {
+		if (aMaxPerRoute < 1 || aMaxTotal < aMaxPerRoute) {
+			throw new IllegalArgumentException(
+					"Connections per route must be at least 1 and at most the total number of connections!");
+		}
+		if (aConnectTimeout < 0 || aReadTimeout < 0) {
+			throw new IllegalArgumentException("Timeouts cannot be negative!");
+		}
+		connectTimeout = aConnectTimeout;
+		readTimeout = aReadTimeout;
+		connectionManager = new ThreadSafeClientConnManager();
+		connectionManager.setDefaultMaxPerRoute(aMaxPerRoute);
+		connectionManager.setMaxTotal(aMaxTotal);
+		HttpParams params = new BasicHttpParams();
+		HttpConnectionParams.setConnectionTimeout(params, aConnectTimeout);
+		HttpConnectionParams.setSoTimeout(params, aReadTimeout);
+		HttpConnectionParams.setStaleCheckingEnabled(params, true);
+		client = new DefaultHttpClient(connectionManager, params);
+	}
+
+	/**
+	 * @return the instance shared by every class that does not get one
+	 *         explicitly
+	 */
+	public static synchronized PooledHttpClient getDefault() {
+		if (defaultClient == null) {
+			defaultClient = new PooledHttpClient();
+		}
+		return defaultClient;
+	}
+
+	/**
+	 * Replace the shared instance, e.g. to change its limits. The previous
+	 * instance is shut down
+	 */
+	public static synchronized void setDefault(PooledHttpClient aClient) {
+		if (defaultClient != null && defaultClient != aClient) {
+			defaultClient.shutdown();
+		}
+		defaultClient = aClient;
+	}
+
+	/**
+	 * Execute aRequest and return the body of a successful response. Closing
+	 * the returned stream gives the connection back to the pool. A gzip
+	 * encoded body is decompressed on the fly
+	 *
+	 * @param aRequest
+	 *            the request to execute
+	 * @param aContext
+	 *            a context holding e.g. a cookie store, or null
+	 * @return the body of the response, empty if there is none
+	 * @throws HttpStatusException
+	 *             if the server answered with an error status
+	 * @throws IOException
+	 *             if the request failed
+	 */
+	public InputStream openStream(HttpUriRequest aRequest, HttpContext aContext)
+			throws IOException {
+		HttpResponse response;
+		try {
+			response = client.execute(aRequest, aContext);
+		} catch (IOException e) {
+			aRequest.abort();
+			throw e;
+		} catch (RuntimeException e) {
+			aRequest.abort();
+			throw e;
+		}
+		int status = response.getStatusLine().getStatusCode();
+		HttpEntity entity = response.getEntity();
+		if (status >= 300) {
+			EntityUtils.consume(entity);
+			throw new HttpStatusException("HTTP " + status + " "
+					+ response.getStatusLine().getReasonPhrase() + " for "
+					+ aRequest.getURI(), status, getRetryAfter(response));
+		}
+		if (entity == null) {
+			return new ByteArrayInputStream(new byte[0]);
+		}
+		InputStream in = entity.getContent();
+		Header enc = entity.getContentEncoding();
+		if (enc != null && "gzip".equalsIgnoreCase(enc.getValue())) {
+			try {
+				return new GZIPInputStream(in);
+			} catch (IOException e) {
+				in.close();
+				throw e;
+			}
+		}
+		return in;
+	}
+
+	/**
+	 * @return the milliseconds given in the Retry-After header of aResponse,
+	 *         or -1 if there is none or it is a date
+	 */
+	private long getRetryAfter(HttpResponse aResponse) {
+		Header h = aResponse.getFirstHeader("Retry-After");
+		if (h != null) {
+			try {
+				return Long.parseLong(h.getValue().trim()) * 1000;
+			} catch (NumberFormatException e) {
+				return -1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Execute aRequest and return the body of a successful response as UTF-8
+	 * text
+	 *
+	 * @see #openStream(HttpUriRequest, HttpContext)
+	 */
+	public String getString(HttpUriRequest aRequest, HttpContext aContext)
+			throws IOException {
+		InputStream in = openStream(aRequest, aContext);
+		try {
+			return IOUtils.toString(in, "UTF-8");
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Close all pooled connections
+	 */
+	public void shutdown() {
+		connectionManager.shutdown();
+	}
+
+	/**
+	 * @return the underlying client
+	 */
+	public HttpClient getClient() {
+		return client;
+	}
+
+	/**
+	 * @return the maximum number of open connections to one host
+	 */
+	public int getMaxPerRoute() {
+		return connectionManager.getDefaultMaxPerRoute();
+	}
+
+	/**
+	 * @return the maximum number of open connections
+	 */
+	public int getMaxTotal() {
+		return connectionManager.getMaxTotal();
+	}
+
+	/**
+	 * @return the connect timeout in milliseconds
+	 */
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	/**
+	 * @return the read timeout in milliseconds
+	 */
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.shared;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Passes every request on to another RemoteSource and saves the responses
+ * in a directory that a ReplayRemoteSource can later serve them from
+ *
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class RecordingRemoteSource extends RemoteSource {
+	private RemoteSource source;
+	private File directory;
+
+	/**
+	 * @param aSource
+	 *            the source the requests are passed on to
+	 * @param aDirectory
+	 *            the directory where the responses are saved, created if
+	 *            needed
+	 * @throws IOException
+	 */
+	public RecordingRemoteSource(RemoteSource aSource, File aDirectory)
+			throws IOException {
+		FileUtils.forceMkdir(aDirectory);
+		source = aSource;
+		directory = aDirectory;
+	}
+
+	@Override
+	public String get(String aUrl) throws IOException {
+		String rm = source.get(aUrl);
+		save(aUrl, null, rm);
+		return rm;
+	}
+
+	@Override
+	public String post(String aUrl, String aBody) throws IOException {
+		String rm = source.post(aUrl, aBody);
+		save(aUrl, aBody, rm);
+		return rm;
+	}
+
+	/**
+	 * The whole file is saved before it is returned, so a download that fails
+	 * half way never leaves a partial recording
+	 */
+	@Override
+	public InputStream openStream(URL aUrl) throws IOException {
+		File f = ReplayRemoteSource.getFile(directory, aUrl.toString(), null);
+		File tmp = File.createTempFile(f.getName(), ".part", directory);
+		try {
+			InputStream in = source.openStream(aUrl);
+			try {
+				OutputStream out = new FileOutputStream(tmp);
+				try {
+					IOUtils.copyLarge(in, out);
+				} finally {
+					out.close();
+				}
+			} finally {
+				in.close();
+			}
+			FileDownloadTask.replace(tmp, f);
+		} finally {
+			tmp.delete();
+		}
+		return new BufferedInputStream(new FileInputStream(f));
+	}
+
+	@Override
+	public <T> T execute(String aHost, String aDescription,
+			RequestPolicy.Request<T> aRequest) throws IOException {
+		return source.execute(aHost, aDescription, aRequest);
+	}
+
+	private void save(String aUrl, String aBody, String aResponse)
+			throws IOException {
+		File f = ReplayRemoteSource.getFile(directory, aUrl, aBody);
+		File tmp = File.createTempFile(f.getName(), ".part", directory);
+		try {
+			FileUtils.writeStringToFile(tmp, aResponse, "UTF-8");
+			FileDownloadTask.replace(tmp, f);
+		} finally {
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * @return the directory where the responses are saved
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+}
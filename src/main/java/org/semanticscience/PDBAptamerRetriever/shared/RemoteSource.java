@@ -0,0 +1,133 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.shared;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.URL;
+
+/**
+ * Where the searches, record descriptions, ligand lists and structure files
+ * come from. HttpRemoteSource asks the web services; ReplayRemoteSource serves
+ * the responses recorded by a RecordingRemoteSource so that whole runs can be
+ * repeated without network access
+ *
+ * @author Jose Cruz-Toledo
+ *
+ */
+public abstract class RemoteSource {
+	private static RemoteSource defaultSource = null;
+
+	/**
+	 * @return the source used by every class that does not get one
+	 *         explicitly, an HttpRemoteSource unless another one was set
+	 */
+	public static synchronized RemoteSource getDefault() {
+		if (defaultSource == null) {
+			defaultSource = new HttpRemoteSource();
+		}
+		return defaultSource;
+	}
+
+	/**
+	 * Replace the shared source
+	 */
+	public static synchronized void setDefault(RemoteSource aSource) {
+		defaultSource = aSource;
+	}
+
+	/**
+	 * Consumes the text of a response as it is read
+	 */
+	public interface ResponseHandler<T> {
+		/**
+		 * @param aReader
+		 *            the text of the response, closed by the caller
+		 * @return what was read from aReader
+		 * @throws IOException
+		 */
+		T handle(Reader aReader) throws IOException;
+	}
+
+	/**
+	 * @param aUrl
+	 *            the URL to get
+	 * @return the response as text
+	 * @throws IOException
+	 */
+	public abstract String get(String aUrl) throws IOException;
+
+	/**
+	 * Get aUrl and pass the response to aHandler. Sources that can stream the
+	 * response hand it over while it is being received, so aHandler may be
+	 * called again if the request is retried. The default reads the whole
+	 * response with get()
+	 *
+	 * @param aUrl
+	 *            the URL to get
+	 * @param aHandler
+	 *            reads the response
+	 * @return the result of aHandler
+	 * @throws IOException
+	 */
+	public <T> T get(String aUrl, ResponseHandler<T> aHandler)
+			throws IOException {
+		return aHandler.handle(new StringReader(get(aUrl)));
+	}
+
+	/**
+	 * @param aUrl
+	 *            the URL to post to
+	 * @param aBody
+	 *            the form encoded body of the request
+	 * @return the response as text
+	 * @throws IOException
+	 */
+	public abstract String post(String aUrl, String aBody) throws IOException;
+
+	/**
+	 * Open a file for download. The returned stream must be closed
+	 *
+	 * @param aUrl
+	 *            the URL of the file
+	 * @return the uncompressed contents of the file
+	 * @throws IOException
+	 */
+	public abstract InputStream openStream(URL aUrl) throws IOException;
+
+	/**
+	 * Run aRequest, which reads from this source, the way this source wants
+	 * its requests paced and retried. The default runs it once
+	 *
+	 * @param aHost
+	 *            the host aRequest is sent to
+	 * @param aDescription
+	 *            what is requested, e.g. a URL
+	 * @return the result of aRequest
+	 * @throws IOException
+	 */
+	public <T> T execute(String aHost, String aDescription,
+			RequestPolicy.Request<T> aRequest) throws IOException {
+		return aRequest.execute();
+	}
+}
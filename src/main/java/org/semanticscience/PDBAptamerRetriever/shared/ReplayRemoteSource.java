@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.shared;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Serves the responses recorded by a RecordingRemoteSource from a local
+ * directory, so that a run can be repeated without network access and with
+ * the exact same inputs. Every response is kept in a file named after the
+ * key ResponseCache.getKey() gives its URL and request body
+ *
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class ReplayRemoteSource extends RemoteSource {
+	private static final String EXTENSION = ".recorded";
+	private File directory;
+
+	/**
+	 * @param aDirectory
+	 *            a directory filled by a RecordingRemoteSource
+	 */
+	public ReplayRemoteSource(File aDirectory) {
+		directory = aDirectory;
+	}
+
+	/**
+	 * @return the file in aDirectory that holds the response to aUrl and
+	 *         aBody
+	 */
+	public static File getFile(File aDirectory, String aUrl, String aBody) {
+		return new File(aDirectory, ResponseCache.getKey(aUrl, aBody)
+				+ EXTENSION);
+	}
+
+	@Override
+	public String get(String aUrl) throws IOException {
+		return FileUtils.readFileToString(getRecording(aUrl, null), "UTF-8");
+	}
+
+	@Override
+	public String post(String aUrl, String aBody) throws IOException {
+		return FileUtils.readFileToString(getRecording(aUrl, aBody), "UTF-8");
+	}
+
+	@Override
+	public InputStream openStream(URL aUrl) throws IOException {
+		return new BufferedInputStream(new FileInputStream(getRecording(
+				aUrl.toString(), null)));
+	}
+
+	private File getRecording(String aUrl, String aBody)
+			throws FileNotFoundException {
+		File f = getFile(directory, aUrl, aBody);
+		if (!f.isFile()) {
+			throw new FileNotFoundException("No recorded response for "
+					+ aUrl);
+		}
+		return f;
+	}
+
+	/**
+	 * @return the directory the responses are served from
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+}
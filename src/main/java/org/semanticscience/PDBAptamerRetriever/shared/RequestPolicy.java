@@ -0,0 +1,362 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.shared;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.http.NoHttpResponseException;
+
+/**
+ * Decides how requests to a remote host are paced and retried. Every host
+ * gets a token bucket that allows a number of requests per second; the rate
+ * is halved whenever the host answers 429 or 503 and slowly recovers with
+ * every success. Requests that fail with a 429 or 5xx status, a timeout or a
+ * dropped connection are retried with exponential backoff and jitter. After
+ * too many consecutive failures the circuit for the host opens and every
+ * worker waits until it has cooled down. Requests that still fail after the
+ * last attempt are added to a failure list
+ *
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class RequestPolicy {
+	public static final double DEFAULT_RATE = 5.0;
+	public static final int DEFAULT_MAX_ATTEMPTS = 5;
+	// milliseconds
+	public static final long DEFAULT_BASE_DELAY = 500;
+	public static final long DEFAULT_MAX_DELAY = 30000;
+	public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+	public static final long DEFAULT_OPEN_TIME = 30000;
+	// the lowest rate an adaptive host is slowed down to
+	private static final double MIN_RATE = 0.2;
+	private static RequestPolicy defaultPolicy = null;
+	// requests per second allowed to each host
+	private double rate;
+	private int maxAttempts;
+	private long baseDelay = DEFAULT_BASE_DELAY;
+	private long maxDelay = DEFAULT_MAX_DELAY;
+	private int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+	private long openTime = DEFAULT_OPEN_TIME;
+	private final Map<String, HostState> hosts = new HashMap<String, HostState>();
+	private final List<String> failures = Collections
+			.synchronizedList(new ArrayList<String>());
+	private final Random random = new Random();
+
+	/**
+	 * A request that may be executed more than once
+	 */
+	public interface Request<T> {
+		T execute() throws IOException;
+	}
+
+	public RequestPolicy() {
+		this(DEFAULT_RATE, DEFAULT_MAX_ATTEMPTS);
+	}
+
+	/**
+	 * @param aRate
+	 *            the number of requests per second allowed to each host
+	 * @param aMaxAttempts
+	 *            the number of times a request is tried before giving up
+	 */
+	public RequestPolicy(double aRate, int aMaxAttempts) {
+		if (aRate <= 0 || aMaxAttempts < 1) {
+			throw new IllegalArgumentException(
+					"The rate must be positive and there must be at least 1 attempt!");
+		}
+		rate = aRate;
+		maxAttempts = aMaxAttempts;
+	}
+
+	/**
+	 * @return the policy used by every class that does not get one explicitly
+	 */
+	public static synchronized RequestPolicy getDefault() {
+		if (defaultPolicy == null) {
+			defaultPolicy = new RequestPolicy();
+		}
+		return defaultPolicy;
+	}
+
+	/**
+	 * Replace the shared policy, e.g. to change its limits
+	 */
+	public static synchronized void setDefault(RequestPolicy aPolicy) {
+		defaultPolicy = aPolicy;
+	}
+
+	/**
+	 * Execute aRequest following this policy
+	 *
+	 * @param aHost
+	 *            the host aRequest is sent to
+	 * @param aDescription
+	 *            what is requested, e.g. a URL, as shown in the failure list
+	 * @param aRequest
+	 *            the request
+	 * @return the result of the first successful attempt
+	 * @throws IOException
+	 *             the cause of the last failed attempt
+	 */
+	public <T> T execute(String aHost, String aDescription,
+			Request<T> aRequest) throws IOException {
+		HostState h = getHostState(aHost);
+		for (int attempt = 1;; attempt++) {
+			h.acquire();
+			try {
+				T rm = aRequest.execute();
+				h.onSuccess();
+				return rm;
+			} catch (IOException e) {
+				if (!isRetryable(e)) {
+					failures.add(aDescription + "\t" + e);
+					throw e;
+				}
+				h.onFailure(e);
+				if (attempt >= maxAttempts) {
+					failures.add(aDescription + "\t" + e + " (after "
+							+ attempt + " attempts)");
+					throw e;
+				}
+				sleep(getBackoff(attempt, e));
+			}
+		}
+	}
+
+	/**
+	 * @return a request that executes aRequest following this policy
+	 * @see #execute(String, String, Request)
+	 */
+	public <T> Request<T> wrap(final String aHost, final String aDescription,
+			final Request<T> aRequest) {
+		return new Request<T>() {
+			public T execute() throws IOException {
+				return RequestPolicy.this.execute(aHost, aDescription,
+						aRequest);
+			}
+		};
+	}
+
+	/**
+	 * @return true if a request that failed with anException may succeed when
+	 *         tried again
+	 */
+	public boolean isRetryable(IOException anException) {
+		if (anException instanceof HttpStatusException) {
+			int code = ((HttpStatusException) anException).getStatusCode();
+			return code == 429 || code >= 500;
+		}
+		// timeouts, reset connections and truncated responses
+		return anException instanceof InterruptedIOException
+				|| anException instanceof SocketException
+				|| anException instanceof NoHttpResponseException
+				|| anException instanceof EOFException;
+	}
+
+	/**
+	 * @return the milliseconds to wait after the given failed attempt, a
+	 *         random value up to baseDelay * 2^(attempt-1) but never more than
+	 *         maxDelay, or the delay asked for by the server if it is longer
+	 */
+	public long getBackoff(int anAttempt, IOException aCause) {
+		long cap = maxDelay;
+		if (anAttempt < 31) {
+			cap = Math.min(maxDelay, baseDelay << (anAttempt - 1));
+		}
+		long rm = (long) (random.nextDouble() * cap);
+		if (aCause instanceof HttpStatusException) {
+			long ra = ((HttpStatusException) aCause).getRetryAfter();
+			if (ra > rm) {
+				rm = Math.min(ra, maxDelay);
+			}
+		}
+		return rm;
+	}
+
+	private void sleep(long aMillis) throws InterruptedIOException {
+		if (aMillis <= 0) {
+			return;
+		}
+		try {
+			Thread.sleep(aMillis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting");
+		}
+	}
+
+	private HostState getHostState(String aHost) {
+		synchronized (hosts) {
+			HostState rm = hosts.get(aHost);
+			if (rm == null) {
+				rm = new HostState();
+				hosts.put(aHost, rm);
+			}
+			return rm;
+		}
+	}
+
+	/**
+	 * @return the requests that failed for good, one per line as description
+	 *         tab cause
+	 */
+	public List<String> getFailures() {
+		synchronized (failures) {
+			return new ArrayList<String>(failures);
+		}
+	}
+
+	/**
+	 * Print the failure list to System.err
+	 *
+	 * @return the number of failed requests
+	 */
+	public int reportFailures() {
+		List<String> f = getFailures();
+		if (!f.isEmpty()) {
+			System.err.println(f.size() + " requests failed:");
+			for (String l : f) {
+				System.err.println(l);
+			}
+		}
+		return f.size();
+	}
+
+	/**
+	 * @return true if the circuit for aHost is open and requests to it are
+	 *         on hold
+	 */
+	public boolean isOpen(String aHost) {
+		return getHostState(aHost).isOpen();
+	}
+
+	/**
+	 * @param aBaseDelay
+	 *            the longest wait in milliseconds after the first failed
+	 *            attempt, doubled after each further one
+	 * @param aMaxDelay
+	 *            the longest wait in milliseconds between two attempts
+	 */
+	public void setBackoff(long aBaseDelay, long aMaxDelay) {
+		baseDelay = aBaseDelay;
+		maxDelay = aMaxDelay;
+	}
+
+	/**
+	 * @param aFailureThreshold
+	 *            the number of consecutive failures that open the circuit of
+	 *            a host
+	 * @param anOpenTime
+	 *            the milliseconds requests to that host are then held back
+	 */
+	public void setCircuitBreaker(int aFailureThreshold, long anOpenTime) {
+		failureThreshold = aFailureThreshold;
+		openTime = anOpenTime;
+	}
+
+	/**
+	 * @return the number of requests per second allowed to each host
+	 */
+	public double getRate() {
+		return rate;
+	}
+
+	/**
+	 * @return the number of times a request is tried before giving up
+	 */
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * The token bucket and circuit breaker of a single host
+	 */
+	private class HostState {
+		// the current, possibly reduced, rate
+		private double currentRate = rate;
+		private double tokens = Math.max(1.0, rate);
+		private long lastRefill = System.currentTimeMillis();
+		private int consecutiveFailures = 0;
+		private long openUntil = 0;
+
+		/**
+		 * Wait for the circuit to close and for a token
+		 */
+		private void acquire() throws InterruptedIOException {
+			while (true) {
+				long wait;
+				synchronized (this) {
+					long now = System.currentTimeMillis();
+					if (openUntil > now) {
+						wait = openUntil - now;
+					} else {
+						tokens = Math.min(Math.max(1.0, currentRate), tokens
+								+ (now - lastRefill) * currentRate / 1000.0);
+						lastRefill = now;
+						if (tokens >= 1.0) {
+							tokens -= 1.0;
+							return;
+						}
+						wait = (long) Math.ceil((1.0 - tokens) * 1000.0
+								/ currentRate);
+					}
+				}
+				sleep(wait);
+			}
+		}
+
+		private synchronized void onSuccess() {
+			consecutiveFailures = 0;
+			// recover a tenth of the configured rate per success
+			currentRate = Math.min(rate, currentRate + rate / 10.0);
+		}
+
+		private synchronized void onFailure(IOException aCause) {
+			if (aCause instanceof HttpStatusException) {
+				int code = ((HttpStatusException) aCause).getStatusCode();
+				if (code == 429 || code == 503) {
+					// the server asks us to slow down
+					currentRate = Math.max(Math.min(MIN_RATE, rate),
+							currentRate / 2.0);
+				}
+			}
+			consecutiveFailures++;
+			if (consecutiveFailures >= failureThreshold) {
+				openUntil = System.currentTimeMillis() + openTime;
+				// a single failure after the pause opens the circuit again
+				consecutiveFailures = failureThreshold - 1;
+			}
+		}
+
+		private synchronized boolean isOpen() {
+			return openUntil > System.currentTimeMillis();
+		}
+	}
+}
@@ -0,0 +1,418 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.shared;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * An on disk cache of the text responses of REST calls. Every response is
+ * stored in a file named after the SHA-1 of its normalized URL and request
+ * body. Entries expire after a time to live that depends on the endpoint,
+ * and the least recently used ones are removed once the cache grows past its
+ * size budget. In offline mode nothing is fetched or written and every
+ * cached response is used regardless of its age
+ *
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class ResponseCache {
+	// milliseconds
+	public static final long DEFAULT_TTL = 7L * 24 * 60 * 60 * 1000;
+	public static final long DEFAULT_SEARCH_TTL = 24L * 60 * 60 * 1000;
+	public static final long DEFAULT_MAX_BYTES = 512L * 1024 * 1024;
+	private static final String EXTENSION = ".response";
+	private static ResponseCache defaultCache = null;
+	private File directory;
+	private long maxBytes;
+	private boolean offline = false;
+	private long defaultTtl = DEFAULT_TTL;
+	// the time to live of the responses of each endpoint, by path prefix
+	private Map<String, Long> ttls = new LinkedHashMap<String, Long>();
+	// the size of every entry in least recently used first order
+	private LinkedHashMap<String, Long> index = new LinkedHashMap<String, Long>(
+			16, 0.75f, true);
+	private long totalBytes = 0;
+	private int hits = 0;
+	private int misses = 0;
+
+	/**
+	 * @param aDirectory
+	 *            the directory holding the cached responses, created if
+	 *            needed
+	 * @param aMaxBytes
+	 *            the size budget of the cache
+	 * @throws IOException
+	 *             if aDirectory cannot be created
+	 */
+	public ResponseCache(File aDirectory, long aMaxBytes) throws IOException {
+		if (!aDirectory.isDirectory() && !aDirectory.mkdirs()) {
+			throw new IOException("Could not create cache directory "
+					+ aDirectory.getAbsolutePath());
+		}
+		directory = aDirectory;
+		maxBytes = aMaxBytes;
+		ttls.put("/pdb/rest/search", DEFAULT_SEARCH_TTL);
+		loadIndex();
+	}
+
+	/**
+	 * @return the cache used by every class that does not get one
+	 *         explicitly, null if responses are not cached
+	 */
+	public static synchronized ResponseCache getDefault() {
+		return defaultCache;
+	}
+
+	/**
+	 * @param aCache
+	 *            the shared cache, or null to stop caching
+	 */
+	public static synchronized void setDefault(ResponseCache aCache) {
+		defaultCache = aCache;
+	}
+
+	/**
+	 * Return the cached response for aUrl and aBody, or execute aLoader and
+	 * cache its result
+	 *
+	 * @param aUrl
+	 *            the requested URL
+	 * @param aBody
+	 *            the body of the request, or null for a GET
+	 * @param aLoader
+	 *            fetches the response if it is not cached
+	 * @return the response
+	 * @throws IOException
+	 *             if aLoader fails, or if in offline mode the response is not
+	 *             cached
+	 */
+	public String get(String aUrl, String aBody,
+			RequestPolicy.Request<String> aLoader) throws IOException {
+		String key = getKey(aUrl, aBody);
+		String rm = read(key, getTtl(aUrl));
+		if (rm != null) {
+			return rm;
+		}
+		if (offline) {
+			throw new IOException("Offline and not cached: " + aUrl);
+		}
+		rm = aLoader.execute();
+		if (rm != null) {
+			write(key, aUrl, rm);
+		}
+		return rm;
+	}
+
+	/**
+	 * @return the cached response stored under aKey if it is younger than
+	 *         aTtl, else null
+	 */
+	private String read(String aKey, long aTtl) throws IOException {
+		File f = getFile(aKey);
+		synchronized (this) {
+			if (!index.containsKey(aKey) || !f.isFile()) {
+				misses++;
+				return null;
+			}
+		}
+		BufferedReader br;
+		try {
+			br = new BufferedReader(new InputStreamReader(new FileInputStream(
+					f), "UTF-8"));
+		} catch (FileNotFoundException e) {
+			// evicted in the meantime
+			synchronized (this) {
+				misses++;
+			}
+			return null;
+		}
+		try {
+			long fetched = Long.parseLong(br.readLine());
+			if (!offline && System.currentTimeMillis() - fetched > aTtl) {
+				synchronized (this) {
+					misses++;
+				}
+				return null;
+			}
+			// skip the URL
+			br.readLine();
+			String rm = IOUtils.toString(br);
+			synchronized (this) {
+				// mark the entry as recently used
+				index.get(aKey);
+				hits++;
+			}
+			f.setLastModified(System.currentTimeMillis());
+			return rm;
+		} catch (NumberFormatException e) {
+			synchronized (this) {
+				misses++;
+			}
+			return null;
+		} finally {
+			br.close();
+		}
+	}
+
+	private void write(String aKey, String aUrl, String aContent)
+			throws IOException {
+		File f = getFile(aKey);
+		f.getParentFile().mkdirs();
+		File tmp = File.createTempFile(aKey, ".part", f.getParentFile());
+		try {
+			Writer w = new OutputStreamWriter(new FileOutputStream(tmp),
+					"UTF-8");
+			try {
+				w.write(System.currentTimeMillis() + "\n");
+				w.write(aUrl.replace('\n', ' ') + "\n");
+				w.write(aContent);
+			} finally {
+				w.close();
+			}
+			synchronized (this) {
+				FileDownloadTask.replace(tmp, f);
+				Long old = index.put(aKey, f.length());
+				if (old != null) {
+					totalBytes -= old;
+				}
+				totalBytes += f.length();
+				evict();
+			}
+		} finally {
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * Remove the least recently used entries until the cache fits its budget
+	 */
+	private void evict() {
+		Iterator<Map.Entry<String, Long>> itr = index.entrySet().iterator();
+		while (totalBytes > maxBytes && itr.hasNext()) {
+			Map.Entry<String, Long> e = itr.next();
+			getFile(e.getKey()).delete();
+			totalBytes -= e.getValue();
+			itr.remove();
+		}
+	}
+
+	/**
+	 * Build the index from the files already in the cache directory, using
+	 * their modification time as the time of last use
+	 */
+	private void loadIndex() {
+		List<File> files = new ArrayList<File>();
+		File[] dirs = directory.listFiles();
+		if (dirs != null) {
+			for (File d : dirs) {
+				File[] fs = d.listFiles();
+				if (fs != null) {
+					for (File f : fs) {
+						if (f.getName().endsWith(EXTENSION)) {
+							files.add(f);
+						}
+					}
+				}
+			}
+		}
+		Collections.sort(files, new Comparator<File>() {
+			public int compare(File a, File b) {
+				long d = a.lastModified() - b.lastModified();
+				return d < 0 ? -1 : (d > 0 ? 1 : 0);
+			}
+		});
+		for (File f : files) {
+			String n = f.getName();
+			index.put(n.substring(0, n.length() - EXTENSION.length()),
+					f.length());
+			totalBytes += f.length();
+		}
+		evict();
+	}
+
+	private File getFile(String aKey) {
+		return new File(new File(directory, aKey.substring(0, 2)), aKey
+				+ EXTENSION);
+	}
+
+	/**
+	 * @return the time to live of the responses of the endpoint of aUrl
+	 */
+	public long getTtl(String aUrl) {
+		String path = "";
+		try {
+			path = new URI(aUrl).getPath();
+		} catch (URISyntaxException e) {
+			// use the default
+		}
+		String best = null;
+		for (String prefix : ttls.keySet()) {
+			if (path != null && path.startsWith(prefix)
+					&& (best == null || prefix.length() > best.length())) {
+				best = prefix;
+			}
+		}
+		if (best == null) {
+			return defaultTtl;
+		}
+		return ttls.get(best);
+	}
+
+	/**
+	 * @param aPathPrefix
+	 *            the path of an endpoint, e.g. /pdb/rest/describePDB
+	 * @param aTtl
+	 *            the milliseconds its responses are used for
+	 */
+	public void setTtl(String aPathPrefix, long aTtl) {
+		ttls.put(aPathPrefix, aTtl);
+	}
+
+	/**
+	 * @param aTtl
+	 *            the milliseconds the responses of the endpoints without a
+	 *            time to live of their own are used for
+	 */
+	public void setDefaultTtl(long aTtl) {
+		defaultTtl = aTtl;
+	}
+
+	/**
+	 * @return the SHA-1 of the normalized aUrl and aBody
+	 */
+	public static String getKey(String aUrl, String aBody) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			md.update(normalize(aUrl).getBytes("UTF-8"));
+			if (aBody != null) {
+				md.update((byte) '\n');
+				md.update(aBody.trim().getBytes("UTF-8"));
+			}
+			return new String(Hex.encodeHex(md.digest()));
+		} catch (NoSuchAlgorithmException e) {
+			// every JRE provides SHA-1
+			throw new IllegalStateException(e);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Lower case the scheme and host of aUrl and sort its query parameters so
+	 * that equivalent URLs share a cache entry
+	 */
+	public static String normalize(String aUrl) {
+		try {
+			URI u = new URI(aUrl);
+			if (u.getScheme() == null || u.getHost() == null) {
+				return aUrl;
+			}
+			String rm = u.getScheme().toLowerCase() + "://"
+					+ u.getHost().toLowerCase();
+			if (u.getPort() != -1) {
+				rm += ":" + u.getPort();
+			}
+			if (u.getRawPath() != null) {
+				rm += u.getRawPath();
+			}
+			if (u.getRawQuery() != null) {
+				String[] params = u.getRawQuery().split("&");
+				Arrays.sort(params);
+				rm += "?";
+				for (int i = 0; i < params.length; i++) {
+					if (i > 0) {
+						rm += "&";
+					}
+					rm += params[i];
+				}
+			}
+			return rm;
+		} catch (URISyntaxException e) {
+			return aUrl;
+		}
+	}
+
+	/**
+	 * @return true if nothing is fetched and cached responses never expire
+	 */
+	public boolean isOffline() {
+		return offline;
+	}
+
+	/**
+	 * @param anOffline
+	 *            if true only cached responses are used, whatever their age
+	 */
+	public void setOffline(boolean anOffline) {
+		this.offline = anOffline;
+	}
+
+	/**
+	 * @return the number of bytes used by the cached responses
+	 */
+	public synchronized long getTotalBytes() {
+		return totalBytes;
+	}
+
+	/**
+	 * @return the number of responses found in the cache
+	 */
+	public synchronized int getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return the number of responses not found in the cache
+	 */
+	public synchronized int getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return the cache directory
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+}
@@ -24,33 +24,33 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 import java.net.URI;
 import java.net.URISyntaxException;
 
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.CookieStore;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.client.protocol.ClientContext;
-import org.apache.http.impl.client.BasicCookieStore;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.protocol.BasicHttpContext;
-import org.apache.http.protocol.HttpContext;
-
 /**
+ * Reads the contents of a URL from a RemoteSource, by default the shared one
+ * that asks the web services through a pooled client
+ * 
  * @author Jose Cruz-Toledo
  * 
  */
 public class URLReader {
 	private String contents;
-	private CookieStore cookieStore;
-	private HttpContext localContext;
+	private RemoteSource source;
 
 	public URLReader(String scheme, String host, String path, String query) {
-		cookieStore = new BasicCookieStore();
-		localContext = new BasicHttpContext();
-		localContext.setAttribute(ClientContext.COOKIE_STORE, cookieStore);
+		this(scheme, host, path, query, RemoteSource.getDefault());
+	}
+
+	/**
+	 * @param aSource
+	 *            the source the contents are read from
+	 */
+	public URLReader(String scheme, String host, String path, String query,
+			RemoteSource aSource) {
+		source = aSource;
 		contents = this.getStringFromURLGET(scheme, host, path, query);
 
 	}
@@ -60,21 +60,10 @@ public class URLReader {
 		String returnMe;
 		try {
 			URI uri = new URI(scheme, host, path, query, null);
-			DefaultHttpClient client = new DefaultHttpClient();
-			HttpGet get = new HttpGet(uri);
 			try {
-				HttpResponse response = client.execute(get, localContext);
-				HttpEntity entity = response.getEntity();
-				if (entity != null) {
-					InputStream is = entity.getContent();
-					String s = convertinputStreamToString(is);
-					returnMe = s;
-					// Do not need the rest
-					get.abort();
-					return returnMe;
-				}
-			} catch (ClientProtocolException e) {
-				e.printStackTrace();
+				returnMe = readLines(new StringReader(source.get(uri
+						.toString())));
+				return returnMe;
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
@@ -88,23 +77,29 @@ public class URLReader {
 	public String convertinputStreamToString(InputStream ists)
 			throws IOException {
 		if (ists != null) {
-			StringBuilder sb = new StringBuilder();
-			String line;
 			try {
-				BufferedReader r1 = new BufferedReader(new InputStreamReader(
-						ists, "UTF-8"));
-				while ((line = r1.readLine()) != null) {
-					sb.append(line).append("\n");
-				}
+				return readLines(new InputStreamReader(ists, "UTF-8"));
 			} finally {
 				ists.close();
 			}
-			return sb.toString();
 		} else {
 			return "";
 		}
 	}
 
+	/**
+	 * @return the text read from aReader with every line ending in \n
+	 */
+	private String readLines(Reader aReader) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		String line;
+		BufferedReader r1 = new BufferedReader(aReader);
+		while ((line = r1.readLine()) != null) {
+			sb.append(line).append("\n");
+		}
+		return sb.toString();
+	}
+
 	/**
 	 * @return the contents
 	 */
@@ -120,32 +115,9 @@ public class URLReader {
 	}
 
 	/**
-	 * @return the cookieStore
+	 * @return the source the contents were read from
 	 */
-	public CookieStore getCookieStore() {
-		return cookieStore;
+	public RemoteSource getSource() {
+		return source;
 	}
-
-	/**
-	 * @param cookieStore the cookieStore to set
-	 */
-	private void setCookieStore(CookieStore cookieStore) {
-		this.cookieStore = cookieStore;
-	}
-
-	/**
-	 * @return the localContext
-	 */
-	public HttpContext getLocalContext() {
-		return localContext;
-	}
-
-	/**
-	 * @param localContext the localContext to set
-	 */
-	private void setLocalContext(HttpContext localContext) {
-		this.localContext = localContext;
-	}
-	
-
 }
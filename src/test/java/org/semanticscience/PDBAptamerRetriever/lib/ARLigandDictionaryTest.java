@@ -20,9 +20,21 @@
  */
 package org.semanticscience.PDBAptamerRetriever.lib;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -83,4 +95,95 @@ public class ARLigandDictionaryTest {
 		}
 		assertFalse(b);
 	}
+
+	@Test
+	public void testLookupIgnoresCase(){
+		Ligand l = arld.getLigandByLigandExpoId("B12");
+		assertSame(l, arld.getLigandByLigandExpoId("b12"));
+		assertTrue(arld.containsLigand("b12"));
+		assertFalse(arld.containsLigand("XXX"));
+		assertNull(arld.getLigandByLigandExpoId("XXX"));
+		assertNull(arld.getLigandByLigandExpoId(null));
+	}
+
+	@Test
+	public void testFindManyInDictionary(){
+		String pdbId = arld.getLigandByLigandExpoId("B12").getPdbIds().get(0);
+		Map<String, List<Ligand>> m = arld.findInDictionary(Arrays.asList(
+				pdbId.toLowerCase(), "", "0XXX"));
+		assertEquals(2, m.size());
+		assertTrue(m.get(pdbId.toLowerCase()).contains(
+				arld.getLigandByLigandExpoId("B12")));
+		assertTrue(m.get("0XXX").isEmpty());
+	}
+
+	@Test
+	public void testStructureSets(){
+		List<String> b12 = arld.getLigandByLigandExpoId("B12").getPdbIds();
+		PdbIdBitmap s = arld.getStructures("b12");
+		assertEquals(b12.size(), s.cardinality());
+		assertTrue(arld.toPdbIds(s).containsAll(b12));
+		assertTrue(arld.getStructures("XXX").isEmpty());
+		// the intersection with a search result
+		List<String> search = Arrays.asList(b12.get(0).toLowerCase(), "0XXX");
+		assertEquals(Arrays.asList(b12.get(0)),
+				arld.toPdbIds(s.and(arld.toStructures(search))));
+		// B12 but not GTP, and the structures with both
+		PdbIdBitmap gtp = arld.getStructures("GTP");
+		PdbIdBitmap notGtp = arld.findStructures(Arrays.asList("B12"),
+				Arrays.asList("GTP"));
+		assertEquals(s.andNot(gtp), notGtp);
+		assertEquals(s.cardinality(), notGtp.cardinality()
+				+ arld.findStructures(Arrays.asList("B12", "GTP"),
+						Arrays.<String> asList()).cardinality());
+		assertEquals(arld.getAllStructures().cardinality(),
+				arld.findStructures(Arrays.<String> asList(),
+						Arrays.<String> asList()).cardinality());
+	}
+
+	@Test
+	public void testSharedDefault() throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		List<Future<ARLigandDictionary>> futures = new ArrayList<Future<ARLigandDictionary>>();
+		for (int i = 0; i < 8; i++) {
+			futures.add(pool.submit(new Callable<ARLigandDictionary>() {
+				public ARLigandDictionary call() {
+					ARLigandDictionary d = ARLigandDictionary.getDefault();
+					// read it while other threads do the same
+					d.findInDictionary(arld.getLigandByLigandExpoId("B12")
+							.getPdbIds().get(0));
+					return d;
+				}
+			}));
+		}
+		pool.shutdown();
+		ARLigandDictionary d = ARLigandDictionary.getDefault();
+		for (Future<ARLigandDictionary> f : futures) {
+			assertSame(d, f.get());
+		}
+		assertEquals(arld.getLigands().size(), d.getLigands().size());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testLigandsCannotChange(){
+		arld.getLigands().clear();
+	}
+
+	@Test
+	public void testLigandCannotChange(){
+		Ligand b12 = arld.getLigandByLigandExpoId("B12");
+		List<String> p = b12.getPdbIds();
+		// records share the canonical ligands of the registry, not these
+		LigandRegistry.getDefault().intern(new Ligand("B12", b12.getType(),
+				b12.getMolecularWeight(), "OTHER NAME", b12.getFormula(), "",
+				"", "[Co]", ""));
+		assertEquals("", b12.getSmiles());
+		try {
+			b12.addPdbId("9ZZZ");
+			fail("a dictionary ligand should not change");
+		} catch (UnsupportedOperationException e) {
+		}
+		assertEquals(p, b12.getPdbIds());
+		assertEquals(p, arld.toPdbIds(arld.getStructures("B12")));
+	}
 }
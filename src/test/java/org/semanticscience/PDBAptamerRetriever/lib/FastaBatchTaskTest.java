@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.lib;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.semanticscience.PDBAptamerRetriever.shared.CompressedFiles;
+import org.semanticscience.PDBAptamerRetriever.shared.MirrorManifest;
+
+/**
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class FastaBatchTaskTest {
+	private static String tFASTA = ">1Y27:X|PDBID|CHAIN|SEQUENCE\nGGAC\n>2RQJ:A|PDBID|CHAIN|SEQUENCE\nACAC\n>2RQJ:B|PDBID|CHAIN|SEQUENCE\nUUUU\n";
+	private File workDir = null;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		workDir = new File(FileUtils.getTempDirectory(), "fastaBatchTaskTest");
+		FileUtils.deleteDirectory(workDir);
+		FileUtils.forceMkdir(workDir);
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		FileUtils.deleteDirectory(workDir);
+	}
+
+	@Test
+	public void testChainsRecordedTogether() throws Exception {
+		MirrorManifest m = MirrorManifest.load(workDir);
+		FastaBatchTask t = new FastaBatchTask(Arrays.asList("1Y27", "2RQJ"),
+				workDir, null, true);
+		t.setManifest(m, "fasta");
+		// the response breaks off after the first chain of 2RQJ
+		String head = tFASTA.substring(0, tFASTA.indexOf(">2RQJ:B"));
+		InputStream broken = new SequenceInputStream(new ByteArrayInputStream(
+				head.getBytes("UTF-8")), new InputStream() {
+			@Override
+			public int read() throws IOException {
+				throw new IOException("Connection reset");
+			}
+		});
+		try {
+			t.store(broken);
+			fail("the broken response should fail");
+		} catch (IOException e) {
+			assertEquals("Connection reset", e.getMessage());
+		}
+		assertTrue(new File(workDir, "1Y27-X.fasta").isFile());
+		assertFalse(m.isCurrent("2RQJ", "fasta"));
+		assertFalse(m.isCurrent("1Y27", "fasta"));
+
+		// the retried batch records every id
+		assertTrue(t.store(new ByteArrayInputStream(tFASTA.getBytes("UTF-8"))));
+		assertTrue(m.isCurrent("1Y27", "fasta"));
+		assertTrue(m.isCurrent("2RQJ", "fasta"));
+		m.close();
+	}
+
+	@Test
+	public void testCompressedConcatenation() throws Exception {
+		File f = new File(workDir, "output.fasta.gz");
+		MirrorManifest m = MirrorManifest.load(workDir);
+		FastaBatchTask a = new FastaBatchTask(Arrays.asList("1Y27"), workDir,
+				f, true);
+		a.setManifest(m, "concatenated-fasta.gz");
+		assertTrue(a.store(new ByteArrayInputStream(tFASTA.substring(0,
+				tFASTA.indexOf(">2RQJ:A")).getBytes("UTF-8"))));
+		long recorded = f.length();
+		FastaBatchTask b = new FastaBatchTask(Arrays.asList("2RQJ"), workDir,
+				f, true);
+		b.setManifest(m, "concatenated-fasta.gz");
+		assertTrue(b.store(new ByteArrayInputStream(tFASTA.substring(
+				tFASTA.indexOf(">2RQJ:A")).getBytes("UTF-8"))));
+		assertTrue(m.isCurrent("1Y27", "concatenated-fasta.gz"));
+		assertTrue(m.isCurrent("2RQJ", "concatenated-fasta.gz"));
+		m.close();
+		assertEquals(Arrays.asList("1Y27-X", "2RQJ-A", "2RQJ-B"), readIds(f));
+
+		// a run killed after recording 1Y27 still leaves it readable
+		File cut = new File(workDir, "cut.fasta.gz");
+		byte[] all = FileUtils.readFileToByteArray(f);
+		FileUtils.writeByteArrayToFile(cut, Arrays.copyOf(all, (int) recorded));
+		assertEquals(Arrays.asList("1Y27-X"), readIds(cut));
+	}
+
+	private List<String> readIds(File aFile) throws IOException {
+		List<String> rm = new ArrayList<String>();
+		FastaRecordReader r = new FastaRecordReader(
+				CompressedFiles.openReader(aFile));
+		try {
+			FastaRecord rec;
+			while ((rec = r.next()) != null) {
+				rm.add(rec.getPdbIdChain());
+			}
+		} finally {
+			r.close();
+		}
+		return rm;
+	}
+}
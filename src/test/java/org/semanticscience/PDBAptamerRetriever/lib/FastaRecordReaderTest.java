@@ -0,0 +1,52 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.lib;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+
+import org.junit.Test;
+
+/**
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class FastaRecordReaderTest {
+	private static String tFASTA = ">1Y27:X|PDBID|CHAIN|SEQUENCE\nGGACAUAUAAUCGCGUGGAUAUGGCACGCAAGUUUCUACCGGGCACCGUAAAUGUCCGACUAUGUCC\n>2RQJ:A|PDBID|CHAIN|SEQUENCE\nACAC\nGUGU\n\n>2RQJ:B|PDBID|CHAIN|SEQUENCE\nUUUU\n";
+
+	@Test
+	public void testNext() throws Exception {
+		FastaRecordReader r = new FastaRecordReader(new StringReader(tFASTA));
+		FastaRecord a = r.next();
+		assertEquals("1Y27", a.getPdbId());
+		assertEquals("X", a.getChainId());
+		FastaRecord b = r.next();
+		assertEquals("2RQJ-A", b.getPdbIdChain());
+		assertEquals("ACAC\nGUGU\n", b.getSequence());
+		assertEquals(">2RQJ:A|PDBID|CHAIN|SEQUENCE\nACAC\nGUGU\n",
+				b.toString());
+		FastaRecord c = r.next();
+		assertEquals("B", c.getChainId());
+		assertNull(r.next());
+		r.close();
+	}
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.lib;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class LigandDictionarySnapshotTest {
+	private ARLigandDictionary parsed;
+	private long[] stamps;
+	private byte[] snapshot;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		LigandRegistry.setDefault(null);
+		parsed = new ARLigandDictionary(false);
+		stamps = LigandDictionarySnapshot.stamps();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		LigandDictionarySnapshot.write(parsed.getLigands(),
+				parsed.getLigToPdb(), LigandDictionarySnapshot.fingerprint(),
+				out);
+		snapshot = out.toByteArray();
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		List<Ligand> ll = new ArrayList<Ligand>();
+		Map<String, int[]> m = new HashMap<String, int[]>();
+		assertTrue(LigandDictionarySnapshot.read(new ByteArrayInputStream(
+				snapshot), stamps, ll, m));
+		assertEquals(parsed.getLigands(), ll);
+		assertEquals(parsed.getLigToPdb().keySet(), m.keySet());
+		for (String aLigId : m.keySet()) {
+			assertArrayEquals(parsed.getLigToPdb().get(aLigId), m.get(aLigId));
+		}
+		for (int i = 0; i < ll.size(); i++) {
+			Ligand l = parsed.getLigands().get(i);
+			assertEquals(l.getChebiId(), ll.get(i).getChebiId());
+			assertEquals(l.isION(), ll.get(i).isION());
+		}
+	}
+
+	@Test
+	public void testStaleSnapshot() throws IOException {
+		// cc-to-pdb.tdd is newer than the snapshot
+		long[] changed = stamps.clone();
+		changed[3] += 1000;
+		List<Ligand> ll = new ArrayList<Ligand>();
+		Map<String, int[]> m = new HashMap<String, int[]>();
+		assertFalse(LigandDictionarySnapshot.read(new ByteArrayInputStream(
+				snapshot), changed, ll, m));
+		assertTrue(ll.isEmpty());
+		assertTrue(m.isEmpty());
+		// ligands.csv has another length
+		changed = stamps.clone();
+		changed[0]++;
+		assertFalse(LigandDictionarySnapshot.read(new ByteArrayInputStream(
+				snapshot), changed, ll, m));
+		// an older copy of the same resources is fine
+		changed = stamps.clone();
+		changed[1] -= 1000;
+		assertTrue(LigandDictionarySnapshot.read(new ByteArrayInputStream(
+				snapshot), changed, ll, m));
+	}
+
+	@Test(expected = IOException.class)
+	public void testNotASnapshot() throws IOException {
+		LigandDictionarySnapshot.read(new ByteArrayInputStream(new byte[] { 1,
+				2, 3, 4 }), stamps, new ArrayList<Ligand>(),
+				new HashMap<String, int[]>());
+	}
+
+	@Test
+	public void testDictionaryFromSnapshot() throws IOException {
+		List<Ligand> ll = new ArrayList<Ligand>();
+		Map<String, int[]> m = new HashMap<String, int[]>();
+		LigandDictionarySnapshot.read(new ByteArrayInputStream(snapshot),
+				stamps, ll, m);
+		Ligand b12 = parsed.getLigandByLigandExpoId("B12");
+		assertTrue(ll.contains(b12));
+		assertArrayEquals(parsed.getLigToPdb().get("B12"), m.get("B12"));
+		assertTrue(b12.containsPdbId(PdbId.unpack(m.get("B12")[0])));
+	}
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.lib;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.semanticscience.PDBAptamerRetriever.shared.RemoteSource;
+
+/**
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class LigandRegistryTest {
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		LigandRegistry.setDefault(null);
+		RemoteSource.setDefault(new PDBRecordLoaderTest.FakePDBSource());
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		LigandRegistry.setDefault(null);
+		RemoteSource.setDefault(null);
+	}
+
+	@Test
+	public void testIntern() {
+		LigandRegistry r = new LigandRegistry();
+		Ligand mg = new Ligand("MG", "non-polymer", 24.305, "MAGNESIUM ION",
+				"Mg 2", "", "", "", "CHEBI:18420", true);
+		Ligand pdbMg = new Ligand("mg", "non-polymer", 24.305,
+				"MAGNESIUM ION", "Mg 2", "JLVVSXFLKOJNIY-UHFFFAOYSA-N",
+				"InChI=1S/Mg/q+2", "[Mg+2]", "");
+		assertSame(mg, r.intern(mg));
+		assertSame(mg, r.intern(pdbMg));
+		assertSame(mg, r.get("Mg"));
+		assertEquals(1, r.size());
+		// the missing fields are taken from the other description
+		assertEquals("[Mg+2]", mg.getSmiles());
+		assertEquals("CHEBI:18420", mg.getChebiId());
+		assertTrue(mg.isION());
+	}
+
+	@Test
+	public void testSharedByRecords() {
+		List<String> ids = new ArrayList<String>();
+		for (int i = 0; i < 30; i++) {
+			ids.add(String.format("%dabc", i));
+		}
+		PDBRecordLoader l = new PDBRecordLoader(4, 8);
+		l.setLoadLigands(true);
+		List<PDBRecord> records = l.load(ids);
+		Ligand gun = records.get(0).getLigands().get(0);
+		for (PDBRecord p : records) {
+			assertSame(gun, p.getLigands().get(0));
+		}
+		assertEquals(1, LigandRegistry.getDefault().size());
+		// the structures are tracked apart from the shared ligand
+		assertTrue(gun.getPdbIds().isEmpty());
+		assertEquals(30, LigandRegistry.getDefault().getStructures("gun")
+				.size());
+		assertTrue(LigandRegistry.getDefault().isFoundIn("GUN", "29abc"));
+		assertEquals("[7abc]", gun.getCSVFields(records.get(7)
+				.getRequestedId())[0]);
+	}
+
+	@Test
+	public void testMembership() {
+		Ligand l = new Ligand("B12", "non-polymer", 1330.4, "COBALAMIN",
+				"C62 H89 Co N13 O14 P", "", "", "", "");
+		assertTrue(l.addPdbId("1l1h"));
+		assertFalse(l.addPdbId("1L1H"));
+		l.addPdbId("2rqj");
+		assertEquals(Arrays.asList("1L1H", "2RQJ"), l.getPdbIds());
+	}
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.lib;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class PDBRecordIndexTest {
+	private PDBRecordIndex index;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		List<PDBRecord> records = new ArrayList<PDBRecord>();
+		records.add(record("1AM0", "SOLUTION NMR", -1.0, 600, ligand("AMP")));
+		records.add(record("1KOC", "X-RAY DIFFRACTION", 2.5, 1200));
+		records.add(record("3DD2", "X-RAY DIFFRACTION", 3.0, 900,
+				ligand("GTP")));
+		records.add(record("2ET5", "X-RAY DIFFRACTION", 1.5, 1500,
+				ligand("GTP"), ligand("MG")));
+		records.add(record("1F27", "X-RAY DIFFRACTION", 2.4, 800,
+				ligand("BTN")));
+		index = new PDBRecordIndex(records);
+	}
+
+	private static Ligand ligand(String aChemicalId) {
+		return new Ligand(aChemicalId, "non-polymer", 100.0, aChemicalId,
+				"C", null, null, null, null);
+	}
+
+	private static PDBRecord record(String anId, String aMethod,
+			double aResolution, int anAtoms, Ligand... someLigands) {
+		return new PDBRecord(anId, anId, "A title", -1, aMethod, aResolution,
+				anAtoms / 20, anAtoms, Arrays.asList(someLigands));
+	}
+
+	private List<String> ids(String aFilter) {
+		List<String> rm = new ArrayList<String>();
+		for (PDBRecord r : index.filter(PDBRecordFilter.parse(aFilter))) {
+			rm.add(r.getPdbId());
+		}
+		return rm;
+	}
+
+	@Test
+	public void testRanges() {
+		assertEquals(Arrays.asList("1KOC", "2ET5", "1F27"),
+				index.getTable().getIds(index.resolutionBetween(0, 2.5)));
+		assertEquals(Arrays.asList("1AM0", "3DD2", "1F27"),
+				index.getTable().getIds(index.atomsBetween(0, 1000)));
+		assertTrue(index.resolutionBetween(3.5, 10).isEmpty());
+	}
+
+	@Test
+	public void testFilter() {
+		assertEquals(Arrays.asList("2ET5", "1F27"),
+				ids("method=x-ray diffraction; resolution<2.5"));
+		assertEquals(Arrays.asList("3DD2", "2ET5", "1F27"),
+				ids("method=X-RAY DIFFRACTION;ligand=*"));
+		assertEquals(Arrays.asList("2ET5"), ids("ligand=gtp;ligand=MG"));
+		assertEquals(Arrays.asList("1KOC", "3DD2"), ids("resolution>=2.5"));
+		assertEquals(Arrays.asList("1KOC", "2ET5"), ids("atoms>1000"));
+		assertEquals(Arrays.asList("1AM0"), ids("residues<=30"));
+		assertEquals(5, ids("").size());
+		assertTrue(ids("ligand=XXX").isEmpty());
+	}
+
+	@Test
+	public void testParse() {
+		PDBRecordFilter f = PDBRecordFilter.parse("resolution<=2;atoms=10");
+		assertEquals(2.0, f.getMaxResolution(), 0.0);
+		assertNull(f.getMinResolution());
+		assertEquals(Integer.valueOf(10), f.getMinAtoms());
+		assertEquals(Integer.valueOf(10), f.getMaxAtoms());
+		assertFalse(f.needsLigands());
+		assertTrue(PDBRecordFilter.parse("ligand=*").needsLigands());
+		String[] invalid = { "resolution", "resolution<abc", "colour=red",
+				"method<X" };
+		for (String s : invalid) {
+			try {
+				PDBRecordFilter.parse(s);
+				fail(s);
+			} catch (IllegalArgumentException e) {
+			}
+		}
+	}
+}
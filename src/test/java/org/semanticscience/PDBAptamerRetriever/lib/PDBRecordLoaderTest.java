@@ -0,0 +1,226 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.lib;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang.StringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.semanticscience.PDBAptamerRetriever.shared.RemoteSource;
+
+/**
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class PDBRecordLoaderTest {
+
+	/**
+	 * Serves made up describePDB and ligandInfo responses for every id but
+	 * 0XXX, one or many ids at a time
+	 */
+	static class FakePDBSource extends RemoteSource {
+		// the number of requests served
+		final AtomicInteger requests = new AtomicInteger(0);
+
+		@Override
+		public String get(String aUrl) throws IOException {
+			requests.incrementAndGet();
+			String[] ids = aUrl.substring(aUrl.indexOf("structureId=") + 12)
+					.split(",");
+			StringBuilder sb = new StringBuilder();
+			if (aUrl.contains("/describePDB")) {
+				sb.append("<PDBdescription>");
+				for (String id : ids) {
+					if (!id.equals("0XXX")) {
+						sb.append("<PDB structureId=\"" + id
+								+ "\" title=\"A riboswitch, &quot;bound&quot;\" pubmedId=\"1\""
+								+ " expMethod=\"X-RAY\" resolution=\"2.5\""
+								+ " nr_residues=\"70\" nr_atoms=\"1500\"/>");
+					}
+				}
+				return sb.append("</PDBdescription>").toString();
+			}
+			sb.append("<structureId id=\"" + StringUtils.join(ids, ",")
+					+ "\"><ligandInfo>");
+			for (String id : ids) {
+				sb.append("<ligand structureId=\"" + id
+						+ "\" chemicalID=\"GUN\" type=\"non-polymer\""
+						+ " molecularWeight=\"151.13\">"
+						+ "<chemicalName>GUANINE</chemicalName>"
+						+ "<formula>C5 H5 N5 O</formula><InChIKey>K</InChIKey>"
+						+ "<InChI>I</InChI><smiles>S</smiles></ligand>");
+			}
+			return sb.append("</ligandInfo></structureId>").toString();
+		}
+
+		@Override
+		public String post(String aUrl, String aBody) throws IOException {
+			throw new IOException("not supported");
+		}
+
+		@Override
+		public InputStream openStream(URL aUrl) throws IOException {
+			throw new IOException("not supported");
+		}
+	}
+
+	private FakePDBSource source;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		source = new FakePDBSource();
+		RemoteSource.setDefault(source);
+		LigandRegistry.setDefault(null);
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		RemoteSource.setDefault(null);
+	}
+
+	@Test
+	public void testLoad() {
+		List<String> ids = new ArrayList<String>();
+		for (int i = 0; i < 50; i++) {
+			ids.add(String.format("%dABC", i));
+		}
+		ids.set(7, "0XXX");
+		PDBRecordLoader l = new PDBRecordLoader(4, 8);
+		l.setLoadLigands(true);
+		final List<Integer> progress = new ArrayList<Integer>();
+		l.setProgressListener(new PDBRecordLoader.ProgressListener() {
+			public synchronized void recordLoaded(PDBRecord aRecord,
+					int aLoaded, int aTotal) {
+				assertEquals(50, aTotal);
+				progress.add(aLoaded);
+			}
+		});
+		List<PDBRecord> records = l.load(ids);
+		assertEquals(50, records.size());
+		for (int i = 0; i < 50; i++) {
+			assertEquals(ids.get(i), records.get(i).getRequestedId());
+		}
+		assertEquals("12ABC", records.get(12).getPdbId());
+		assertEquals("GUN", records.get(12).getLigands().get(0)
+				.getChemicalId());
+		assertEquals(1, records.get(49).getLigands().size());
+		assertTrue(LigandRegistry.getDefault().isFoundIn(
+				records.get(49).getLigands().get(0).getChemicalId(), "49ABC"));
+		assertFalse(records.get(7).isRetrieved());
+		assertEquals(50, progress.size());
+		// 7 batches of at most 8 ids, two requests each
+		assertEquals(14, source.requests.get());
+	}
+
+	@Test
+	public void testLazyLigands() {
+		List<String> ids = new ArrayList<String>();
+		for (int i = 0; i < 20; i++) {
+			ids.add(String.format("%dABC", i));
+		}
+		PDBRecordLoader l = new PDBRecordLoader(4, 8);
+		List<PDBRecord> records = l.load(ids);
+		assertEquals(3, source.requests.get());
+		assertFalse(records.get(0).isLigandsLoaded());
+		assertEquals("\"0ABC\",\"A riboswitch, \"\"bound\"\"\",\"X-RAY\",\"2.5\","
+				+ "\"1500\",\"70\",\"http://www.ncbi.nlm.nih.gov/pubmed/1\",\"\"\n",
+				records.get(0).getCSVLine());
+		assertEquals(3, source.requests.get());
+		l.loadLigands(records.subList(0, 10));
+		assertEquals(5, source.requests.get());
+		assertEquals("GUN", records.get(9).getLigands().get(0)
+				.getChemicalId());
+		// a single loaded ligand is listed in the summary
+		assertEquals(1, records.get(0).getLigands().size());
+		assertTrue(records.get(0).getCSVLine().endsWith(",\"GUN\"\n"));
+		l.loadLigands(records);
+		assertEquals(7, source.requests.get());
+		assertTrue(records.get(19).isLigandsLoaded());
+	}
+
+	@Test
+	public void testSingleRecord() {
+		PDBRecord r = new PDBRecord("1ABC", true);
+		assertTrue(r.isRetrieved());
+		assertEquals("1ABC", r.getPdbId());
+		assertEquals(1, source.requests.get());
+		assertEquals(1, r.getLigands().size());
+		assertEquals(2, source.requests.get());
+		r.getLigands();
+		assertEquals(2, source.requests.get());
+	}
+
+	@Test
+	public void testFailures() throws Exception {
+		RemoteSource.setDefault(new FakePDBSource() {
+			@Override
+			public String get(String aUrl) throws IOException {
+				if (aUrl.contains("0BAD") && aUrl.contains("/describePDB")) {
+					throw new IOException("Read timed out");
+				}
+				return super.get(aUrl);
+			}
+		});
+		List<String> ids = Arrays.asList("1ABC", "2ABC", "0BAD", "3ABC",
+				"4ABC", "0XXX", "5ABC");
+		RecordLoadResult r = new PDBRecordLoader(2, 4).retrieve(ids);
+		assertEquals(7, r.getRecords().size());
+		assertEquals(5, r.getSucceeded().size());
+		assertEquals(3, r.getRetriedCount());
+		assertEquals(RecordLoadResult.Status.RETRIED,
+				r.getStatus(r.getRecords().get(0)));
+		assertEquals(RecordLoadResult.Status.SUCCEEDED,
+				r.getStatus(r.getRecords().get(4)));
+		assertEquals(RecordLoadResult.Status.FAILED,
+				r.getStatus(r.getRecords().get(2)));
+		assertTrue(r.getCause(r.getRecords().get(2)).contains(
+				"Read timed out"));
+		StringWriter sw = new StringWriter();
+		r.writeFailures(sw);
+		String[] lines = sw.toString().split("\n");
+		assertEquals(2, lines.length);
+		assertTrue(lines[0].startsWith("\"0BAD\"\t"));
+		assertTrue(lines[1].startsWith("\"0XXX\"\t"));
+	}
+
+	@Test
+	public void testEmpty() {
+		assertTrue(new PDBRecordLoader().load(Arrays.<String> asList())
+				.isEmpty());
+	}
+}
@@ -0,0 +1,170 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.lib;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.semanticscience.PDBAptamerRetriever.shared.RemoteSource;
+
+/**
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class PDBRecordStoreTest {
+	private static File workDir = null;
+	private PDBRecordLoaderTest.FakePDBSource source;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		workDir = new File(FileUtils.getTempDirectory(), "pdbRecordStoreTest");
+		FileUtils.forceMkdir(workDir);
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+		FileUtils.deleteDirectory(workDir);
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		source = new PDBRecordLoaderTest.FakePDBSource();
+		RemoteSource.setDefault(source);
+		LigandRegistry.setDefault(null);
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		RemoteSource.setDefault(null);
+	}
+
+	@Test
+	public void testRefresh() throws Exception {
+		File f = new File(workDir, "records.bin");
+		List<String> ids = Arrays.asList("1Y26", "2RQJ", "0XXX");
+		PDBRecordLoader l = new PDBRecordLoader();
+		l.setLoadLigands(true);
+		l.setStore(PDBRecordStore.load(f));
+		String line = l.load(ids).get(1).getCSVLine();
+		assertEquals(2, source.requests.get());
+		assertTrue(f.isFile());
+
+		l.setStore(PDBRecordStore.load(f));
+		assertEquals(2, l.getStore().size());
+		List<PDBRecord> records = l.load(Arrays.asList("1Y26", "2rqj",
+				"3DIL"));
+		// only 3DIL was asked for
+		assertEquals(4, source.requests.get());
+		assertEquals(line, records.get(1).getCSVLine());
+		Ligand gun = records.get(0).getLigands().get(0);
+		assertEquals("GUN", gun.getChemicalId());
+		assertEquals("C5 H5 N5 O", gun.getFormula());
+		assertTrue(LigandRegistry.getDefault().isFoundIn("GUN", "1Y26"));
+		assertSame(gun, records.get(1).getLigands().get(0));
+		assertEquals(3, l.getStore().size());
+
+		// stale records are retrieved again
+		l.getStore().setMaxAge(-1);
+		l.load(ids);
+		assertEquals(6, source.requests.get());
+	}
+
+	@Test
+	public void testLigandsLoadedLater() throws Exception {
+		File f = new File(workDir, "lazy.bin");
+		PDBRecordLoader l = new PDBRecordLoader();
+		l.setStore(PDBRecordStore.load(f));
+		List<PDBRecord> records = l.load(Arrays.asList("1Y26"));
+		assertEquals(1, source.requests.get());
+		l.loadLigands(records);
+		assertEquals(2, source.requests.get());
+
+		PDBRecordStore s = PDBRecordStore.load(f);
+		assertTrue(s.get("1Y26").isLigandsLoaded());
+		assertTrue(s.isFresh("1y26"));
+		assertNull(s.get("2RQJ"));
+	}
+
+	@Test
+	public void testLigandFailureNotStored() throws Exception {
+		File f = new File(workDir, "ligand-failure.bin");
+		RemoteSource.setDefault(new PDBRecordLoaderTest.FakePDBSource() {
+			@Override
+			public String get(String aUrl) throws IOException {
+				if (aUrl.contains("/ligandInfo")) {
+					throw new IOException("Connection reset");
+				}
+				return super.get(aUrl);
+			}
+		});
+		PDBRecordLoader l = new PDBRecordLoader();
+		l.setLoadLigands(true);
+		l.setStore(PDBRecordStore.load(f));
+		RecordLoadResult r = l.retrieve(Arrays.asList("1Y26"));
+		PDBRecord p = r.getRecords().get(0);
+		assertTrue(p.isRetrieved());
+		assertFalse(p.isLigandsLoaded());
+		assertTrue(p.getLigands().isEmpty());
+		assertFalse(r.isComplete());
+		assertTrue(r.getLigandCause(p).contains("Connection reset"));
+		StringWriter sw = new StringWriter();
+		r.writeFailures(sw);
+		assertTrue(sw.toString().startsWith("\"1Y26\"\t\"Ligands not retrieved"));
+		assertNull(PDBRecordStore.load(f).get("1Y26"));
+
+		// the ligands are retrieved once the service is back
+		RemoteSource.setDefault(source);
+		l.loadLigands(r.getRecords(), r);
+		assertTrue(p.isLigandsLoaded());
+		assertTrue(r.isComplete());
+		assertTrue(PDBRecordStore.load(f).get("1Y26").isLigandsLoaded());
+	}
+
+	@Test(expected = java.io.IOException.class)
+	public void testNotAStore() throws Exception {
+		File f = new File(workDir, "not-a-store.bin");
+		FileUtils.writeStringToFile(f, "1Y26,2RQJ");
+		PDBRecordStore.load(f);
+	}
+}
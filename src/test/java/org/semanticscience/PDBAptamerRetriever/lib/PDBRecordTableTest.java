@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.lib;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class PDBRecordTableTest {
+	private static final String XRAY = "X-RAY DIFFRACTION";
+	private static final String NMR = "SOLUTION NMR";
+	private PDBRecordTable table;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		List<PDBRecord> records = new ArrayList<PDBRecord>();
+		records.add(record("1AM0", NMR, -1.0, 600, 30));
+		records.add(record("1KOC", XRAY, 2.0, 1200, 60));
+		records.add(record("3DD2", XRAY, 3.0, 900, 45));
+		records.add(record("2ET5", XRAY, 1.5, 1500, 70));
+		records.add(record("pdb_00001abc", null, null, -1, -1));
+		table = new PDBRecordTable(records);
+	}
+
+	private static PDBRecord record(String anId, String aMethod,
+			Double aResolution, int anAtoms, int aResidues) {
+		return new PDBRecord(anId, anId, "A title", 12345, aMethod,
+				aResolution, aResidues, anAtoms, null);
+	}
+
+	@Test
+	public void testColumns() {
+		assertEquals(5, table.size());
+		assertEquals("1KOC", table.getId(1));
+		assertEquals("pdb_00001abc", table.getId(4));
+		assertEquals(2.0, table.getResolution(1), 0.0);
+		assertEquals(-1.0, table.getResolution(4), 0.0);
+		assertEquals(1200, table.getNumberOfAtoms(1));
+		assertEquals(45, table.getNumberOfResidues(2));
+		assertEquals(12345, table.getPmid(3));
+		assertEquals(NMR, table.getExpMethod(0));
+		assertNull(table.getExpMethod(4));
+		assertEquals(Arrays.asList(NMR, XRAY), table.getExpMethods());
+	}
+
+	@Test
+	public void testFilters() {
+		BitSet xray = table.withExpMethod(XRAY);
+		assertEquals(Arrays.asList("1KOC", "3DD2", "2ET5"), table.getIds(xray));
+		BitSet good = table.resolutionBetween(0, 2.0);
+		good.and(xray);
+		assertEquals(Arrays.asList("1KOC", "2ET5"), table.getIds(good));
+		assertEquals(Arrays.asList("1AM0", "3DD2"),
+				table.getIds(table.atomsBetween(0, 1000)));
+		assertEquals(Arrays.asList("2ET5"),
+				table.getIds(table.residuesBetween(65, 100)));
+		assertTrue(table.withExpMethod("ELECTRON MICROSCOPY").isEmpty());
+	}
+
+	@Test
+	public void testStatistics() {
+		PDBRecordTable.Stats s = table.resolutionStats(table.all());
+		// the unknown resolutions are left out
+		assertEquals(3, s.getCount());
+		assertEquals(1.5, s.getMin(), 0.0);
+		assertEquals(3.0, s.getMax(), 0.0);
+		assertEquals(6.5 / 3, s.getMean(), 1e-9);
+		assertEquals(1050.0, table.atomStats(table.all()).getMean(), 1e-9);
+		assertEquals(0,
+				table.residueStats(new BitSet()).getCount());
+		assertTrue(Double.isNaN(table.residueStats(new BitSet()).getMean()));
+		Map<String, Integer> counts = table.countByExpMethod(table.all());
+		assertEquals(Integer.valueOf(3), counts.get(XRAY));
+		assertEquals(Integer.valueOf(1), counts.get(NMR));
+		assertEquals(2, counts.size());
+	}
+}
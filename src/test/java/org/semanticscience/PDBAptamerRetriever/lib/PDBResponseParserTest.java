@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.lib;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class PDBResponseParserTest {
+	private List<String> descriptions;
+	private List<Ligand> ligands;
+	private List<String> structureIds;
+	private int starts;
+	private PDBResponseParser parser;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		descriptions = new ArrayList<String>();
+		ligands = new ArrayList<Ligand>();
+		structureIds = new ArrayList<String>();
+		starts = 0;
+		parser = new PDBResponseParser(new PDBResponseParser.Listener() {
+			public void start() {
+				starts++;
+			}
+
+			public void description(Map<String, String> someAttributes) {
+				descriptions.add(someAttributes.get("structureId") + " "
+						+ someAttributes.get("resolution"));
+			}
+
+			public void ligand(String aStructureId, Ligand aLigand) {
+				structureIds.add(aStructureId);
+				ligands.add(aLigand);
+			}
+		});
+	}
+
+	@Test
+	public void testDescriptions() throws IOException {
+		String xml = "<?xml version='1.0' standalone='no' ?>"
+				+ "<PDBdescription>"
+				+ "<PDB structureId=\"1Y26\" title=\"A-riboswitch\" resolution=\"2.1\"/>"
+				+ "<PDB structureId=\"2RQJ\" title=\"RNA\" resolution=\"1.8\"/>"
+				+ "</PDBdescription>";
+		assertEquals(2, parser.handle(new StringReader(xml)).intValue());
+		assertEquals(1, starts);
+		assertEquals("1Y26 2.1", descriptions.get(0));
+		assertEquals("2RQJ 1.8", descriptions.get(1));
+	}
+
+	@Test
+	public void testLigands() throws IOException {
+		String xml = "<structureId id=\"1Y26,2RQJ\"><ligandInfo>"
+				+ "<ligand structureId=\"1Y26\" chemicalID=\"ADE\" type=\"non-polymer\" molecularWeight=\"135.13\">"
+				+ "<chemicalName>ADENINE</chemicalName><formula>C5 H5 N5</formula>"
+				+ "<InChIKey>GFFGJBXGBJISGV-UHFFFAOYSA-N</InChIKey><InChI>InChI=1S</InChI>"
+				+ "<smiles>c1[nH]c2c(n1)c(ncn2)N</smiles></ligand>"
+				+ "<ligand chemicalID=\"MG\" type=\"non-polymer\" molecularWeight=\"24.305\">"
+				+ "<chemicalName>MAGNESIUM ION</chemicalName><formula>Mg 2</formula>"
+				+ "<InChIKey>JLVVSXFLKOJNIY-UHFFFAOYSA-N</InChIKey><InChI>InChI=1S/Mg</InChI>"
+				+ "<smiles>[Mg+2]</smiles></ligand>"
+				+ "</ligandInfo></structureId>";
+		assertEquals(2, parser.handle(new StringReader(xml)).intValue());
+		assertEquals("1Y26", structureIds.get(0));
+		assertNull(structureIds.get(1));
+		Ligand ade = ligands.get(0);
+		assertEquals("ADE", ade.getChemicalId());
+		assertEquals("ADENINE", ade.getChemicalName());
+		assertEquals("c1[nH]c2c(n1)c(ncn2)N", ade.getSmiles());
+		assertEquals(24.305, ligands.get(1).getMolecularWeight(), 0.0001);
+	}
+
+	@Test
+	public void testManyEntries() throws IOException {
+		StringBuilder sb = new StringBuilder("<PDBdescription>");
+		for (int i = 0; i < 5000; i++) {
+			sb.append("<PDB structureId=\"" + i + "\" resolution=\"2.0\"/>");
+		}
+		sb.append("</PDBdescription>");
+		assertEquals(5000, parser.handle(new StringReader(sb.toString()))
+				.intValue());
+		assertEquals("4999 2.0", descriptions.get(4999));
+	}
+
+	@Test(expected = IOException.class)
+	public void testInvalid() throws IOException {
+		parser.handle(new StringReader("<PDBdescription><PDB"));
+	}
+}
@@ -20,6 +20,7 @@
  */
 package org.semanticscience.PDBAptamerRetriever.lib;
 
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -87,4 +88,12 @@ public class PDBRestQueryerTest {
 		assertTrue(pdbids.size() > 10);
 	}
 
+	@Test
+	public void testFailedQuery() {
+		PDBRestQueryer q = new PDBRestQueryer(q1,
+				new PDBRecordLoaderTest.FakePDBSource());
+		assertTrue(q.getPdbIds().isEmpty());
+		assertNotNull(q.getFailure());
+	}
+
 }
@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.lib;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class PdbIdBitmapTest {
+	private static final int UNIVERSE = 1000;
+
+	private static PdbIdBitmap range(int aFrom, int aTo, int aStep) {
+		int[] o = new int[(aTo - aFrom + aStep - 1) / aStep];
+		for (int i = 0; i < o.length; i++) {
+			o[i] = aFrom + i * aStep;
+		}
+		return PdbIdBitmap.of(o, UNIVERSE);
+	}
+
+	@Test
+	public void testRepresentation() {
+		PdbIdBitmap sparse = PdbIdBitmap.of(new int[] { 700, 3, 64 }, UNIVERSE);
+		assertFalse(sparse.isDense());
+		assertArrayEquals(new int[] { 3, 64, 700 }, sparse.toArray());
+		PdbIdBitmap dense = range(0, UNIVERSE, 2);
+		assertTrue(dense.isDense());
+		assertEquals(500, dense.cardinality());
+		assertTrue(dense.contains(998));
+		assertFalse(dense.contains(999));
+		assertFalse(dense.contains(-1));
+		assertFalse(dense.contains(UNIVERSE));
+	}
+
+	@Test
+	public void testAlgebra() {
+		PdbIdBitmap evens = range(0, UNIVERSE, 2);
+		PdbIdBitmap threes = range(0, UNIVERSE, 3);
+		PdbIdBitmap few = PdbIdBitmap.of(new int[] { 1, 2, 6, 9 }, UNIVERSE);
+		assertEquals(range(0, UNIVERSE, 6), evens.and(threes));
+		assertArrayEquals(new int[] { 2, 6 }, evens.and(few).toArray());
+		assertArrayEquals(new int[] { 2, 6 }, few.and(evens).toArray());
+		assertArrayEquals(new int[] { 1, 9 }, few.andNot(evens).toArray());
+		assertEquals(667, evens.or(threes).cardinality());
+		assertEquals(502, evens.or(few).cardinality());
+		assertArrayEquals(new int[] { 1, 2, 5, 6, 9 },
+				few.or(PdbIdBitmap.of(new int[] { 5, 6 }, UNIVERSE)).toArray());
+		assertEquals(167, threes.andNot(evens).cardinality());
+		// dense results that become sparse are compacted
+		PdbIdBitmap first = range(0, 40, 1);
+		assertTrue(first.isDense());
+		assertFalse(evens.and(first).isDense());
+		assertTrue(evens.andNot(evens).isEmpty());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDifferentUniverses() {
+		range(0, 10, 1).and(PdbIdBitmap.empty(UNIVERSE + 1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDuplicateOrdinals() {
+		PdbIdBitmap.of(new int[] { 4, 4 }, UNIVERSE);
+	}
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.lib;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class PdbIdSetTest {
+
+	@Test
+	public void testPack() {
+		assertEquals("1KOC", PdbId.unpack(PdbId.pack("1koc")));
+		assertEquals(-1, PdbId.pack("1KOCX"));
+		assertEquals(-1, PdbId.pack(null));
+		assertTrue(PdbId.pack("0000") > 0);
+		assertEquals(PdbId.pack("1koc"), PdbId.pack("1KOC"));
+		// packed ids sort as the ids do
+		assertTrue(PdbId.pack("1KOC") < PdbId.pack("2KOC"));
+		assertEquals(-1, PdbId.pack("pdb_00001koc"));
+	}
+
+	@Test
+	public void testOrderAndMembership() {
+		PdbIdSet s = new PdbIdSet();
+		assertTrue(s.add("3dd2"));
+		assertTrue(s.add("1KOC"));
+		assertFalse(s.add("3DD2"));
+		assertTrue(s.add("pdb_00001abc"));
+		assertFalse(s.add("PDB_00001ABC"));
+		assertTrue(s.add(PdbId.pack("2et5")));
+		assertEquals(4, s.size());
+		assertEquals(Arrays.asList("3DD2", "1KOC", "PDB_00001ABC", "2ET5"),
+				s.toList());
+		assertEquals(1, s.indexOf("1koc"));
+		assertEquals(2, s.indexOf("pdb_00001abc"));
+		assertEquals(-1, s.indexOf("9XXX"));
+		assertFalse(s.contains("9XXX"));
+		assertFalse(s.contains((String) null));
+		assertTrue(s.contains(PdbId.pack("2ET5")));
+		int[] sorted = s.toSortedArray();
+		assertEquals(3, sorted.length);
+		assertEquals("1KOC", PdbId.unpack(sorted[0]));
+		assertEquals("3DD2", PdbId.unpack(sorted[2]));
+	}
+
+	@Test
+	public void testGrowth() {
+		PdbIdSet s = new PdbIdSet(0);
+		List<String> ids = new ArrayList<String>();
+		for (int i = 0; i < 5000; i++) {
+			String id = String.format("%04X", i);
+			ids.add(id);
+			assertTrue(s.add(id));
+		}
+		for (int i = 0; i < 5000; i++) {
+			assertEquals(i, s.indexOf(ids.get(i)));
+			assertFalse(s.add(ids.get(i).toLowerCase()));
+		}
+		assertEquals(ids, s.toList());
+	}
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.shared;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class CompressedFilesTest {
+	private static File workDir = null;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		workDir = new File(FileUtils.getTempDirectory(), "compressedFilesTest");
+		FileUtils.forceMkdir(new File(workDir, "mirror"));
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+		FileUtils.deleteDirectory(workDir);
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		File f = new File(workDir, "1Y27-X.fasta.gz");
+		CompressedFiles.writeString(f, ">1Y27:X|PDBID|CHAIN|SEQUENCE\nGGAC\n");
+		// the file on disk is not plain text
+		assertFalse(FileUtils.readFileToString(f).startsWith(">"));
+		assertEquals(">1Y27:X|PDBID|CHAIN|SEQUENCE\nGGAC\n",
+				IOUtils.toString(CompressedFiles.openReader(f)));
+	}
+
+	@Test
+	public void testPrepareDirectory() throws Exception {
+		File mirror = new File(workDir, "mirror");
+		File staging = new File(workDir, "staging");
+		CompressedFiles.writeString(new File(mirror, "1Y27.pdb"), "HEADER 1Y27");
+		// a plain directory is used as is
+		assertEquals(mirror,
+				CompressedFiles.prepareDirectory(mirror, staging, "pdb"));
+		CompressedFiles.writeString(new File(mirror, "2RQJ.pdb.gz"),
+				"HEADER 2RQJ");
+		assertEquals(staging,
+				CompressedFiles.prepareDirectory(mirror, staging, "pdb"));
+		assertEquals("HEADER 2RQJ",
+				FileUtils.readFileToString(new File(staging, "2RQJ.pdb")));
+		assertEquals("HEADER 1Y27",
+				FileUtils.readFileToString(new File(staging, "1Y27.pdb")));
+	}
+}
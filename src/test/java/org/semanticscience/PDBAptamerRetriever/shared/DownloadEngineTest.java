@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.shared;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class DownloadEngineTest {
+	private static File workDir = null;
+	private static File inDir = null;
+	private static File outDir = null;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		workDir = new File(FileUtils.getTempDirectory(), "downloadEngineTest");
+		inDir = new File(workDir, "in");
+		outDir = new File(workDir, "out");
+		FileUtils.forceMkdir(inDir);
+		FileUtils.forceMkdir(outDir);
+		for (int i = 0; i < 10; i++) {
+			FileUtils.writeStringToFile(new File(inDir, i + ".pdb"), "HEADER "
+					+ i);
+		}
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+		FileUtils.deleteDirectory(workDir);
+	}
+
+	@Test
+	public void testDownload() throws Exception {
+		List<FileDownloadTask> tasks = new ArrayList<FileDownloadTask>();
+		for (int i = 0; i < 10; i++) {
+			tasks.add(new FileDownloadTask("" + i, new File(inDir, i + ".pdb")
+					.toURI().toURL(), new File(outDir, i + ".pdb")));
+		}
+		// this one does not exist
+		tasks.add(new FileDownloadTask("missing", new File(inDir,
+				"missing.pdb").toURI().toURL(), new File(outDir, "missing.pdb")));
+		DownloadEngine de = new DownloadEngine(3, 2);
+		List<DownloadResult> results = de.download(tasks);
+		assertEquals(11, results.size());
+		assertEquals(10, DownloadEngine.report(results));
+		assertEquals("3", results.get(3).getId());
+		assertFalse(results.get(10).isSucceeded());
+		assertNotNull(results.get(10).getCause());
+		assertEquals("HEADER 7",
+				FileUtils.readFileToString(new File(outDir, "7.pdb")));
+		// no temporary files are left behind
+		assertEquals(10, outDir.list().length);
+	}
+}
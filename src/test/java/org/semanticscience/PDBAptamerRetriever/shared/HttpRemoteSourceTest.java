@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.shared;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class HttpRemoteSourceTest {
+	private HttpServer server = null;
+	private String base = null;
+	// the number of requests received
+	private AtomicInteger calls = new AtomicInteger();
+	private PooledHttpClient client = null;
+	private HttpRemoteSource source = null;
+
+	/**
+	 * Start a server that stalls its first response past the read timeout of
+	 * the client and answers the later ones at once
+	 */
+	@Before
+	public void setUp() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange ex) throws IOException {
+				String body = ex.getRequestMethod() + " "
+						+ ex.getRequestURI().getPath() + " "
+						+ IOUtils.toString(ex.getRequestBody(), "UTF-8");
+				if (calls.incrementAndGet() == 1) {
+					try {
+						Thread.sleep(2000);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				byte[] b = body.trim().getBytes("UTF-8");
+				try {
+					ex.sendResponseHeaders(200, b.length);
+					ex.getResponseBody().write(b);
+				} catch (IOException e) {
+					// the client already gave up on this request
+				}
+				ex.close();
+			}
+		});
+		server.start();
+		base = "http://127.0.0.1:" + server.getAddress().getPort();
+		client = new PooledHttpClient(2, 2, 1000, 500);
+		RequestPolicy p = new RequestPolicy(1000, 5);
+		p.setBackoff(1, 10);
+		source = new HttpRemoteSource(client, p, null);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		client.shutdown();
+		server.stop(0);
+	}
+
+	@Test
+	public void testGetRetriesTimeout() throws Exception {
+		assertEquals("GET /1y27", source.get(base + "/1y27"));
+		assertEquals(2, calls.get());
+		assertTrue(source.getPolicy().getFailures().isEmpty());
+	}
+
+	@Test
+	public void testPostRetriesTimeout() throws Exception {
+		assertEquals("POST /search q=1y27",
+				source.post(base + "/search", "q=1y27"));
+		assertEquals(2, calls.get());
+	}
+
+	@Test
+	public void testStreamRetriesTimeout() throws Exception {
+		String rm = source.get(base + "/2rqj",
+				new RemoteSource.ResponseHandler<String>() {
+					public String handle(Reader aReader) throws IOException {
+						return IOUtils.toString(aReader);
+					}
+				});
+		assertEquals("GET /2rqj", rm);
+		assertEquals(2, calls.get());
+	}
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.shared;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class MirrorManifestTest {
+	private static File workDir = null;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		workDir = new File(FileUtils.getTempDirectory(), "mirrorManifestTest");
+		FileUtils.forceMkdir(workDir);
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+		FileUtils.deleteDirectory(workDir);
+	}
+
+	@Test
+	public void testResume() throws Exception {
+		File a = new File(workDir, "1Y27.pdb");
+		File b = new File(workDir, "2RQJ.pdb");
+		FileUtils.writeStringToFile(a, "HEADER 1Y27");
+		FileUtils.writeStringToFile(b, "HEADER 2RQJ");
+		MirrorManifest m = MirrorManifest.load(workDir);
+		m.record("1Y27", "pdb", a);
+		m.record("2RQJ", "pdb", b);
+		m.close();
+		List<String> ids = Arrays.asList("1y27", "2RQJ", "3DIL");
+		m = MirrorManifest.load(workDir);
+		assertEquals(Arrays.asList("3DIL"), m.findMissing(ids, "pdb"));
+		assertEquals(ids, m.findMissing(ids, "xml"));
+		// a truncated file is retrieved again
+		FileUtils.writeStringToFile(b, "HEADER");
+		assertFalse(m.isCurrent("2RQJ", "pdb"));
+		// a changed file of the same size is only found by its checksum
+		FileUtils.writeStringToFile(a, "HEADER 9999");
+		assertTrue(m.isCurrent("1Y27", "pdb"));
+		m.setVerifyChecksums(true);
+		assertFalse(m.isCurrent("1Y27", "pdb"));
+		m.close();
+	}
+
+	@Test
+	public void testAppended() throws Exception {
+		File f = new File(workDir, "output.fasta");
+		FileUtils.writeStringToFile(f, ">1Y27:X\nGGAC\n>2RQJ:A\nACAC\n");
+		MirrorManifest m = MirrorManifest.load(workDir);
+		m.recordAppended("1Y27", "concatenated-fasta", f, f.length());
+		m.recordAppended("2RQJ", "concatenated-fasta", f, f.length());
+		m.close();
+		m = MirrorManifest.load(workDir);
+		assertTrue(m.isCurrent("1Y27", "concatenated-fasta"));
+		assertTrue(m.isCurrent("2RQJ", "concatenated-fasta"));
+		FileUtils.writeStringToFile(f, ">1Y27:X\n");
+		assertFalse(m.isCurrent("2RQJ", "concatenated-fasta"));
+		m.close();
+	}
+}
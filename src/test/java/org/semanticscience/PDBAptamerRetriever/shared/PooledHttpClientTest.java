@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.shared;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.client.methods.HttpGet;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class PooledHttpClientTest {
+	private static HttpServer server = null;
+	private static String base = null;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange ex) throws IOException {
+				String path = ex.getRequestURI().getPath();
+				byte[] body = ("HEADER " + path).getBytes("UTF-8");
+				if (path.equals("/missing")) {
+					ex.sendResponseHeaders(404, -1);
+				} else if (path.equals("/gzip")) {
+					ex.getResponseHeaders().add("Content-Encoding", "gzip");
+					ex.sendResponseHeaders(200, 0);
+					GZIPOutputStream out = new GZIPOutputStream(ex
+							.getResponseBody());
+					out.write(body);
+					out.finish();
+				} else {
+					ex.sendResponseHeaders(200, body.length);
+					ex.getResponseBody().write(body);
+				}
+				ex.close();
+			}
+		});
+		server.start();
+		base = "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+		server.stop(0);
+	}
+
+	@Test
+	public void testGetString() throws Exception {
+		PooledHttpClient c = new PooledHttpClient(1, 1, 5000, 5000);
+		// a single pooled connection serves every request
+		for (int i = 0; i < 5; i++) {
+			assertEquals("HEADER /1y27",
+					c.getString(new HttpGet(base + "/1y27"), null));
+		}
+		assertEquals("HEADER /gzip",
+				c.getString(new HttpGet(base + "/gzip"), null));
+		try {
+			c.getString(new HttpGet(base + "/missing"), null);
+			fail("a 404 response should fail");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().startsWith("HTTP 404"));
+		}
+		// the connection was released after the failure
+		assertEquals("HEADER /2rqj",
+				c.getString(new HttpGet(base + "/2rqj"), null));
+		c.shutdown();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidLimits() {
+		new PooledHttpClient(2, 1, 0, 0);
+	}
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.shared;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class ReplayRemoteSourceTest {
+	private static File workDir = null;
+	private static File recordDir = null;
+
+	/**
+	 * A source that answers every request with its URL
+	 */
+	private static class EchoSource extends RemoteSource {
+		@Override
+		public String get(String aUrl) throws IOException {
+			return "GET " + aUrl;
+		}
+
+		@Override
+		public String post(String aUrl, String aBody) throws IOException {
+			return "POST " + aUrl + " " + aBody;
+		}
+
+		@Override
+		public InputStream openStream(URL aUrl) throws IOException {
+			return new ByteArrayInputStream(("HEADER " + aUrl.getPath())
+					.getBytes("UTF-8"));
+		}
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		workDir = new File(FileUtils.getTempDirectory(), "replayRemoteSourceTest");
+		recordDir = new File(workDir, "recording");
+		RemoteSource r = new RecordingRemoteSource(new EchoSource(), recordDir);
+		r.get("http://www.rcsb.org/pdb/rest/describePDB?structureId=1Y27");
+		r.post("http://www.rcsb.org/pdb/rest/search", "query");
+		r.openStream(new URL("http://www.rcsb.org/pdb/files/1Y27.pdb")).close();
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+		FileUtils.deleteDirectory(workDir);
+	}
+
+	@Test
+	public void testReplay() throws Exception {
+		ReplayRemoteSource r = new ReplayRemoteSource(recordDir);
+		assertEquals(
+				"GET http://www.rcsb.org/pdb/rest/describePDB?structureId=1Y27",
+				r.get("http://www.rcsb.org/pdb/rest/describePDB?structureId=1Y27"));
+		assertEquals("POST http://www.rcsb.org/pdb/rest/search query",
+				r.post("http://www.rcsb.org/pdb/rest/search", "query"));
+		try {
+			r.post("http://www.rcsb.org/pdb/rest/search", "another query");
+			fail("nothing was recorded for this query");
+		} catch (FileNotFoundException e) {
+		}
+	}
+
+	@Test
+	public void testDownload() throws Exception {
+		File outDir = new File(workDir, "out");
+		FileUtils.forceMkdir(outDir);
+		List<FileDownloadTask> tasks = new ArrayList<FileDownloadTask>();
+		tasks.add(new FileDownloadTask("1Y27", new URL(
+				"http://www.rcsb.org/pdb/files/1Y27.pdb"), new File(outDir,
+				"1Y27.pdb")));
+		tasks.add(new FileDownloadTask("2RQJ", new URL(
+				"http://www.rcsb.org/pdb/files/2RQJ.pdb"), new File(outDir,
+				"2RQJ.pdb")));
+		DownloadEngine de = new DownloadEngine();
+		de.setSource(new ReplayRemoteSource(recordDir));
+		List<DownloadResult> results = de.download(tasks);
+		assertTrue(results.get(0).isSucceeded());
+		assertFalse(results.get(1).isSucceeded());
+		assertEquals("HEADER /pdb/files/1Y27.pdb",
+				FileUtils.readFileToString(new File(outDir, "1Y27.pdb")));
+	}
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.shared;
+
+import static org.junit.Assert.*;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+import org.junit.Test;
+
+/**
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class RequestPolicyTest {
+
+	/**
+	 * A request that fails aFailures times before succeeding
+	 */
+	private static class FlakyRequest implements RequestPolicy.Request<String> {
+		private int failures;
+		private IOException cause;
+		private int calls = 0;
+
+		private FlakyRequest(int aFailures, IOException aCause) {
+			failures = aFailures;
+			cause = aCause;
+		}
+
+		public String execute() throws IOException {
+			calls++;
+			if (calls <= failures) {
+				throw cause;
+			}
+			return "ok";
+		}
+	}
+
+	private RequestPolicy createPolicy(int anAttempts) {
+		RequestPolicy p = new RequestPolicy(1000, anAttempts);
+		p.setBackoff(1, 10);
+		return p;
+	}
+
+	@Test
+	public void testRetry() throws Exception {
+		RequestPolicy p = createPolicy(5);
+		FlakyRequest r = new FlakyRequest(2, new HttpStatusException(
+				"HTTP 503", 503, -1));
+		assertEquals("ok", p.execute("www.rcsb.org", "describePDB", r));
+		assertEquals(3, r.calls);
+		r = new FlakyRequest(1, new SocketTimeoutException());
+		assertEquals("ok", p.execute("www.rcsb.org", "ligandInfo", r));
+		assertTrue(p.getFailures().isEmpty());
+	}
+
+	@Test
+	public void testGiveUp() throws Exception {
+		RequestPolicy p = createPolicy(3);
+		FlakyRequest r = new FlakyRequest(10, new HttpStatusException(
+				"HTTP 500", 500, -1));
+		try {
+			p.execute("www.rcsb.org", "describePDB", r);
+			fail("the request should have failed");
+		} catch (HttpStatusException e) {
+			assertEquals(500, e.getStatusCode());
+		}
+		assertEquals(3, r.calls);
+		// errors that cannot go away are not retried
+		r = new FlakyRequest(10, new FileNotFoundException("1XXX.pdb"));
+		try {
+			p.execute("www.rcsb.org", "1XXX.pdb", r);
+			fail("the request should have failed");
+		} catch (FileNotFoundException e) {
+		}
+		assertEquals(1, r.calls);
+		assertEquals(2, p.getFailures().size());
+		assertTrue(p.getFailures().get(0).startsWith("describePDB\t"));
+	}
+
+	@Test
+	public void testCircuitBreaker() throws Exception {
+		RequestPolicy p = createPolicy(1);
+		p.setCircuitBreaker(2, 200);
+		for (int i = 0; i < 2; i++) {
+			try {
+				p.execute("www.rcsb.org", "describePDB", new FlakyRequest(1,
+						new SocketTimeoutException()));
+			} catch (SocketTimeoutException e) {
+			}
+		}
+		assertTrue(p.isOpen("www.rcsb.org"));
+		assertFalse(p.isOpen("docs.google.com"));
+		long start = System.currentTimeMillis();
+		assertEquals("ok", p.execute("www.rcsb.org", "describePDB",
+				new FlakyRequest(0, null)));
+		// the request waited for the circuit to close
+		assertTrue(System.currentTimeMillis() - start >= 150);
+		assertFalse(p.isOpen("www.rcsb.org"));
+	}
+
+	@Test
+	public void testBackoff() {
+		RequestPolicy p = new RequestPolicy();
+		p.setBackoff(100, 1000);
+		for (int i = 0; i < 20; i++) {
+			assertTrue(p.getBackoff(1, null) <= 100);
+			assertTrue(p.getBackoff(10, null) <= 1000);
+		}
+		// a Retry-After header is honoured
+		assertEquals(800, p.getBackoff(1, new HttpStatusException("HTTP 429",
+				429, 800)));
+	}
+}
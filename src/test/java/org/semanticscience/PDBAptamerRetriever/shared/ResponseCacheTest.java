@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) 2013  Jose Cruz-Toledo
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.semanticscience.PDBAptamerRetriever.shared;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Jose Cruz-Toledo
+ *
+ */
+public class ResponseCacheTest {
+	private static final String DESCRIBE = "http://www.rcsb.org/pdb/rest/describePDB?structureId=1Y27";
+	private File cacheDir = null;
+
+	/**
+	 * A loader that counts its calls
+	 */
+	private static class CountingLoader implements
+			RequestPolicy.Request<String> {
+		private String response;
+		private int calls = 0;
+
+		private CountingLoader(String aResponse) {
+			response = aResponse;
+		}
+
+		public String execute() throws IOException {
+			calls++;
+			return response;
+		}
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		cacheDir = new File(FileUtils.getTempDirectory(), "responseCacheTest");
+		FileUtils.deleteDirectory(cacheDir);
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		FileUtils.deleteDirectory(cacheDir);
+	}
+
+	@Test
+	public void testGet() throws Exception {
+		ResponseCache c = new ResponseCache(cacheDir, 1024 * 1024);
+		CountingLoader l = new CountingLoader("<PDBdescription/>\n");
+		assertEquals("<PDBdescription/>\n", c.get(DESCRIBE, null, l));
+		assertEquals("<PDBdescription/>\n", c.get(DESCRIBE, null, l));
+		assertEquals(1, l.calls);
+		// a POST with another body is another entry
+		c.get("http://www.rcsb.org/pdb/rest/search", "a", l);
+		c.get("http://www.rcsb.org/pdb/rest/search", "b", l);
+		assertEquals(3, l.calls);
+		// the entries survive a restart
+		c = new ResponseCache(cacheDir, 1024 * 1024);
+		c.setOffline(true);
+		assertEquals("<PDBdescription/>\n", c.get(DESCRIBE, null, l));
+		assertEquals(3, l.calls);
+		try {
+			c.get("http://www.rcsb.org/pdb/rest/ligandInfo?structureId=1Y27",
+					null, l);
+			fail("an offline cache should not fetch");
+		} catch (IOException e) {
+		}
+		assertEquals(3, l.calls);
+	}
+
+	@Test
+	public void testTtl() throws Exception {
+		ResponseCache c = new ResponseCache(cacheDir, 1024 * 1024);
+		c.setTtl("/pdb/rest/describePDB", -1);
+		assertEquals(-1, c.getTtl(DESCRIBE));
+		assertEquals(ResponseCache.DEFAULT_SEARCH_TTL,
+				c.getTtl("http://www.rcsb.org/pdb/rest/search"));
+		CountingLoader l = new CountingLoader("<PDBdescription/>");
+		c.get(DESCRIBE, null, l);
+		c.get(DESCRIBE, null, l);
+		assertEquals(2, l.calls);
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		ResponseCache c = new ResponseCache(cacheDir, 1000);
+		CountingLoader l = new CountingLoader(new String(new char[300]));
+		for (int i = 0; i < 10; i++) {
+			c.get(DESCRIBE + i, null, l);
+			// keep the first entry in use
+			c.get(DESCRIBE + 0, null, l);
+		}
+		assertTrue(c.getTotalBytes() <= 1000);
+		assertEquals(10, l.calls);
+		c.get(DESCRIBE + 8, null, l);
+		assertEquals(11, l.calls);
+	}
+
+	@Test
+	public void testNormalize() {
+		assertEquals(
+				ResponseCache.getKey(
+						"HTTP://WWW.RCSB.ORG/pdb/rest/ligandInfo?b=2&a=1",
+						null),
+				ResponseCache.getKey(
+						"http://www.rcsb.org/pdb/rest/ligandInfo?a=1&b=2",
+						null));
+	}
+}